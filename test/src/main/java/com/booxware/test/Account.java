@@ -1,5 +1,6 @@
 package com.booxware.test;
 
+import com.booxware.test.util.CredentialCodec;
 import java.io.Serializable;
 import java.util.Arrays;
 import java.util.Date;
@@ -9,13 +10,16 @@ import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
+import javax.persistence.Index;
 import javax.persistence.Lob;
-import javax.persistence.SequenceGenerator;
 import javax.persistence.Table;
 import javax.persistence.Temporal;
 import javax.validation.constraints.Email;
 import javax.validation.constraints.NotNull;
 import javax.validation.constraints.Size;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
+import org.hibernate.id.enhanced.SequenceStyleGenerator;
 
 /**
  * The encryption can be very simple, we don't put much emphasis on the
@@ -23,7 +27,9 @@ import javax.validation.constraints.Size;
  * Modified into Entity bean with data validation support.
  */
 @Entity
-@Table(name = "ACCOUNT")
+@Table(name = "ACCOUNT",
+       indexes = @Index(name = "IDX_ACCOUNT_LAST_LOGIN",
+                        columnList = "LAST_LOGIN"))
 public class Account implements Serializable {
 
     private static final long serialVersionUID = -7984003838755412618L;
@@ -33,7 +39,11 @@ public class Account implements Serializable {
     @Column(name = "ID")
     @GeneratedValue(strategy = GenerationType.AUTO,
                     generator = "ACCOUNT_SEQ_GEN")
-    @SequenceGenerator(name = "ACCOUNT_SEQ_GEN", sequenceName = "ACCOUNT_SEQ")
+    @GenericGenerator(name = "ACCOUNT_SEQ_GEN",
+                      strategy = "com.booxware.test.impl.BlockSequenceGenerator",
+                      parameters = @Parameter(
+                              name = SequenceStyleGenerator.SEQUENCE_PARAM,
+                              value = "ACCOUNT_SEQ"))
     private Long id;
 
     @NotNull
@@ -41,12 +51,26 @@ public class Account implements Serializable {
     @Column(name = "USERNAME", unique = true, updatable = false)
     private String username;
 
+    /**
+     * Compact BCrypt credential, see
+     * {@link com.booxware.test.util.CredentialCodec}, salt is a part of it.
+     * Column is nullable until all legacy rows are migrated.
+     */
+    @Size(min = CredentialCodec.LENGTH, max = CredentialCodec.LENGTH)
+    @Column(name = "CREDENTIAL", length = CredentialCodec.LENGTH)
+    private byte[] encryptedPassword;
+
+    /**
+     * Legacy BCrypt hash string, kept only until the row is migrated into
+     * {@link #encryptedPassword}.
+     */
     @Lob
-    @NotNull
     @Column(name = "ENCRYPTED_PASSWORD")
-    private byte[] encryptedPassword;
+    private byte[] legacyPassword;
 
-    @NotNull
+    /**
+     * Legacy BCrypt salt, kept only until the row is migrated.
+     */
     @Column(name = "SALT")
     private String salt;
 
@@ -67,6 +91,24 @@ public class Account implements Serializable {
         this.email = email;
     }
 
+    /**
+     * Copy constructor, makes detached copy of the entity state.
+     *
+     * @param source
+     */
+    public Account(Account source) {
+        this.id = source.id;
+        this.username = source.username;
+        this.encryptedPassword = source.encryptedPassword == null ? null
+                                         : source.encryptedPassword.clone();
+        this.legacyPassword = source.legacyPassword == null ? null
+                                      : source.legacyPassword.clone();
+        this.salt = source.salt;
+        this.email = source.email;
+        this.lastLogin = source.lastLogin == null ? null
+                                 : new Date(source.lastLogin.getTime());
+    }
+
     public Long getId() {
         return id;
     }
@@ -91,6 +133,14 @@ public class Account implements Serializable {
         this.encryptedPassword = encryptedPassword;
     }
 
+    public byte[] getLegacyPassword() {
+        return legacyPassword;
+    }
+
+    public void setLegacyPassword(byte[] legacyPassword) {
+        this.legacyPassword = legacyPassword;
+    }
+
     public String getSalt() {
         return salt;
     }
@@ -122,6 +172,8 @@ public class Account implements Serializable {
                 .append(", username=").append(username)
                 .append(", encryptedPassword=")
                 .append(Arrays.toString(encryptedPassword))
+                .append(", legacyPassword=")
+                .append(Arrays.toString(legacyPassword))
                 .append(", salt=").append(salt)
                 .append(", email=").append(email)
                 .append(", lastLogin=").append(lastLogin)
@@ -135,6 +187,7 @@ public class Account implements Serializable {
         hash = 89 * hash + Objects.hashCode(this.id);
         hash = 89 * hash + Objects.hashCode(this.username);
         hash = 89 * hash + Arrays.hashCode(this.encryptedPassword);
+        hash = 89 * hash + Arrays.hashCode(this.legacyPassword);
         hash = 89 * hash + Objects.hashCode(this.salt);
         hash = 89 * hash + Objects.hashCode(this.email);
         hash = 89 * hash + Objects.hashCode(this.lastLogin);
@@ -168,6 +221,9 @@ public class Account implements Serializable {
         if (!Arrays.equals(this.encryptedPassword, other.encryptedPassword)) {
             return false;
         }
+        if (!Arrays.equals(this.legacyPassword, other.legacyPassword)) {
+            return false;
+        }
         return Objects.equals(this.lastLogin, other.lastLogin);
     }
 
@@ -0,0 +1,79 @@
+/*
+ * Copyright 2017 Andrey Alexeenko <Andrey.Alexeenko at t-systems.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.booxware.test;
+
+import java.io.Serializable;
+import java.util.Date;
+
+/**
+ * Projection of Account entity without credentials, used by exports.
+ *
+ * @author Andrey Alexeenko <Andrey.Alexeenko at t-systems.com>
+ */
+public class AccountRecord implements Serializable {
+
+    private static final long serialVersionUID = 7130567246511846392L;
+
+    private final Long id;
+
+    private final String username;
+
+    private final String email;
+
+    private final Date lastLogin;
+
+    /**
+     * @param id
+     * @param username
+     * @param email
+     * @param lastLogin
+     */
+    public AccountRecord(Long id, String username, String email,
+            Date lastLogin) {
+        this.id = id;
+        this.username = username;
+        this.email = email;
+        this.lastLogin = lastLogin == null ? null
+                                 : new Date(lastLogin.getTime());
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public String getEmail() {
+        return email;
+    }
+
+    /**
+     * @return last login date, or null, if user has never logged in
+     */
+    public Date getLastLogin() {
+        return lastLogin;
+    }
+
+    @Override
+    public String toString() {
+        return "AccountRecord{id=" + id + ", username=" + username
+                       + ", email=" + email + ", lastLogin=" + lastLogin
+                       + '}';
+    }
+
+}
@@ -7,5 +7,17 @@ public class AccountServiceException extends RuntimeException {
     public AccountServiceException(String message) {
 		super(message);
 	}
+
+    /**
+     * Used for expected business failures, stack trace of which is not
+     * interesting and is expensive to fill in.
+     *
+     * @param message
+     * @param writableStackTrace
+     */
+    public AccountServiceException(String message,
+            boolean writableStackTrace) {
+        super(message, null, false, writableStackTrace);
+    }
 	
 }
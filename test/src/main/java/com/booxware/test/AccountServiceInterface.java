@@ -1,6 +1,8 @@
 package com.booxware.test;
 
+import java.util.Collection;
 import java.util.Date;
+import java.util.List;
 
 /**
  * Service for account management.
@@ -23,6 +25,36 @@ public interface AccountServiceInterface {
      */
     public Account login(String username, String password);
 
+    /**
+     * Logs in the same way as {@link #login} and issues signed session
+     * token, which is accepted by {@link #validateToken} until it expires
+     * or the Account is deleted.
+     *
+     * @param username
+     *                 the User's name
+     * @param password
+     *                 the clear text password
+     *
+     * @return the token and its claims
+     *
+     * @throws AccountServiceException
+     *                                 if any errors occur
+     */
+    public SessionToken loginForToken(String username, String password);
+
+    /**
+     * Verifies session token without password hashing and database access.
+     *
+     * @param token
+     *              the token string
+     *
+     * @return claims of the valid token
+     *
+     * @throws AccountServiceException
+     *                                 if token is invalid, expired or revoked
+     */
+    public SessionToken validateToken(String token);
+
     /**
      * Registers a new Account, if the username doesn't exist yet and logs in
      * the user.
@@ -41,6 +73,22 @@ public interface AccountServiceInterface {
      */
     public Account register(String username, String email, String password);
 
+    /**
+     * Registers a batch of new Accounts. Every item is processed the same way
+     * as by {@link #register}, but failure of one item doesn't affect the
+     * others.
+     *
+     * @param registrations
+     *                      the registration items
+     *
+     * @return per-item results, in the same order as requested items
+     *
+     * @throws AccountServiceException
+     *                                 if request itself is not acceptable
+     */
+    public List<RegistrationResult> registerAll(
+            Collection<Registration> registrations);
+
     /**
      * Deletes an Account, if the user exist.
      *
@@ -66,4 +114,21 @@ public interface AccountServiceInterface {
      */
     public boolean hasLoggedInSince(String username, Date date);
 
+    /**
+     * Checks for every user, if one has logged in since a provided
+     * timestamp. Only names and login dates are read, by a few queries within
+     * one transaction.
+     *
+     * @param usernames
+     * @param date
+     *
+     * @return login flags and unknown user flags, aligned to order of
+     *         usernames
+     *
+     * @throws AccountServiceException
+     *                                 if any error occurs
+     */
+    public LoginActivity hasLoggedInSince(Collection<String> usernames,
+            Date date);
+
 }
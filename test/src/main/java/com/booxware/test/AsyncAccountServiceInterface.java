@@ -0,0 +1,80 @@
+/*
+ * Copyright 2017 Andrey Alexeenko <Andrey.Alexeenko at t-systems.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.booxware.test;
+
+import java.util.Date;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Non-blocking counterpart of {@link AccountServiceInterface}. Futures are
+ * completed exceptionally with {@link AccountServiceException} in case of
+ * any errors.
+ *
+ * @author Andrey Alexeenko <Andrey.Alexeenko at t-systems.com>
+ */
+public interface AsyncAccountServiceInterface {
+
+    /**
+     * Asynchronous variant of {@link AccountServiceInterface#login}.
+     *
+     * @param username
+     *                 the User's name
+     * @param password
+     *                 the clear text password
+     *
+     * @return future of the logged in account
+     */
+    public CompletableFuture<Account> loginAsync(String username,
+            String password);
+
+    /**
+     * Asynchronous variant of {@link AccountServiceInterface#register}.
+     *
+     * @param username
+     *                 the User's name
+     * @param email
+     *                 the email address of the user
+     * @param password
+     *                 the clear text password
+     *
+     * @return future of the newly registered Account
+     */
+    public CompletableFuture<Account> registerAsync(String username,
+            String email, String password);
+
+    /**
+     * Asynchronous variant of {@link AccountServiceInterface#deleteAccount}.
+     *
+     * @param username
+     *                 the User's name
+     *
+     * @return future, completed when Account is deleted
+     */
+    public CompletableFuture<Void> deleteAccountAsync(String username);
+
+    /**
+     * Asynchronous variant of
+     * {@link AccountServiceInterface#hasLoggedInSince(String, Date)}.
+     *
+     * @param username
+     * @param date
+     *
+     * @return future of the check result
+     */
+    public CompletableFuture<Boolean> hasLoggedInSinceAsync(String username,
+            Date date);
+
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright 2017 Andrey Alexeenko <Andrey.Alexeenko at t-systems.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.booxware.test;
+
+import java.io.Serializable;
+import java.util.Date;
+
+/**
+ * Narrow projection of Account entity, holds only name and last login date.
+ * Used by queries, which should not load credentials.
+ *
+ * @author Andrey Alexeenko <Andrey.Alexeenko at t-systems.com>
+ */
+public class LastLogin implements Serializable {
+
+    private static final long serialVersionUID = 2945177432080613650L;
+
+    private final String username;
+
+    private final Date lastLogin;
+
+    /**
+     * Date is copied into plain Date, because query returns
+     * java.sql.Timestamp, which is not comparable with Date by milliseconds.
+     *
+     * @param username
+     * @param lastLogin
+     */
+    public LastLogin(String username, Date lastLogin) {
+        this.username = username;
+        this.lastLogin = lastLogin == null ? null
+                                 : new Date(lastLogin.getTime());
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    /**
+     * @return last login date, or null, if user has never logged in
+     */
+    public Date getLastLogin() {
+        return lastLogin;
+    }
+
+    @Override
+    public String toString() {
+        return "LastLogin{username=" + username + ", lastLogin=" + lastLogin
+                       + '}';
+    }
+
+}
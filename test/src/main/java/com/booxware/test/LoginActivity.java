@@ -0,0 +1,91 @@
+/*
+ * Copyright 2017 Andrey Alexeenko <Andrey.Alexeenko at t-systems.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.booxware.test;
+
+import java.io.Serializable;
+import java.util.BitSet;
+
+/**
+ * Result of batch login check, bits are aligned to order of requested
+ * usernames.
+ *
+ * @author Andrey Alexeenko <Andrey.Alexeenko at t-systems.com>
+ */
+public class LoginActivity implements Serializable {
+
+    private static final long serialVersionUID = -3391869517417284215L;
+
+    private final int size;
+
+    private final BitSet loggedIn, unknown;
+
+    /**
+     * @param size
+     *                 amount of requested usernames
+     * @param loggedIn
+     *                 positions of users, who have logged in since the date
+     * @param unknown
+     *                 positions of not registered usernames
+     */
+    public LoginActivity(int size, BitSet loggedIn, BitSet unknown) {
+        this.size = size;
+        this.loggedIn = (BitSet) loggedIn.clone();
+        this.unknown = (BitSet) unknown.clone();
+    }
+
+    /**
+     * @return amount of requested usernames
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param index
+     *              position of requested username
+     *
+     * @return true, if the user has logged in since the date
+     */
+    public boolean isLoggedIn(int index) {
+        return loggedIn.get(index);
+    }
+
+    /**
+     * @param index
+     *              position of requested username
+     *
+     * @return true, if the username is not registered
+     */
+    public boolean isUnknown(int index) {
+        return unknown.get(index);
+    }
+
+    public BitSet getLoggedIn() {
+        return (BitSet) loggedIn.clone();
+    }
+
+    public BitSet getUnknown() {
+        return (BitSet) unknown.clone();
+    }
+
+    @Override
+    public String toString() {
+        return "LoginActivity{size=" + size + ", loggedIn="
+                       + loggedIn.cardinality() + ", unknown="
+                       + unknown.cardinality() + '}';
+    }
+
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2017 Andrey Alexeenko <Andrey.Alexeenko at t-systems.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.booxware.test;
+
+import com.booxware.test.util.LatencyHistogram;
+import java.util.Map;
+
+/**
+ * Registry of latency metrics and gauges, any implementation could be
+ * plugged in by defining a primary bean of this type.
+ *
+ * @author Andrey Alexeenko <Andrey.Alexeenko at t-systems.com>
+ */
+public interface MetricsRegistry {
+
+    /**
+     * Records the duration of named operation.
+     *
+     * @param name
+     *              metric name
+     * @param nanos
+     *              duration in nanoseconds
+     */
+    public void record(String name, long nanos);
+
+    /**
+     * Sets the current value of named gauge, e.g. configuration chosen at
+     * runtime.
+     *
+     * @param name
+     *              gauge name
+     * @param value
+     */
+    public void gauge(String name, long value);
+
+    /**
+     * Current values of all gauges.
+     *
+     * @return values by gauge names
+     */
+    public Map<String, Long> gauges();
+
+    /**
+     * Current state of all metrics.
+     *
+     * @return histogram snapshots by metric names
+     */
+    public Map<String, LatencyHistogram.Snapshot> snapshot();
+
+    /**
+     * Current state of all metrics, metrics are cleared, so next snapshot
+     * covers only the next period.
+     *
+     * @return histogram snapshots by metric names
+     */
+    public Map<String, LatencyHistogram.Snapshot> snapshotAndReset();
+
+}
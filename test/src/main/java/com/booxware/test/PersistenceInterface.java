@@ -1,5 +1,12 @@
 package com.booxware.test;
 
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
 /**
  * Persistence can be very simple, for example an in memory hash map.
  * <p>
@@ -15,6 +22,24 @@ public interface PersistenceInterface {
      */
     public Account save(Account account);
 
+    /**
+     * Saves all accounts within single unit of work, using batched writes.
+     *
+     * @param accounts
+     *
+     * @return saved accounts, in the same order
+     */
+    public List<Account> saveAll(Collection<Account> accounts);
+
+    /**
+     * Updates last login dates of accounts by one batched statement. Stored
+     * date is never replaced by an older one.
+     *
+     * @param lastLogins
+     *                   last login dates by account names
+     */
+    public void updateLastLogins(Map<String, Date> lastLogins);
+
     /**
      * Self explained method.
      *
@@ -33,6 +58,49 @@ public interface PersistenceInterface {
      */
     public Account findByName(String name);
 
+    /**
+     * Finds last login date without loading of the entity.
+     *
+     * @param name
+     *
+     * @return projection, or null if account is not registered
+     */
+    public LastLogin findLastLoginByName(String name);
+
+    /**
+     * Set based lookup of already used names.
+     *
+     * @param names
+     *
+     * @return subset of requested names, which are already registered
+     */
+    public Set<String> findExistingNames(Collection<String> names);
+
+    /**
+     * Last login dates of registered names, entities are not loaded.
+     *
+     * @param names
+     *
+     * @return last login dates by registered names, date is null, if user
+     *         has never logged in
+     */
+    public Map<String, Date> findLastLogins(Collection<String> names);
+
+    /**
+     * Passes every registered name to consumer, without loading of entities.
+     *
+     * @param consumer
+     */
+    public void forEachName(Consumer<String> consumer);
+
+    /**
+     * Passes every Account in ID order to consumer, without credentials and
+     * without keeping of entities in memory.
+     *
+     * @param consumer
+     */
+    public void forEachAccount(Consumer<AccountRecord> consumer);
+
     /**
      * Self explained method.
      *
@@ -40,4 +108,13 @@ public interface PersistenceInterface {
      */
     public void delete(Account account);
 
+    /**
+     * Deletes account by single statement, without loading of the entity.
+     *
+     * @param name
+     *
+     * @return true, if account has been deleted
+     */
+    public boolean deleteByName(String name);
+
 }
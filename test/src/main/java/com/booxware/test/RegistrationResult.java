@@ -0,0 +1,74 @@
+/*
+ * Copyright 2017 Andrey Alexeenko <Andrey.Alexeenko at t-systems.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.booxware.test;
+
+import java.io.Serializable;
+
+/**
+ * Outcome of single bulk registration item. Holds either registered Account
+ * entity or error message, which would be used by
+ * {@link AccountServiceException} in case of single registration.
+ *
+ * @author Andrey Alexeenko <Andrey.Alexeenko at t-systems.com>
+ */
+public class RegistrationResult implements Serializable {
+
+    private static final long serialVersionUID = -2270581760745236419L;
+
+    private final String username;
+
+    private final Account account;
+
+    private final String error;
+
+    private RegistrationResult(String username, Account account,
+            String error) {
+        this.username = username;
+        this.account = account;
+        this.error = error;
+    }
+
+    public static RegistrationResult success(Account account) {
+        return new RegistrationResult(account.getUsername(), account, null);
+    }
+
+    public static RegistrationResult failure(String username, String error) {
+        return new RegistrationResult(username, null, error);
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public Account getAccount() {
+        return account;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public boolean isSuccess() {
+        return account != null;
+    }
+
+    @Override
+    public String toString() {
+        return "RegistrationResult{username=" + username + ", success="
+                       + isSuccess() + ", error=" + error + '}';
+    }
+
+}
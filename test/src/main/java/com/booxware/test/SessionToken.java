@@ -0,0 +1,84 @@
+/*
+ * Copyright 2017 Andrey Alexeenko <Andrey.Alexeenko at t-systems.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.booxware.test;
+
+import java.io.Serializable;
+import java.util.Date;
+
+/**
+ * Signed session token and its verified claims. Token string is passed by
+ * client instead of password, see
+ * {@link AccountServiceInterface#validateToken}.
+ *
+ * @author Andrey Alexeenko <Andrey.Alexeenko at t-systems.com>
+ */
+public class SessionToken implements Serializable {
+
+    private static final long serialVersionUID = 6150420153742087781L;
+
+    private final String token;
+
+    private final long accountId, issuedAt, expiresAt;
+
+    private final String username;
+
+    /**
+     * @param token
+     *                  compact token string
+     * @param accountId
+     * @param username
+     * @param issuedAt
+     *                  epoch milliseconds
+     * @param expiresAt
+     *                  epoch milliseconds
+     */
+    public SessionToken(String token, long accountId, String username,
+            long issuedAt, long expiresAt) {
+        this.token = token;
+        this.accountId = accountId;
+        this.username = username;
+        this.issuedAt = issuedAt;
+        this.expiresAt = expiresAt;
+    }
+
+    public String getToken() {
+        return token;
+    }
+
+    public long getAccountId() {
+        return accountId;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public Date getIssuedAt() {
+        return new Date(issuedAt);
+    }
+
+    public Date getExpiresAt() {
+        return new Date(expiresAt);
+    }
+
+    @Override
+    public String toString() {
+        return "SessionToken{accountId=" + accountId + ", username="
+                       + username + ", issuedAt=" + getIssuedAt()
+                       + ", expiresAt=" + getExpiresAt() + '}';
+    }
+
+}
@@ -37,4 +37,13 @@ public @interface WrapExceptions {
      */
     Class<? extends Throwable> type();
 
+    /**
+     * Whether expected business failures (failed checks and constraint
+     * violations) should be wrapped into exceptions without stack trace.
+     * Unexpected failures always keep the stack trace.
+     *
+     * @return
+     */
+    boolean stackless() default false;
+
 }
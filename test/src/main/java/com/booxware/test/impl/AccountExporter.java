@@ -0,0 +1,196 @@
+/*
+ * Copyright 2017 Andrey Alexeenko <Andrey.Alexeenko at t-systems.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.booxware.test.impl;
+
+import com.booxware.test.AccountRecord;
+import com.booxware.test.PersistenceInterface;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.time.format.DateTimeFormatter;
+import java.util.Date;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * Streaming export of all accounts without credentials. Accounts are read
+ * by forward only cursor and written at once, so memory use doesn't depend
+ * on amount of accounts. Output is flushed, but not closed.
+ *
+ * @author Andrey Alexeenko <Andrey.Alexeenko at t-systems.com>
+ */
+@Component
+public class AccountExporter {
+
+    private static final org.slf4j.Logger LOGGER = LoggerFactory.getLogger(
+            AccountExporter.class);
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Output formats.
+     */
+    public enum Format {
+        /**
+         * One JSON object per line.
+         */
+        NDJSON,
+        /**
+         * RFC 4180 CSV with header line.
+         */
+        CSV
+    }
+
+    @Autowired
+    private PersistenceInterface persistence;
+
+    /**
+     * Writes all accounts into the stream.
+     *
+     * @param out
+     * @param format
+     *
+     * @return amount of written accounts
+     *
+     * @throws IOException
+     */
+    public long export(OutputStream out, Format format) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out,
+                StandardCharsets.UTF_8), BUFFER_SIZE);
+        long[] count = {0};
+        try {
+            if (format == Format.CSV) {
+                writer.write("id,username,email,lastLogin\n");
+            }
+            persistence.forEachAccount(r -> {
+                try {
+                    if (format == Format.CSV) {
+                        writeCsv(writer, r);
+                    } else {
+                        writeJson(writer, r);
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                count[0]++;
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        writer.flush();
+        LOGGER.info("Exported {} accounts as {}.", count[0], format);
+        return count[0];
+    }
+
+    /**
+     * Writes all accounts into the channel.
+     *
+     * @param channel
+     * @param format
+     *
+     * @return amount of written accounts
+     *
+     * @throws IOException
+     */
+    public long export(WritableByteChannel channel, Format format)
+            throws IOException {
+        return export(Channels.newOutputStream(channel), format);
+    }
+
+    private static void writeJson(Writer w, AccountRecord r)
+            throws IOException {
+        w.write("{\"id\":");
+        w.write(String.valueOf(r.getId()));
+        w.write(",\"username\":");
+        writeJsonString(w, r.getUsername());
+        w.write(",\"email\":");
+        writeJsonString(w, r.getEmail());
+        w.write(",\"lastLogin\":");
+        if (r.getLastLogin() == null) {
+            w.write("null");
+        } else {
+            w.write('"');
+            writeDate(w, r.getLastLogin());
+            w.write('"');
+        }
+        w.write("}\n");
+    }
+
+    private static void writeJsonString(Writer w, String s)
+            throws IOException {
+        if (s == null) {
+            w.write("null");
+            return;
+        }
+        w.write('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\') {
+                w.write('\\');
+                w.write(c);
+            } else if (c < 0x20) {
+                w.write(String.format("\\u%04x", (int) c));
+            } else {
+                w.write(c);
+            }
+        }
+        w.write('"');
+    }
+
+    private static void writeCsv(Writer w, AccountRecord r)
+            throws IOException {
+        w.write(String.valueOf(r.getId()));
+        w.write(',');
+        writeCsvField(w, r.getUsername());
+        w.write(',');
+        writeCsvField(w, r.getEmail());
+        w.write(',');
+        if (r.getLastLogin() != null) {
+            writeDate(w, r.getLastLogin());
+        }
+        w.write('\n');
+    }
+
+    private static void writeCsvField(Writer w, String s) throws IOException {
+        if (s == null) {
+            return;
+        }
+        boolean quote = false;
+        for (int i = 0; i < s.length() && !quote; i++) {
+            char c = s.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quote) {
+            w.write(s);
+            return;
+        }
+        w.write('"');
+        w.write(s.replace("\"", "\"\""));
+        w.write('"');
+    }
+
+    private static void writeDate(Writer w, Date date) throws IOException {
+        DateTimeFormatter.ISO_INSTANT.formatTo(date.toInstant(), w);
+    }
+
+}
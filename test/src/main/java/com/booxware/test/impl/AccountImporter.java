@@ -0,0 +1,835 @@
+/*
+ * Copyright 2017 Andrey Alexeenko <Andrey.Alexeenko at t-systems.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.booxware.test.impl;
+
+import com.booxware.test.Account;
+import com.booxware.test.PersistenceInterface;
+import com.booxware.test.util.CredentialCodec;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+import javax.validation.ConstraintViolation;
+import javax.validation.ConstraintViolationException;
+import javax.validation.Validator;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Bulk import of accounts from CSV or NDJSON file. Every record has
+ * username, email and either plain password or BCrypt hash as credential.
+ * CSV file has header line, which names columns "username", "email",
+ * "password" and "credential"; quoted values may not contain line breaks.
+ * Import is a pipeline of three stages with bounded queues between them:
+ * reader parses memory mapped file into batches, preparer validates records
+ * and hashes passwords by bulk workers of {@link PasswordHashingEngine},
+ * keeping limited amount of hashes in flight, and caller thread skips registered names and inserts every batch by one
+ * call. Offset of the last inserted batch is stored into checkpoint file,
+ * so import, which has been interrupted, continues from it; checkpoint is
+ * removed, when import is complete.
+ *
+ * @author Andrey Alexeenko <Andrey.Alexeenko at t-systems.com>
+ */
+@Component
+public class AccountImporter {
+
+    private static final org.slf4j.Logger LOGGER = LoggerFactory.getLogger(
+            AccountImporter.class);
+
+    private static final long MAP_SIZE = 64L * 1024 * 1024;
+
+    private static final int MAX_ERRORS = 100;
+
+    private static final AtomicInteger IMPORTS = new AtomicInteger();
+
+    private static final String ALREADY_REGISTERED_MSG
+                                        = "Account is already registered.",
+            NO_PASSWORD_MSG = "Either password or credential is required.",
+            MALFORMED_MSG = "Malformed record.";
+
+    /**
+     * End of batches marker.
+     */
+    private static final Batch END = new Batch(Collections.emptyList(), 0,
+            0);
+
+    @Autowired
+    private PersistenceInterface persistence;
+
+    @Autowired
+    private PasswordHashingEngine hashingEngine;
+
+    @Autowired(required = false)
+    private Validator validator;
+    /**
+     * Amount of records, inserted by one call.
+     */
+    @Value("${booxware.import.batchSize:500}")
+    private int batchSize;
+    /**
+     * Amount of batches, which may wait between stages.
+     */
+    @Value("${booxware.import.queueCapacity:4}")
+    private int queueCapacity;
+    /**
+     * Amount of password hashes, which import keeps submitted to the engine,
+     * so concurrent bulk work gets its share of bulk workers.
+     */
+    @Value("${booxware.import.hashWindow:8}")
+    private int hashWindow;
+
+    /**
+     * Imports file, checkpoint is kept next to it.
+     *
+     * @param file
+     * @param format
+     *
+     * @return
+     *
+     * @throws IOException
+     */
+    public Report importFile(Path file, AccountExporter.Format format)
+            throws IOException {
+        return importFile(file, format, file.resolveSibling(file.getFileName()
+                + ".checkpoint"));
+    }
+
+    /**
+     * Imports file, starting from checkpoint, if it exists.
+     *
+     * @param file
+     * @param format
+     * @param checkpoint
+     *
+     * @return
+     *
+     * @throws IOException
+     */
+    public Report importFile(Path file, AccountExporter.Format format,
+            Path checkpoint) throws IOException {
+        long started = System.nanoTime();
+        Progress progress = Progress.load(checkpoint);
+        long resumedLine = progress.line;
+        int id = IMPORTS.incrementAndGet();
+        ExecutorService stages = Executors.newFixedThreadPool(2, r -> {
+            Thread t = new Thread(r, "import-" + id + "-stage");
+            t.setDaemon(true);
+            return t;
+        });
+        BlockingQueue<Batch> parsed = new ArrayBlockingQueue<>(Math.max(1,
+                queueCapacity)),
+                prepared = new ArrayBlockingQueue<>(Math.max(1,
+                        queueCapacity));
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        List<String> errors = new ArrayList<>();
+        long processed = 0, batches = 0;
+        try {
+            stages.submit(stage(failure, parsed, () -> read(file, format,
+                    progress, parsed)));
+            stages.submit(stage(failure, prepared, () -> prepare(parsed,
+                    prepared)));
+            for (Batch batch = prepared.take(); batch != END;
+                    batch = prepared.take()) {
+                insert(batch, progress, errors);
+                progress.store(checkpoint);
+                processed += batch.rows.size();
+                if (++batches % 100 == 0) {
+                    LOGGER.info("Imported {} lines, {} rows/sec.",
+                            progress.line, rate(processed, started));
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Import has been interrupted.",
+                    e);
+        } finally {
+            stages.shutdownNow();
+        }
+        Throwable t = failure.get();
+        if (t instanceof IOException) {
+            throw (IOException) t;
+        } else if (t != null) {
+            throw new IllegalStateException("Import has failed.", t);
+        }
+        Files.deleteIfExists(checkpoint);
+        Report report = new Report(progress.imported, progress.duplicates,
+                progress.rejected, processed, resumedLine, errors,
+                System.nanoTime() - started);
+        LOGGER.info("Imported {}: {}.", file, report);
+        return report;
+    }
+
+    /**
+     * Runs stage, failure is stored and end marker is always passed to the
+     * next stage.
+     */
+    private static Runnable stage(AtomicReference<Throwable> failure,
+            BlockingQueue<Batch> output, Stage stage) {
+        return () -> {
+            try {
+                stage.run();
+            } catch (Throwable t) {
+                failure.compareAndSet(null, t);
+            } finally {
+                try {
+                    output.put(END);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+    }
+
+    /**
+     * Reader stage, splits memory mapped file into lines and parses them.
+     */
+    private void read(Path file, AccountExporter.Format format,
+            Progress progress, BlockingQueue<Batch> output)
+            throws IOException, InterruptedException {
+        LineParser parser = new LineParser(format);
+        long position = progress.offset, line = progress.line;
+        if (parser.hasHeader()) {
+            long[] length = {0};
+            parser.header(readHeader(file, length));
+            if (position == 0) {
+                position = length[0];
+                line = 1;
+            }
+        }
+        try (FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.READ)) {
+            long size = channel.size();
+            List<Row> rows = new ArrayList<>(batchSize);
+            while (position < size) {
+                long length = Math.min(MAP_SIZE, size - position);
+                MappedByteBuffer buffer = channel.map(
+                        FileChannel.MapMode.READ_ONLY, position, length);
+                int start = 0;
+                for (int i = 0; i <= length; i++) {
+                    if (i < length ? buffer.get(i) != '\n'
+                                : position + length < size || start == i) {
+                        continue;
+                    }
+                    String text = text(buffer, start, i);
+                    start = i < length ? i + 1 : i;
+                    line++;
+                    if (!text.trim().isEmpty()) {
+                        rows.add(parser.parse(text, line));
+                    }
+                    if (rows.size() == batchSize) {
+                        output.put(new Batch(rows, position + start, line));
+                        rows = new ArrayList<>(batchSize);
+                    }
+                }
+                if (start == 0) {
+                    throw new IOException("Line " + (line + 1)
+                                                  + " is too long.");
+                }
+                position += start;
+            }
+            if (!rows.isEmpty()) {
+                output.put(new Batch(rows, size, line));
+            }
+        }
+    }
+
+    /**
+     * Decodes line without line break.
+     */
+    private static String text(MappedByteBuffer buffer, int start, int end) {
+        if (end > start && buffer.get(end - 1) == '\r') {
+            end--;
+        }
+        byte[] bytes = new byte[end - start];
+        for (int i = start; i < end; i++) {
+            bytes[i - start] = buffer.get(i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Header line of CSV file.
+     *
+     * @param file
+     * @param length
+     *               receives length of header line with line break
+     */
+    private static String readHeader(Path file, long[] length)
+            throws IOException {
+        ByteArrayOutputStream header = new ByteArrayOutputStream();
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(
+                file))) {
+            for (int b = in.read(); b != -1; b = in.read()) {
+                length[0]++;
+                if (b == '\n') {
+                    break;
+                } else if (b != '\r') {
+                    header.write(b);
+                }
+            }
+        }
+        return new String(header.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Preparer stage, makes Account entities, hashes passwords and
+     * validates entities. Row, which hash has not been calculated in time,
+     * is rejected.
+     */
+    private void prepare(BlockingQueue<Batch> input,
+            BlockingQueue<Batch> output) throws InterruptedException {
+        int window = Math.max(1, hashWindow);
+        for (Batch batch = input.take(); batch != END; batch = input.take()) {
+            Deque<Row> hashed = new ArrayDeque<>(window);
+            for (Row row : batch.rows) {
+                if (row.error == null) {
+                    row.account = new Account(row.username, row.email);
+                    if (row.credential != null) {
+                        try {
+                            row.account.setEncryptedPassword(CredentialCodec
+                                    .encode(row.credential));
+                        } catch (IllegalArgumentException e) {
+                            row.error = e.getMessage();
+                        }
+                    } else if (row.password != null) {
+                        if (hashed.size() == window) {
+                            complete(hashed.poll());
+                        }
+                        row.hash = hashingEngine.submitHashpw(row.password,
+                                hashingEngine.gensalt());
+                        hashed.add(row);
+                    } else {
+                        row.error = NO_PASSWORD_MSG;
+                    }
+                }
+            }
+            while (!hashed.isEmpty()) {
+                complete(hashed.poll());
+            }
+            for (Row row : batch.rows) {
+                if (row.error == null) {
+                    row.error = validate(row.account);
+                }
+            }
+            output.put(batch);
+        }
+    }
+
+    /**
+     * Sets calculated hash, timeout of calculation rejects the row.
+     */
+    private void complete(Row row) {
+        try {
+            row.account.setEncryptedPassword(CredentialCodec.encode(
+                    hashingEngine.await(row.hash)));
+        } catch (IllegalStateException e) {
+            row.error = e.getMessage();
+        } finally {
+            row.hash = null;
+        }
+    }
+
+    /**
+     * Inserts valid rows of the batch, which are not registered yet.
+     */
+    private void insert(Batch batch, Progress progress, List<String> errors) {
+        Set<String> names = new HashSet<>();
+        for (Row row : batch.rows) {
+            if (row.error == null) {
+                names.add(row.username);
+            }
+        }
+        Set<String> taken = names.isEmpty() ? new HashSet<>()
+                                    : new HashSet<>(persistence
+                                            .findExistingNames(names));
+        List<Row> accepted = new ArrayList<>();
+        for (Row row : batch.rows) {
+            if (row.error != null) {
+                reject(row, row.error, progress, errors);
+            } else if (!taken.add(row.username)) {
+                progress.duplicates++;
+                error(row, ALREADY_REGISTERED_MSG, errors);
+            } else {
+                accepted.add(row);
+            }
+        }
+        if (!accepted.isEmpty()) {
+            try {
+                persistence.saveAll(accepted.stream().map(r -> r.account)
+                        .collect(Collectors.toList()));
+                progress.imported += accepted.size();
+            } catch (RuntimeException e) {
+                LOGGER.debug("Import batch failed, retrying rows one by "
+                                     + "one.", e);
+                for (Row row : accepted) {
+                    row.account.setId(null);
+                    try {
+                        persistence.save(row.account);
+                        progress.imported++;
+                    } catch (RuntimeException ie) {
+                        reject(row, ExceptionAspects.describe(ie), progress,
+                                errors);
+                    }
+                }
+            }
+        }
+        progress.offset = batch.endOffset;
+        progress.line = batch.endLine;
+    }
+
+    private static void reject(Row row, String error, Progress progress,
+            List<String> errors) {
+        progress.rejected++;
+        error(row, error, errors);
+    }
+
+    private static void error(Row row, String error, List<String> errors) {
+        if (errors.size() < MAX_ERRORS) {
+            errors.add("Line " + row.line + ": " + error);
+        }
+    }
+
+    /**
+     * Validates Account entity, if validator is available.
+     *
+     * @param account
+     *
+     * @return error message or null, if entity is valid
+     */
+    private String validate(Account account) {
+        if (validator == null) {
+            return null;
+        }
+        // identifier is generated by persistence provider, so it's not
+        // checked here
+        Set<ConstraintViolation<Account>> violations = validator
+                .validate(account).stream()
+                .filter(cv -> !"id".equals(cv.getPropertyPath().toString()))
+                .collect(Collectors.toSet());
+        if (violations.isEmpty()) {
+            return null;
+        }
+        return ExceptionAspects.describe(
+                new ConstraintViolationException(violations));
+    }
+
+    private static long rate(long rows, long started) {
+        long elapsed = System.nanoTime() - started;
+        return elapsed == 0 ? 0 : rows * 1_000_000_000L / elapsed;
+    }
+
+    @FunctionalInterface
+    private interface Stage {
+
+        void run() throws Exception;
+
+    }
+
+    /**
+     * Parsed records of consecutive lines.
+     */
+    private static class Batch {
+
+        private final List<Row> rows;
+        /**
+         * File offset and number of line after the batch.
+         */
+        private final long endOffset, endLine;
+
+        Batch(List<Row> rows, long endOffset, long endLine) {
+            this.rows = rows;
+            this.endOffset = endOffset;
+            this.endLine = endLine;
+        }
+
+    }
+
+    /**
+     * Record of one line.
+     */
+    private static class Row {
+
+        private final long line;
+
+        private String username, email, password, credential, error;
+
+        private Account account;
+        /**
+         * Password hash in progress.
+         */
+        private Future<String> hash;
+
+        Row(long line) {
+            this.line = line;
+        }
+
+    }
+
+    /**
+     * Parser of CSV or NDJSON lines.
+     */
+    private static class LineParser {
+
+        private final AccountExporter.Format format;
+
+        private Map<String, Integer> columns;
+
+        LineParser(AccountExporter.Format format) {
+            this.format = format;
+        }
+
+        boolean hasHeader() {
+            return format == AccountExporter.Format.CSV;
+        }
+
+        void header(String text) {
+            List<String> names = splitCsv(text);
+            columns = new HashMap<>();
+            for (int i = 0; i < names.size(); i++) {
+                columns.put(names.get(i).trim(), i);
+            }
+        }
+
+        Row parse(String text, long line) {
+            Row row = new Row(line);
+            Map<String, String> values;
+            try {
+                values = format == AccountExporter.Format.CSV
+                                 ? csvValues(text) : parseJson(text);
+            } catch (IllegalArgumentException e) {
+                row.error = MALFORMED_MSG;
+                return row;
+            }
+            row.username = values.get("username");
+            row.email = values.get("email");
+            row.password = values.get("password");
+            row.credential = values.get("credential");
+            if (row.username == null || row.email == null) {
+                row.error = MALFORMED_MSG;
+            }
+            return row;
+        }
+
+        private Map<String, String> csvValues(String text) {
+            List<String> fields = splitCsv(text);
+            Map<String, String> values = new HashMap<>();
+            columns.forEach((name, i) -> {
+                if (i < fields.size() && !fields.get(i).isEmpty()) {
+                    values.put(name, fields.get(i));
+                }
+            });
+            return values;
+        }
+
+        /**
+         * Splits RFC 4180 line into fields.
+         */
+        private static List<String> splitCsv(String text) {
+            List<String> fields = new ArrayList<>();
+            StringBuilder field = new StringBuilder();
+            boolean quoted = false;
+            for (int i = 0; i < text.length(); i++) {
+                char c = text.charAt(i);
+                if (quoted) {
+                    if (c != '"') {
+                        field.append(c);
+                    } else if (i + 1 < text.length()
+                                       && text.charAt(i + 1) == '"') {
+                        field.append('"');
+                        i++;
+                    } else {
+                        quoted = false;
+                    }
+                } else if (c == '"') {
+                    quoted = true;
+                } else if (c == ',') {
+                    fields.add(field.toString());
+                    field.setLength(0);
+                } else {
+                    field.append(c);
+                }
+            }
+            if (quoted) {
+                throw new IllegalArgumentException(MALFORMED_MSG);
+            }
+            fields.add(field.toString());
+            return fields;
+        }
+
+        /**
+         * Parses flat JSON object with string or null values.
+         */
+        private static Map<String, String> parseJson(String text) {
+            Map<String, String> values = new HashMap<>();
+            int[] at = {skip(text, 0)};
+            expect(text, at, '{');
+            if (peek(text, at) == '}') {
+                return values;
+            }
+            do {
+                String name = string(text, at);
+                expect(text, at, ':');
+                String value;
+                if (text.startsWith("null", at[0])) {
+                    at[0] = skip(text, at[0] + 4);
+                    value = null;
+                } else {
+                    value = string(text, at);
+                }
+                values.put(name, value);
+            } while (peek(text, at) == ',' && ++at[0] > 0);
+            expect(text, at, '}');
+            if (at[0] != text.length()) {
+                throw new IllegalArgumentException(MALFORMED_MSG);
+            }
+            return values;
+        }
+
+        private static String string(String text, int[] at) {
+            expect(text, at, '"');
+            StringBuilder s = new StringBuilder();
+            int i = at[0];
+            for (; i < text.length() && text.charAt(i) != '"'; i++) {
+                char c = text.charAt(i);
+                if (c != '\\') {
+                    s.append(c);
+                    continue;
+                }
+                if (++i >= text.length()) {
+                    break;
+                }
+                c = text.charAt(i);
+                switch (c) {
+                    case 'b':
+                        s.append('\b');
+                        break;
+                    case 'f':
+                        s.append('\f');
+                        break;
+                    case 'n':
+                        s.append('\n');
+                        break;
+                    case 'r':
+                        s.append('\r');
+                        break;
+                    case 't':
+                        s.append('\t');
+                        break;
+                    case 'u':
+                        if (i + 4 >= text.length()) {
+                            throw new IllegalArgumentException(MALFORMED_MSG);
+                        }
+                        s.append((char) Integer.parseInt(text.substring(i + 1,
+                                i + 5), 16));
+                        i += 4;
+                        break;
+                    default:
+                        s.append(c);
+                }
+            }
+            if (i >= text.length()) {
+                throw new IllegalArgumentException(MALFORMED_MSG);
+            }
+            at[0] = skip(text, i + 1);
+            return s.toString();
+        }
+
+        private static void expect(String text, int[] at, char c) {
+            if (peek(text, at) != c) {
+                throw new IllegalArgumentException(MALFORMED_MSG);
+            }
+            at[0] = skip(text, at[0] + 1);
+        }
+
+        private static char peek(String text, int[] at) {
+            return at[0] < text.length() ? text.charAt(at[0]) : 0;
+        }
+
+        private static int skip(String text, int i) {
+            while (i < text.length() && Character.isWhitespace(text
+                    .charAt(i))) {
+                i++;
+            }
+            return i;
+        }
+
+    }
+
+    /**
+     * State of import, which is stored into checkpoint file.
+     */
+    private static class Progress {
+
+        private long offset, line, imported, duplicates, rejected;
+
+        static Progress load(Path checkpoint) throws IOException {
+            Progress progress = new Progress();
+            if (!Files.exists(checkpoint)) {
+                return progress;
+            }
+            Properties p = new Properties();
+            try (InputStream in = Files.newInputStream(checkpoint)) {
+                p.load(in);
+            }
+            progress.offset = Long.parseLong(p.getProperty("offset", "0"));
+            progress.line = Long.parseLong(p.getProperty("line", "0"));
+            progress.imported = Long.parseLong(p.getProperty("imported",
+                    "0"));
+            progress.duplicates = Long.parseLong(p.getProperty("duplicates",
+                    "0"));
+            progress.rejected = Long.parseLong(p.getProperty("rejected",
+                    "0"));
+            LOGGER.info("Resuming import from line {}.", progress.line + 1);
+            return progress;
+        }
+
+        void store(Path checkpoint) {
+            Properties p = new Properties();
+            p.setProperty("offset", String.valueOf(offset));
+            p.setProperty("line", String.valueOf(line));
+            p.setProperty("imported", String.valueOf(imported));
+            p.setProperty("duplicates", String.valueOf(duplicates));
+            p.setProperty("rejected", String.valueOf(rejected));
+            Path tmp = checkpoint.resolveSibling(checkpoint.getFileName()
+                    + ".tmp");
+            try {
+                try (OutputStream out = Files.newOutputStream(tmp)) {
+                    p.store(out, null);
+                }
+                Files.move(tmp, checkpoint,
+                        StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+    }
+
+    /**
+     * Result of import.
+     */
+    public static class Report {
+
+        private final long imported, duplicates, rejected, processed,
+                resumedLine, elapsedNanos;
+
+        private final List<String> errors;
+
+        Report(long imported, long duplicates, long rejected, long processed,
+                long resumedLine, List<String> errors, long elapsedNanos) {
+            this.imported = imported;
+            this.duplicates = duplicates;
+            this.rejected = rejected;
+            this.processed = processed;
+            this.resumedLine = resumedLine;
+            this.errors = Collections.unmodifiableList(errors);
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        /**
+         * @return amount of inserted accounts, including previous runs
+         */
+        public long getImported() {
+            return imported;
+        }
+
+        /**
+         * @return amount of skipped registered names, including previous
+         *         runs
+         */
+        public long getDuplicates() {
+            return duplicates;
+        }
+
+        /**
+         * @return amount of invalid records, including previous runs
+         */
+        public long getRejected() {
+            return rejected;
+        }
+
+        /**
+         * @return amount of records, processed by this run
+         */
+        public long getProcessed() {
+            return processed;
+        }
+
+        /**
+         * @return last line of checkpoint, this run has started after
+         */
+        public long getResumedLine() {
+            return resumedLine;
+        }
+
+        /**
+         * @return first errors of this run with line numbers
+         */
+        public List<String> getErrors() {
+            return errors;
+        }
+
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        public long getRowsPerSecond() {
+            return elapsedNanos == 0 ? 0
+                           : processed * 1_000_000_000L / elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            return "Report{imported=" + imported + ", duplicates="
+                           + duplicates + ", rejected=" + rejected
+                           + ", processed=" + processed + ", rowsPerSecond="
+                           + getRowsPerSecond() + '}';
+        }
+
+    }
+
+}
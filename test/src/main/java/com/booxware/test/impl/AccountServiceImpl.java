@@ -18,20 +18,37 @@ package com.booxware.test.impl;
 import com.booxware.test.Account;
 import com.booxware.test.AccountServiceException;
 import com.booxware.test.AccountServiceInterface;
+import com.booxware.test.LastLogin;
+import com.booxware.test.LoginActivity;
 import com.booxware.test.PersistenceInterface;
+import com.booxware.test.Registration;
+import com.booxware.test.RegistrationResult;
+import com.booxware.test.SessionToken;
+import com.booxware.test.Timed;
 import com.booxware.test.WrapExceptions;
-import java.nio.charset.Charset;
+import com.booxware.test.util.CredentialCodec;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
 import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
 import java.util.Date;
-import java.util.Optional;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import javax.validation.ConstraintViolation;
+import javax.validation.ConstraintViolationException;
+import javax.validation.Validator;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.security.crypto.bcrypt.BCrypt;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
-import static org.springframework.util.Assert.noNullElements;
 import static org.springframework.util.Assert.notNull;
-import static org.springframework.util.Assert.isTrue;
-import static org.springframework.util.Assert.isNull;
 
 /**
  * Account Service implementation, do all necessary jobs, provided by interface
@@ -55,6 +72,42 @@ public class AccountServiceImpl implements AccountServiceInterface {
      */
     @Autowired
     private PersistenceInterface persistence;
+    /**
+     * Executor for password hash calculations.
+     */
+    @Autowired
+    private PasswordHashingEngine hashingEngine;
+    /**
+     * Write-behind buffer of last login dates.
+     */
+    @Autowired
+    private LastLoginBuffer lastLoginBuffer;
+    /**
+     * Rejects logins of usernames with too many recent failures.
+     */
+    @Autowired
+    private LoginThrottle loginThrottle;
+    /**
+     * In-memory index of last login dates, maintained on login and deletion.
+     */
+    @Autowired
+    private LoginAnalytics analytics;
+    /**
+     * Issues and verifies session tokens.
+     */
+    @Autowired
+    private SessionTokens sessionTokens;
+    /**
+     * Bean validator, used to reject invalid bulk registration items before
+     * they reach the database.
+     */
+    @Autowired(required = false)
+    private Validator validator;
+    /**
+     * Amount of bulk registration items, stored within one transaction.
+     */
+    @Value("${booxware.registration.chunkSize:500}")
+    private int registrationChunkSize;
     /**
      * String constants for message templates.
      */
@@ -65,7 +118,9 @@ public class AccountServiceImpl implements AccountServiceInterface {
                                              + "already registered.",
             EMPTY_PARAMETERS_MSG = "Service is not accepting an "
                                            + "empty parameters.",
-            WRONG_PASSWORD_MSG = "Wrong password.";
+            WRONG_PASSWORD_MSG = "Wrong password.",
+            THROTTLED_MSG = "Too many failed logins of {0}, "
+                                    + "try again later.";
 
     /**
      * {@inheritDoc }
@@ -76,18 +131,72 @@ public class AccountServiceImpl implements AccountServiceInterface {
      * @return
      */
     @Override
-    @WrapExceptions(type = AccountServiceException.class)
+    @Timed
+    @WrapExceptions(type = AccountServiceException.class, stackless = true)
     public Account login(String username, String password) {
-        noNullElements(new Object[]{username, password},
-                EMPTY_PARAMETERS_MSG);
+        notNull(username, EMPTY_PARAMETERS_MSG);
+        notNull(password, EMPTY_PARAMETERS_MSG);
+        requireTrue(!loginThrottle.isBlocked(username), THROTTLED_MSG,
+                username);
         Account account = persistence.findByName(username);
-        notNull(account, MessageFormat
-                .format(NOT_REGISTERED_MSG, username));
-        isTrue(checkPwd(password, account), WRONG_PASSWORD_MSG);
+        if (account == null) {
+            loginThrottle.recordFailure(username);
+        }
+        requireNotNull(account, NOT_REGISTERED_MSG, username);
+        if (!checkPwd(password, account)) {
+            loginThrottle.recordFailure(username);
+            throw new IllegalArgumentException(WRONG_PASSWORD_MSG);
+        }
+        loginThrottle.recordSuccess(username);
+        boolean changed = migrateCredential(account);
+        // weaker hashes are upgraded, stronger ones are kept as they are
+        if (CredentialCodec.cost(account.getEncryptedPassword())
+                    < hashingEngine.getCost()) {
+            genPwdHash(password, account);
+            changed = true;
+            LOGGER.debug("Rehashed password of Account {}.", username);
+        }
         Date now = new Date(System.currentTimeMillis());
         LOGGER.debug("User {} logged in at {}.", username, now);
         account.setLastLogin(now);
-        return persistence.save(account);
+        if (lastLoginBuffer.isEnabled() && !changed) {
+            lastLoginBuffer.record(username, now);
+            analytics.loggedIn(username, now);
+            return account;
+        }
+        Account saved = persistence.save(account);
+        analytics.loggedIn(username, saved.getLastLogin());
+        return saved;
+    }
+
+    /**
+     * {@inheritDoc }
+     *
+     * @param username
+     * @param password
+     *
+     * @return
+     */
+    @Override
+    @Timed
+    @WrapExceptions(type = AccountServiceException.class, stackless = true)
+    public SessionToken loginForToken(String username, String password) {
+        return sessionTokens.issue(login(username, password));
+    }
+
+    /**
+     * {@inheritDoc }
+     *
+     * @param token
+     *
+     * @return
+     */
+    @Override
+    @Timed
+    @WrapExceptions(type = AccountServiceException.class, stackless = true)
+    public SessionToken validateToken(String token) {
+        notNull(token, EMPTY_PARAMETERS_MSG);
+        return sessionTokens.validate(token);
     }
 
     /**
@@ -100,12 +209,14 @@ public class AccountServiceImpl implements AccountServiceInterface {
      * @return
      */
     @Override
-    @WrapExceptions(type = AccountServiceException.class)
+    @Timed
+    @WrapExceptions(type = AccountServiceException.class, stackless = true)
     public Account register(String username, String email, String password) {
-        noNullElements(new Object[]{username, email, password},
-                EMPTY_PARAMETERS_MSG);
-        isNull(persistence.findByName(username), MessageFormat
-                .format(ALREADY_REGISTERED_MSG, username));
+        notNull(username, EMPTY_PARAMETERS_MSG);
+        notNull(email, EMPTY_PARAMETERS_MSG);
+        notNull(password, EMPTY_PARAMETERS_MSG);
+        requireNull(persistence.findByName(username), ALREADY_REGISTERED_MSG,
+                username);
         Account account = new Account(username, email);
         genPwdHash(password, account);
         account = persistence.save(account);
@@ -113,20 +224,50 @@ public class AccountServiceImpl implements AccountServiceInterface {
         return account;
     }
 
+    /**
+     * {@inheritDoc }
+     * Items are processed by chunks: one query to check names, password
+     * hashing by all workers of hashing engine and one batched insert per
+     * chunk. If chunk could not
+     * be stored, its items are stored one by one to find broken ones.
+     *
+     * @param registrations
+     *
+     * @return
+     */
+    @Override
+    @Timed
+    @WrapExceptions(type = AccountServiceException.class, stackless = true)
+    public List<RegistrationResult> registerAll(
+            Collection<Registration> registrations) {
+        notNull(registrations, EMPTY_PARAMETERS_MSG);
+        List<Registration> items = new ArrayList<>(registrations);
+        RegistrationResult[] results = new RegistrationResult[items.size()];
+        int chunkSize = Math.max(1, registrationChunkSize);
+        for (int from = 0; from < items.size(); from += chunkSize) {
+            registerChunk(items, from, Math.min(from + chunkSize,
+                    items.size()), results);
+        }
+        LOGGER.debug("Processed {} bulk registration items.", items.size());
+        return Arrays.asList(results);
+    }
+
     /**
      * {@inheritDoc }
      *
      * @param username
      */
     @Override
-    @WrapExceptions(type = AccountServiceException.class)
+    @Timed
+    @WrapExceptions(type = AccountServiceException.class, stackless = true)
     public void deleteAccount(String username) {
         notNull(username, EMPTY_PARAMETERS_MSG);
-        Account account = persistence.findByName(username);
-        notNull(account, MessageFormat
-                .format(NOT_REGISTERED_MSG, username));
-        persistence.delete(account);
-        LOGGER.debug("Deleted Account enetity {}.", account);
+        requireTrue(persistence.deleteByName(username), NOT_REGISTERED_MSG,
+                username);
+        lastLoginBuffer.discard(username);
+        analytics.deleted(username);
+        sessionTokens.revoke(username);
+        LOGGER.debug("Deleted Account entity {}.", username);
     }
 
     /**
@@ -138,16 +279,173 @@ public class AccountServiceImpl implements AccountServiceInterface {
      * @return
      */
     @Override
-    @WrapExceptions(type = AccountServiceException.class)
+    @Timed
+    @WrapExceptions(type = AccountServiceException.class, stackless = true)
     public boolean hasLoggedInSince(String username, Date date) {
-        noNullElements(new Object[]{username, date},
-                EMPTY_PARAMETERS_MSG);
-        Account account = persistence.findByName(username);
-        notNull(account, MessageFormat
-                .format(NOT_REGISTERED_MSG, username));
-        return Optional.ofNullable(account.getLastLogin())
-                .map(d -> !d.before(date))
-                .orElse(Boolean.FALSE);
+        notNull(username, EMPTY_PARAMETERS_MSG);
+        notNull(date, EMPTY_PARAMETERS_MSG);
+        LastLogin projection = persistence.findLastLoginByName(username);
+        requireNotNull(projection, NOT_REGISTERED_MSG, username);
+        Date lastLogin = latest(projection.getLastLogin(),
+                lastLoginBuffer.get(username));
+        return lastLogin != null && !lastLogin.before(date);
+    }
+
+    /**
+     * {@inheritDoc }
+     * Pending dates of write-behind buffer are taken into account.
+     *
+     * @param usernames
+     * @param date
+     *
+     * @return
+     */
+    @Override
+    @Timed
+    @WrapExceptions(type = AccountServiceException.class, stackless = true)
+    public LoginActivity hasLoggedInSince(Collection<String> usernames,
+            Date date) {
+        notNull(usernames, EMPTY_PARAMETERS_MSG);
+        notNull(date, EMPTY_PARAMETERS_MSG);
+        Map<String, Date> lastLogins = persistence.findLastLogins(
+                usernames.stream().filter(u -> u != null)
+                        .collect(Collectors.toSet()));
+        BitSet loggedIn = new BitSet(usernames.size()),
+                unknown = new BitSet(usernames.size());
+        int i = 0;
+        for (String username : usernames) {
+            if (username == null || !lastLogins.containsKey(username)) {
+                unknown.set(i++);
+                continue;
+            }
+            Date lastLogin = latest(lastLogins.get(username),
+                    lastLoginBuffer.get(username));
+            loggedIn.set(i++, lastLogin != null && !lastLogin.before(date));
+        }
+        LOGGER.debug("Checked logins of {} users.", usernames.size());
+        return new LoginActivity(usernames.size(), loggedIn, unknown);
+    }
+
+    /**
+     * Registers bulk items within [from, to) range, results are stored at the
+     * same positions.
+     *
+     * @param items
+     * @param from
+     * @param to
+     * @param results
+     */
+    private void registerChunk(List<Registration> items, int from, int to,
+            RegistrationResult[] results) {
+        Set<String> names = new HashSet<>();
+        for (int i = from; i < to; i++) {
+            Registration r = items.get(i);
+            if (r == null || r.getUsername() == null || r.getEmail() == null
+                        || r.getPassword() == null) {
+                results[i] = RegistrationResult.failure(r == null ? null
+                        : r.getUsername(), EMPTY_PARAMETERS_MSG);
+            } else {
+                names.add(r.getUsername());
+            }
+        }
+        Set<String> taken = new HashSet<>(persistence
+                .findExistingNames(names));
+        List<Integer> accepted = new ArrayList<>();
+        for (int i = from; i < to; i++) {
+            if (results[i] != null) {
+                continue;
+            }
+            String username = items.get(i).getUsername();
+            if (taken.add(username)) {
+                accepted.add(i);
+            } else {
+                results[i] = RegistrationResult.failure(username, MessageFormat
+                        .format(ALREADY_REGISTERED_MSG, username));
+            }
+        }
+        List<Account> accounts = new ArrayList<>(accepted.size());
+        List<Future<String>> hashes = new ArrayList<>(accepted.size());
+        for (Integer i : accepted) {
+            Registration r = items.get(i);
+            accounts.add(new Account(r.getUsername(), r.getEmail()));
+            hashes.add(hashingEngine.submitHashpw(r.getPassword(),
+                    hashingEngine.gensalt()));
+        }
+        for (int k = 0; k < accounts.size(); k++) {
+            try {
+                accounts.get(k).setEncryptedPassword(CredentialCodec
+                        .encode(hashingEngine.await(hashes.get(k))));
+            } catch (IllegalStateException e) {
+                // timeout of one hash fails only its item
+                results[accepted.get(k)] = RegistrationResult.failure(
+                        accounts.get(k).getUsername(), e.getMessage());
+            }
+        }
+        List<Integer> valid = new ArrayList<>();
+        List<Account> toSave = new ArrayList<>();
+        for (int k = 0; k < accepted.size(); k++) {
+            if (results[accepted.get(k)] != null) {
+                continue;
+            }
+            Account account = accounts.get(k);
+            String error = validate(account);
+            if (error == null) {
+                valid.add(accepted.get(k));
+                toSave.add(account);
+            } else {
+                results[accepted.get(k)] = RegistrationResult
+                        .failure(account.getUsername(), error);
+            }
+        }
+        if (toSave.isEmpty()) {
+            return;
+        }
+        try {
+            List<Account> saved = persistence.saveAll(toSave);
+            for (int k = 0; k < valid.size(); k++) {
+                results[valid.get(k)] = RegistrationResult
+                        .success(saved.get(k));
+            }
+        } catch (RuntimeException e) {
+            LOGGER.debug("Bulk registration chunk failed, retrying items "
+                                 + "one by one.", e);
+            for (int k = 0; k < valid.size(); k++) {
+                Account account = toSave.get(k);
+                account.setId(null);
+                try {
+                    results[valid.get(k)] = RegistrationResult
+                            .success(persistence.save(account));
+                } catch (RuntimeException ie) {
+                    results[valid.get(k)] = RegistrationResult.failure(
+                            account.getUsername(),
+                            ExceptionAspects.describe(ie));
+                }
+            }
+        }
+    }
+
+    /**
+     * Validates Account entity, if validator is available.
+     *
+     * @param account
+     *
+     * @return error message or null, if entity is valid
+     */
+    private String validate(Account account) {
+        if (validator == null) {
+            return null;
+        }
+        // identifier is generated by persistence provider, so it's not
+        // checked here
+        Set<ConstraintViolation<Account>> violations = validator
+                .validate(account).stream()
+                .filter(cv -> !"id".equals(cv.getPropertyPath().toString()))
+                .collect(Collectors.toSet());
+        if (violations.isEmpty()) {
+            return null;
+        }
+        return ExceptionAspects.describe(
+                new ConstraintViolationException(violations));
     }
 
     /**
@@ -157,10 +455,9 @@ public class AccountServiceImpl implements AccountServiceInterface {
      * @param account
      */
     private void genPwdHash(String passwd, Account account) {
-        String salt = BCrypt.gensalt();
-        String pwdHash = BCrypt.hashpw(passwd, salt);
-        account.setSalt(salt);
-        account.setEncryptedPassword(pwdHash.getBytes(Charset.forName("UTF8")));
+        String salt = hashingEngine.gensalt();
+        String pwdHash = hashingEngine.hashpw(passwd, salt);
+        account.setEncryptedPassword(CredentialCodec.encode(pwdHash));
     }
 
     /**
@@ -173,10 +470,112 @@ public class AccountServiceImpl implements AccountServiceInterface {
      * @return
      */
     private boolean checkPwd(String passwd, Account account) {
-        String checkHash = BCrypt.hashpw(passwd, account.getSalt());
-        String accountHash = new String(account.getEncryptedPassword(),
-                Charset.forName("UTF8"));
-        return accountHash.equals(checkHash);
+        byte[] credential = account.getEncryptedPassword();
+        if (credential == null) {
+            return checkLegacyPwd(passwd, account);
+        }
+        String checkHash = hashingEngine.hashpw(passwd, CredentialCodec
+                .salt(credential));
+        return CredentialCodec.matches(credential, checkHash);
+    }
+
+    /**
+     * Check password of Account, which has not been migrated to compact
+     * credential yet.
+     *
+     * @param passwd
+     * @param account
+     *
+     * @return
+     */
+    private boolean checkLegacyPwd(String passwd, Account account) {
+        if (account.getLegacyPassword() == null || account.getSalt() == null) {
+            return false;
+        }
+        String checkHash = hashingEngine.hashpw(passwd, account.getSalt());
+        return MessageDigest.isEqual(account.getLegacyPassword(),
+                checkHash.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Moves legacy hash string of Account into compact credential.
+     *
+     * @param account
+     *
+     * @return true, if Account has been changed
+     */
+    private boolean migrateCredential(Account account) {
+        if (account.getEncryptedPassword() != null) {
+            return false;
+        }
+        account.setEncryptedPassword(CredentialCodec.encode(new String(
+                account.getLegacyPassword(), StandardCharsets.UTF_8)));
+        account.setLegacyPassword(null);
+        account.setSalt(null);
+        LOGGER.debug("Migrated credential of Account {}.",
+                account.getUsername());
+        return true;
+    }
+
+    /**
+     * Later one of stored and pending last login dates.
+     *
+     * @param stored
+     * @param pending
+     *
+     * @return
+     */
+    private static Date latest(Date stored, Date pending) {
+        return pending != null && (stored == null || stored.before(pending))
+                       ? pending : stored;
+    }
+
+    /**
+     * Same as {@link org.springframework.util.Assert#notNull}, but message
+     * is formatted only in case of failure.
+     *
+     * @param object
+     * @param template
+     * @param arg
+     */
+    private static void requireNotNull(Object object, String template,
+            Object arg) {
+        if (object == null) {
+            throw new IllegalArgumentException(MessageFormat
+                    .format(template, arg));
+        }
+    }
+
+    /**
+     * Same as {@link org.springframework.util.Assert#isNull}, but message is
+     * formatted only in case of failure.
+     *
+     * @param object
+     * @param template
+     * @param arg
+     */
+    private static void requireNull(Object object, String template,
+            Object arg) {
+        if (object != null) {
+            throw new IllegalArgumentException(MessageFormat
+                    .format(template, arg));
+        }
+    }
+
+    /**
+     * Same as {@link org.springframework.util.Assert#isTrue}, but message is
+     * formatted only in case of failure.
+     *
+     * @param expression
+     * @param template
+     * @param arg
+     */
+    private static void requireTrue(boolean expression, String template,
+            Object arg) {
+        if (!expression) {
+            throw new IllegalArgumentException(MessageFormat
+                    .format(template, arg));
+        }
     }
 
 }
@@ -0,0 +1,195 @@
+/*
+ * Copyright 2017 Andrey Alexeenko <Andrey.Alexeenko at t-systems.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.booxware.test.impl;
+
+import com.booxware.test.Account;
+import com.booxware.test.AccountServiceException;
+import com.booxware.test.AccountServiceInterface;
+import com.booxware.test.AsyncAccountServiceInterface;
+import com.booxware.test.WrapExceptions;
+import java.util.Date;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+/**
+ * Asynchronous Account Service implementation, delegates every call to
+ * {@link AccountServiceInterface} bean, so business exceptions are already
+ * translated by {@link ExceptionAspects}.
+ * Calls are executed by executor bean named "accountServiceExecutor", if it
+ * is defined, else by virtual threads, if JVM supports them, else by
+ * internal fixed pool.
+ *
+ * @author Andrey Alexeenko <Andrey.Alexeenko at t-systems.com>
+ */
+@Service
+public class AsyncAccountServiceImpl implements AsyncAccountServiceInterface {
+
+    protected static final org.slf4j.Logger LOGGER = LoggerFactory
+            .getLogger(AsyncAccountServiceImpl.class);
+
+    @Autowired
+    private AccountServiceInterface accountService;
+    /**
+     * Optional executor, which takes precedence over internal ones.
+     */
+    @Autowired(required = false)
+    @Qualifier("accountServiceExecutor")
+    private Executor configuredExecutor;
+    /**
+     * Size of internal fallback pool.
+     */
+    @Value("${booxware.async.threads:16}")
+    private int threads;
+
+    private Executor executor;
+    /**
+     * Executor, created by this bean, which has to be closed.
+     */
+    private ExecutorService ownedExecutor;
+
+    @PostConstruct
+    private void init() {
+        if (configuredExecutor != null) {
+            executor = configuredExecutor;
+        } else {
+            ownedExecutor = newVirtualThreadExecutor();
+            if (ownedExecutor == null) {
+                ownedExecutor = Executors.newFixedThreadPool(Math.max(1,
+                        threads));
+            }
+            executor = ownedExecutor;
+        }
+        LOGGER.debug("Asynchronous account service uses {}.", executor);
+    }
+
+    @PreDestroy
+    private void destroy() {
+        if (ownedExecutor != null) {
+            ownedExecutor.shutdown();
+        }
+    }
+
+    /**
+     * {@inheritDoc }
+     *
+     * @param username
+     * @param password
+     *
+     * @return
+     */
+    @Override
+    @WrapExceptions(type = AccountServiceException.class)
+    public CompletableFuture<Account> loginAsync(String username,
+            String password) {
+        return call(() -> accountService.login(username, password));
+    }
+
+    /**
+     * {@inheritDoc }
+     *
+     * @param username
+     * @param email
+     * @param password
+     *
+     * @return
+     */
+    @Override
+    @WrapExceptions(type = AccountServiceException.class)
+    public CompletableFuture<Account> registerAsync(String username,
+            String email, String password) {
+        return call(() -> accountService.register(username, email, password));
+    }
+
+    /**
+     * {@inheritDoc }
+     *
+     * @param username
+     *
+     * @return
+     */
+    @Override
+    @WrapExceptions(type = AccountServiceException.class)
+    public CompletableFuture<Void> deleteAccountAsync(String username) {
+        return call(() -> {
+            accountService.deleteAccount(username);
+            return null;
+        });
+    }
+
+    /**
+     * {@inheritDoc }
+     *
+     * @param username
+     * @param date
+     *
+     * @return
+     */
+    @Override
+    @WrapExceptions(type = AccountServiceException.class)
+    public CompletableFuture<Boolean> hasLoggedInSinceAsync(String username,
+            Date date) {
+        return call(() -> accountService.hasLoggedInSince(username, date));
+    }
+
+    /**
+     * Runs the call by executor. Future is completed by the exception itself,
+     * not by {@link CompletionException}, to keep the same contract as
+     * synchronous service has.
+     *
+     * @param <T>
+     * @param call
+     *
+     * @return
+     */
+    private <T> CompletableFuture<T> call(Supplier<T> call) {
+        CompletableFuture<T> f = new CompletableFuture<>();
+        executor.execute(() -> {
+            try {
+                f.complete(call.get());
+            } catch (Throwable e) {
+                f.completeExceptionally(e);
+            }
+        });
+        return f;
+    }
+
+    /**
+     * Looks up Executors#newVirtualThreadPerTaskExecutor, which is available
+     * since Java 21.
+     *
+     * @return executor or null, if virtual threads are not supported
+     */
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class
+                    .getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2017 Andrey Alexeenko <Andrey.Alexeenko at t-systems.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.booxware.test.impl;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import org.hibernate.MappingException;
+import org.hibernate.engine.config.spi.ConfigurationService;
+import org.hibernate.id.enhanced.SequenceStyleGenerator;
+import org.hibernate.service.ServiceRegistry;
+import org.hibernate.type.Type;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Sequence generator, which takes optimizer and block size from persistence
+ * unit properties instead of mapping annotations, so allocation could be
+ * tuned per deployment:
+ * <ul>
+ * <li>booxware.id.optimizer - "pooled-lo" (default), "pooled" or "hilo";
+ * pooled optimizers expect sequence to be incremented by block size, hilo
+ * expects increment by one and multiplies its values by block size;</li>
+ * <li>booxware.id.blockSize - amount of IDs, allocated by one sequence
+ * call, 50 by default.</li>
+ * </ul>
+ * Increment of existing sequence is checked at startup by
+ * {@link IdAllocationValidator}.
+ *
+ * @author Andrey Alexeenko <Andrey.Alexeenko at t-systems.com>
+ */
+public class BlockSequenceGenerator extends SequenceStyleGenerator {
+
+    private static final org.slf4j.Logger LOGGER = LoggerFactory.getLogger(
+            BlockSequenceGenerator.class);
+
+    public static final String OPTIMIZER_SETTING = "booxware.id.optimizer",
+            BLOCK_SIZE_SETTING = "booxware.id.blockSize";
+
+    private static final List<String> OPTIMIZERS = Arrays.asList(
+            "pooled-lo", "pooled", "hilo");
+
+    /**
+     * {@inheritDoc }
+     *
+     * @param type
+     * @param params
+     * @param serviceRegistry
+     *
+     * @throws MappingException
+     */
+    @Override
+    public void configure(Type type, Properties params,
+            ServiceRegistry serviceRegistry) throws MappingException {
+        Map<?, ?> settings = serviceRegistry.getService(
+                ConfigurationService.class).getSettings();
+        String optimizer = setting(settings, OPTIMIZER_SETTING, "pooled-lo");
+        int blockSize;
+        try {
+            blockSize = Integer.parseInt(setting(settings, BLOCK_SIZE_SETTING,
+                    "50"));
+        } catch (NumberFormatException e) {
+            throw new MappingException("Invalid " + BLOCK_SIZE_SETTING, e);
+        }
+        if (!OPTIMIZERS.contains(optimizer) || blockSize < 1) {
+            throw new MappingException("Unsupported ID allocation "
+                                               + optimizer + " by "
+                                               + blockSize);
+        }
+        Properties adjusted = new Properties();
+        adjusted.putAll(params);
+        adjusted.setProperty(INCREMENT_PARAM, String.valueOf(blockSize));
+        adjusted.setProperty(OPT_PARAM, blockSize == 1 ? "none" : optimizer);
+        super.configure(type, adjusted, serviceRegistry);
+        LOGGER.info("IDs of {} are allocated by {} optimizer in blocks of "
+                            + "{}.", params.getProperty(ENTITY_NAME),
+                getOptimizer().getClass().getSimpleName(), blockSize);
+    }
+
+    private static String setting(Map<?, ?> settings, String name,
+            String defaultValue) {
+        Object value = settings.get(name);
+        return value == null || value.toString().trim().isEmpty()
+                       ? defaultValue : value.toString().trim();
+    }
+
+}
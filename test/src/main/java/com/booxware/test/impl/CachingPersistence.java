@@ -0,0 +1,525 @@
+/*
+ * Copyright 2017 Andrey Alexeenko <Andrey.Alexeenko at t-systems.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.booxware.test.impl;
+
+import com.booxware.test.Account;
+import com.booxware.test.AccountRecord;
+import com.booxware.test.LastLogin;
+import com.booxware.test.PersistenceInterface;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Near-cache decorator for {@link PersistenceInterface}, keeps Account
+ * entities by name. Cache is split into segments, every segment is LRU
+ * ordered map with own lock, so readers of different names don't contend.
+ * Entries are expired after configured time to live. Writes made through
+ * the decorator invalidate entries immediately, within a transaction they
+ * invalidate entries once more after its completion, so neither uncommitted
+ * nor rolled back state is cached. Entities loaded on a miss are cached
+ * only if no write of the name has happened since the load started.
+ * Cached entities are copied on the way in and out, because callers modify
+ * returned entities.
+ * Decorator is declared by "cached" profile of application context.
+ *
+ * @author Andrey Alexeenko <Andrey.Alexeenko at t-systems.com>
+ */
+public class CachingPersistence implements PersistenceInterface {
+
+    private static final int SEGMENTS = 16;
+
+    private final PersistenceInterface delegate;
+
+    private final Segment[] segments = new Segment[SEGMENTS];
+
+    private final long ttlNanos;
+
+    private final LongAdder hits = new LongAdder(),
+            misses = new LongAdder(),
+            evictions = new LongAdder(),
+            expirations = new LongAdder();
+
+    /**
+     * @param delegate
+     *                      actual persistence
+     * @param maximumSize
+     *                      maximum amount of cached entities
+     * @param ttlMillis
+     *                      time to live of cached entity
+     */
+    public CachingPersistence(PersistenceInterface delegate, int maximumSize,
+            long ttlMillis) {
+        this.delegate = delegate;
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+        int capacity = Math.max(1, (maximumSize + SEGMENTS - 1) / SEGMENTS);
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment(capacity);
+        }
+    }
+
+    /**
+     * {@inheritDoc }
+     *
+     * @param account
+     *
+     * @return
+     */
+    @Override
+    public Account save(Account account) {
+        Account saved = delegate.save(account);
+        written(saved.getUsername(), saved);
+        return saved;
+    }
+
+    /**
+     * {@inheritDoc }
+     *
+     * @param accounts
+     *
+     * @return
+     */
+    @Override
+    public List<Account> saveAll(Collection<Account> accounts) {
+        List<Account> saved = delegate.saveAll(accounts);
+        saved.forEach(account -> written(account.getUsername(), account));
+        return saved;
+    }
+
+    /**
+     * {@inheritDoc }
+     * Cached entities get the same last login dates, within a transaction
+     * they are invalidated instead.
+     *
+     * @param lastLogins
+     */
+    @Override
+    public void updateLastLogins(Map<String, Date> lastLogins) {
+        delegate.updateLastLogins(lastLogins);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            lastLogins.keySet().forEach(name -> written(name, null));
+            return;
+        }
+        lastLogins.forEach((name, date) -> {
+            Segment segment = segmentFor(name);
+            synchronized (segment) {
+                segment.loads.remove(name);
+                Entry entry = segment.get(name);
+                if (entry != null && (entry.account.getLastLogin() == null
+                                              || entry.account.getLastLogin()
+                                .before(date))) {
+                    Account account = new Account(entry.account);
+                    account.setLastLogin(new Date(date.getTime()));
+                    segment.put(name, new Entry(account, entry.expiresAt));
+                }
+            }
+        });
+    }
+
+    /**
+     * {@inheritDoc }
+     *
+     * @param id
+     *
+     * @return
+     */
+    @Override
+    public Account findById(Long id) {
+        return delegate.findById(id);
+    }
+
+    /**
+     * {@inheritDoc }
+     *
+     * @param name
+     *
+     * @return
+     */
+    @Override
+    public Account findByName(String name) {
+        Entry entry = cached(name);
+        if (entry != null) {
+            hits.increment();
+            return new Account(entry.account);
+        }
+        misses.increment();
+        return load(name);
+    }
+
+    /**
+     * {@inheritDoc }
+     * Cached entity is used, if it presents, otherwise entity is loaded and
+     * cached, so the next checks of the name are served by the cache.
+     * Within a read-write transaction loaded entity would not be cached, so
+     * only the projection is queried.
+     *
+     * @param name
+     *
+     * @return
+     */
+    @Override
+    public LastLogin findLastLoginByName(String name) {
+        Entry entry = cached(name);
+        if (entry != null) {
+            hits.increment();
+            return new LastLogin(name, entry.account.getLastLogin());
+        }
+        misses.increment();
+        if (inWriteTransaction()) {
+            return delegate.findLastLoginByName(name);
+        }
+        Account account = load(name);
+        return account == null ? null : new LastLogin(name, account
+                .getLastLogin());
+    }
+
+    /**
+     * {@inheritDoc }
+     *
+     * @param names
+     *
+     * @return
+     */
+    @Override
+    public Set<String> findExistingNames(Collection<String> names) {
+        return delegate.findExistingNames(names);
+    }
+
+    /**
+     * {@inheritDoc }
+     *
+     * @param names
+     *
+     * @return
+     */
+    @Override
+    public Map<String, Date> findLastLogins(Collection<String> names) {
+        return delegate.findLastLogins(names);
+    }
+
+    /**
+     * {@inheritDoc }
+     *
+     * @param consumer
+     */
+    @Override
+    public void forEachName(Consumer<String> consumer) {
+        delegate.forEachName(consumer);
+    }
+
+    /**
+     * {@inheritDoc }
+     *
+     * @param consumer
+     */
+    @Override
+    public void forEachAccount(Consumer<AccountRecord> consumer) {
+        delegate.forEachAccount(consumer);
+    }
+
+    /**
+     * {@inheritDoc }
+     *
+     * @param account
+     */
+    @Override
+    public void delete(Account account) {
+        try {
+            delegate.delete(account);
+        } finally {
+            written(account.getUsername(), null);
+        }
+    }
+
+    /**
+     * {@inheritDoc }
+     *
+     * @param name
+     *
+     * @return
+     */
+    @Override
+    public boolean deleteByName(String name) {
+        try {
+            return delegate.deleteByName(name);
+        } finally {
+            written(name, null);
+        }
+    }
+
+    /**
+     * Removes cached entity and cancels caching of entity, which is being
+     * loaded.
+     *
+     * @param name
+     */
+    public void invalidate(String name) {
+        if (name == null) {
+            return;
+        }
+        Segment segment = segmentFor(name);
+        synchronized (segment) {
+            segment.remove(name);
+            segment.loads.remove(name);
+        }
+    }
+
+    /**
+     * Removes all cached entities.
+     */
+    public void invalidateAll() {
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                segment.clear();
+                segment.loads.clear();
+            }
+        }
+    }
+
+    /**
+     * Current cache metrics.
+     *
+     * @return
+     */
+    public Statistics getStatistics() {
+        long size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return new Statistics(hits.sum(), misses.sum(), evictions.sum(),
+                expirations.sum(), size);
+    }
+
+    private void put(Account account) {
+        if (account == null || account.getUsername() == null) {
+            return;
+        }
+        Entry entry = new Entry(new Account(account),
+                System.nanoTime() + ttlNanos);
+        Segment segment = segmentFor(account.getUsername());
+        synchronized (segment) {
+            segment.put(account.getUsername(), entry);
+        }
+    }
+
+    /**
+     * Cached entity, which has not expired yet.
+     *
+     * @param name
+     *
+     * @return entry or null
+     */
+    private Entry cached(String name) {
+        Segment segment = segmentFor(name);
+        synchronized (segment) {
+            Entry entry = segment.get(name);
+            if (entry != null && entry.expiresAt - System.nanoTime() < 0) {
+                segment.remove(name);
+                expirations.increment();
+                entry = null;
+            }
+            return entry;
+        }
+    }
+
+    /**
+     * Loads entity on a miss, the entity is cached, unless the name has been
+     * written meanwhile.
+     *
+     * @param name
+     *
+     * @return
+     */
+    private Account load(String name) {
+        Object token = new Object();
+        Segment segment = segmentFor(name);
+        synchronized (segment) {
+            segment.loads.put(name, token);
+        }
+        Account account = null;
+        try {
+            account = delegate.findByName(name);
+        } finally {
+            fill(name, account, token);
+        }
+        return account;
+    }
+
+    /**
+     * Invalidates written entity. Outside of a transaction written entity is
+     * cached at once, otherwise entity is invalidated once more after the
+     * transaction completion, because loads made meanwhile could see the
+     * previous state.
+     *
+     * @param name
+     * @param account
+     *                    written entity or null, if it has been deleted
+     */
+    private void written(String name, Account account) {
+        invalidate(name);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(
+                    new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCompletion(int status) {
+                    invalidate(name);
+                }
+            });
+        } else if (account != null) {
+            put(account);
+        }
+    }
+
+    /**
+     * Caches entity loaded on a miss, unless the name has been written or
+     * invalidated since the load started, or the load is a part of a
+     * transaction, which may see own uncommitted writes.
+     *
+     * @param name
+     * @param account
+     * @param token
+     *                    token registered by the load
+     */
+    private void fill(String name, Account account, Object token) {
+        boolean cacheable = account != null && !inWriteTransaction();
+        Segment segment = segmentFor(name);
+        synchronized (segment) {
+            if (segment.loads.remove(name, token) && cacheable) {
+                segment.put(name, new Entry(new Account(account),
+                        System.nanoTime() + ttlNanos));
+            }
+        }
+    }
+
+    private static boolean inWriteTransaction() {
+        return TransactionSynchronizationManager.isActualTransactionActive()
+                       && !TransactionSynchronizationManager
+                .isCurrentTransactionReadOnly();
+    }
+
+    private Segment segmentFor(String name) {
+        int h = name.hashCode();
+        h ^= h >>> 16;
+        return segments[h & (SEGMENTS - 1)];
+    }
+
+    /**
+     * Cached entity with expiration time.
+     */
+    private static class Entry {
+
+        private final Account account;
+
+        private final long expiresAt;
+
+        Entry(Account account, long expiresAt) {
+            this.account = account;
+            this.expiresAt = expiresAt;
+        }
+
+    }
+
+    /**
+     * Access ordered map, which drops least recently used entry on overflow.
+     * Tokens of loads in progress are kept by name, write of the name
+     * removes the token, so the load doesn't cache its result.
+     */
+    private class Segment extends LinkedHashMap<String, Entry> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int capacity;
+
+        private final Map<String, Object> loads = new HashMap<>();
+
+        Segment(int capacity) {
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+            if (size() <= capacity) {
+                return false;
+            }
+            evictions.increment();
+            return true;
+        }
+
+    }
+
+    /**
+     * Immutable snapshot of cache metrics.
+     */
+    public static class Statistics {
+
+        private final long hits, misses, evictions, expirations, size;
+
+        Statistics(long hits, long misses, long evictions, long expirations,
+                long size) {
+            this.hits = hits;
+            this.misses = misses;
+            this.evictions = evictions;
+            this.expirations = expirations;
+            this.size = size;
+        }
+
+        public long getHits() {
+            return hits;
+        }
+
+        public long getMisses() {
+            return misses;
+        }
+
+        public long getEvictions() {
+            return evictions;
+        }
+
+        public long getExpirations() {
+            return expirations;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public double getHitRate() {
+            long requests = hits + misses;
+            return requests == 0 ? 0 : (double) hits / requests;
+        }
+
+        @Override
+        public String toString() {
+            return "Statistics{hits=" + hits + ", misses=" + misses
+                           + ", evictions=" + evictions + ", expirations="
+                           + expirations + ", size=" + size + '}';
+        }
+
+    }
+
+}
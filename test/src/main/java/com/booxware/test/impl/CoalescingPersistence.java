@@ -0,0 +1,330 @@
+/*
+ * Copyright 2017 Andrey Alexeenko <Andrey.Alexeenko at t-systems.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.booxware.test.impl;
+
+import com.booxware.test.Account;
+import com.booxware.test.AccountRecord;
+import com.booxware.test.LastLogin;
+import com.booxware.test.PersistenceInterface;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Single-flight decorator for {@link PersistenceInterface#findByName}.
+ * Concurrent lookups of the same name share one delegate call: the first
+ * caller registers a future by name and executes the lookup, others wait
+ * for that future only, so lookups of different names never wait for each
+ * other. Result is not kept after completion, so it's not a cache, and
+ * writes through the decorator detach in-flight lookups of written names,
+ * so later callers don't get state, which has been read before the write.
+ * Every caller gets own copy of the entity.
+ * Decorator is declared by "coalesced" profile of application context.
+ *
+ * @author Andrey Alexeenko <Andrey.Alexeenko at t-systems.com>
+ */
+public class CoalescingPersistence implements PersistenceInterface {
+
+    private final PersistenceInterface delegate;
+
+    private final Map<String, CompletableFuture<Account>> inFlight
+                                                                  = new ConcurrentHashMap<>();
+
+    private final LongAdder executed = new LongAdder(),
+            coalesced = new LongAdder();
+
+    /**
+     * @param delegate
+     *                 actual persistence
+     */
+    public CoalescingPersistence(PersistenceInterface delegate) {
+        this.delegate = delegate;
+    }
+
+    /**
+     * {@inheritDoc }
+     *
+     * @param account
+     *
+     * @return
+     */
+    @Override
+    public Account save(Account account) {
+        try {
+            return delegate.save(account);
+        } finally {
+            detach(account.getUsername());
+        }
+    }
+
+    /**
+     * {@inheritDoc }
+     *
+     * @param accounts
+     *
+     * @return
+     */
+    @Override
+    public List<Account> saveAll(Collection<Account> accounts) {
+        try {
+            return delegate.saveAll(accounts);
+        } finally {
+            accounts.forEach(a -> detach(a.getUsername()));
+        }
+    }
+
+    /**
+     * {@inheritDoc }
+     *
+     * @param lastLogins
+     */
+    @Override
+    public void updateLastLogins(Map<String, Date> lastLogins) {
+        try {
+            delegate.updateLastLogins(lastLogins);
+        } finally {
+            lastLogins.keySet().forEach(this::detach);
+        }
+    }
+
+    /**
+     * {@inheritDoc }
+     *
+     * @param id
+     *
+     * @return
+     */
+    @Override
+    public Account findById(Long id) {
+        return delegate.findById(id);
+    }
+
+    /**
+     * {@inheritDoc }
+     * Joins lookup of the same name, which is in progress, if any.
+     *
+     * @param name
+     *
+     * @return
+     */
+    @Override
+    public Account findByName(String name) {
+        if (name == null) {
+            return delegate.findByName(name);
+        }
+        CompletableFuture<Account> own = new CompletableFuture<>(),
+                running = inFlight.putIfAbsent(name, own);
+        if (running != null) {
+            coalesced.increment();
+            return copy(await(running));
+        }
+        executed.increment();
+        try {
+            Account account = delegate.findByName(name);
+            own.complete(account);
+            return copy(account);
+        } catch (RuntimeException | Error e) {
+            own.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(name, own);
+        }
+    }
+
+    /**
+     * {@inheritDoc }
+     *
+     * @param name
+     *
+     * @return
+     */
+    @Override
+    public LastLogin findLastLoginByName(String name) {
+        return delegate.findLastLoginByName(name);
+    }
+
+    /**
+     * {@inheritDoc }
+     *
+     * @param names
+     *
+     * @return
+     */
+    @Override
+    public Set<String> findExistingNames(Collection<String> names) {
+        return delegate.findExistingNames(names);
+    }
+
+    /**
+     * {@inheritDoc }
+     *
+     * @param names
+     *
+     * @return
+     */
+    @Override
+    public Map<String, Date> findLastLogins(Collection<String> names) {
+        return delegate.findLastLogins(names);
+    }
+
+    /**
+     * {@inheritDoc }
+     *
+     * @param consumer
+     */
+    @Override
+    public void forEachName(Consumer<String> consumer) {
+        delegate.forEachName(consumer);
+    }
+
+    /**
+     * {@inheritDoc }
+     *
+     * @param consumer
+     */
+    @Override
+    public void forEachAccount(Consumer<AccountRecord> consumer) {
+        delegate.forEachAccount(consumer);
+    }
+
+    /**
+     * {@inheritDoc }
+     *
+     * @param account
+     */
+    @Override
+    public void delete(Account account) {
+        try {
+            delegate.delete(account);
+        } finally {
+            detach(account.getUsername());
+        }
+    }
+
+    /**
+     * {@inheritDoc }
+     *
+     * @param name
+     *
+     * @return
+     */
+    @Override
+    public boolean deleteByName(String name) {
+        try {
+            return delegate.deleteByName(name);
+        } finally {
+            detach(name);
+        }
+    }
+
+    /**
+     * Current coalescing metrics.
+     *
+     * @return
+     */
+    public Statistics getStatistics() {
+        return new Statistics(executed.sum(), coalesced.sum(),
+                inFlight.size());
+    }
+
+    /**
+     * Lets the next lookup of the name run on its own, callers, which have
+     * already joined in-flight lookup, still get its result.
+     *
+     * @param name
+     */
+    private void detach(String name) {
+        if (name != null) {
+            inFlight.remove(name);
+        }
+    }
+
+    /**
+     * Waits for lookup of other caller, its failure is rethrown as is.
+     *
+     * @param running
+     *
+     * @return
+     */
+    private static Account await(CompletableFuture<Account> running) {
+        try {
+            return running.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw e;
+        }
+    }
+
+    private static Account copy(Account account) {
+        return account == null ? null : new Account(account);
+    }
+
+    /**
+     * Immutable snapshot of coalescing metrics.
+     */
+    public static class Statistics {
+
+        private final long executed, coalesced, inFlight;
+
+        Statistics(long executed, long coalesced, long inFlight) {
+            this.executed = executed;
+            this.coalesced = coalesced;
+            this.inFlight = inFlight;
+        }
+
+        /**
+         * @return amount of lookups, passed to delegate
+         */
+        public long getExecuted() {
+            return executed;
+        }
+
+        /**
+         * @return amount of lookups, which have shared result of other one
+         */
+        public long getCoalesced() {
+            return coalesced;
+        }
+
+        /**
+         * @return amount of names, which are being looked up now
+         */
+        public long getInFlight() {
+            return inFlight;
+        }
+
+        @Override
+        public String toString() {
+            return "Statistics{" + "executed=" + executed + ", coalesced="
+                           + coalesced + ", inFlight=" + inFlight + '}';
+        }
+
+    }
+
+}
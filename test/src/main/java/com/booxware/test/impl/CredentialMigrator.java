@@ -0,0 +1,176 @@
+/*
+ * Copyright 2017 Andrey Alexeenko <Andrey.Alexeenko at t-systems.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.booxware.test.impl;
+
+import com.booxware.test.Account;
+import com.booxware.test.repository.AccountRepository;
+import com.booxware.test.util.CredentialCodec;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Online migration of legacy credentials (ENCRYPTED_PASSWORD LOB and SALT
+ * columns) into compact CREDENTIAL column. Rows are converted by small
+ * transactions in ID order, so migration could run next to the live
+ * traffic and could be restarted at any time. Rows, which are not migrated
+ * by this job, are migrated by successful login.
+ * Migration is started in background at startup, when
+ * booxware.migration.batchSize is set, or could be called explicitly.
+ * When no legacy rows are left, legacy columns could be dropped.
+ *
+ * @author Andrey Alexeenko <Andrey.Alexeenko at t-systems.com>
+ */
+@Component
+public class CredentialMigrator {
+
+    private static final org.slf4j.Logger LOGGER = LoggerFactory.getLogger(
+            CredentialMigrator.class);
+
+    @Autowired
+    private AccountRepository repository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+    /**
+     * Batch size of migration, which is started at startup, 0 means that
+     * migration is not started.
+     */
+    @Value("${booxware.migration.batchSize:0}")
+    private int batchSize;
+
+    private ExecutorService executor;
+
+    @PostConstruct
+    private void init() {
+        if (batchSize <= 0) {
+            return;
+        }
+        executor = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "credential-migration");
+            t.setDaemon(true);
+            return t;
+        });
+        executor.execute(() -> {
+            try {
+                migrate(batchSize);
+            } catch (RuntimeException e) {
+                LOGGER.error("Migration of legacy credentials failed.", e);
+            }
+        });
+    }
+
+    @PreDestroy
+    private void destroy() {
+        if (executor == null) {
+            return;
+        }
+        // migration stops after the current batch
+        executor.shutdownNow();
+        try {
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Migrates all legacy rows, stops early, when the thread is interrupted.
+     *
+     * @param batchSize
+     *                  amount of rows, migrated by one transaction
+     *
+     * @return amount of migrated rows
+     */
+    public long migrate(int batchSize) {
+        TransactionTemplate tx = new TransactionTemplate(transactionManager);
+        long after = Long.MIN_VALUE, migrated = 0;
+        while (!Thread.currentThread().isInterrupted()) {
+            final long from = after;
+            Batch batch = tx.execute(status -> migrateBatch(from, batchSize));
+            if (batch.loaded == 0) {
+                break;
+            }
+            after = batch.last;
+            migrated += batch.migrated;
+        }
+        LOGGER.info("Migrated {} legacy credentials.", migrated);
+        return migrated;
+    }
+
+    /**
+     * Migrates one page of legacy rows.
+     *
+     * @param after
+     * @param batchSize
+     *
+     * @return
+     */
+    private Batch migrateBatch(long after, int batchSize) {
+        List<Account> page = repository.findLegacyAfter(after,
+                new PageRequest(0, batchSize));
+        long last = after;
+        int migrated = 0;
+        for (Account account : page) {
+            last = account.getId();
+            try {
+                account.setEncryptedPassword(CredentialCodec.encode(
+                        new String(account.getLegacyPassword(),
+                                StandardCharsets.UTF_8)));
+            } catch (RuntimeException e) {
+                LOGGER.warn("Skipped malformed credential of Account {}.",
+                        account.getUsername());
+                continue;
+            }
+            account.setLegacyPassword(null);
+            account.setSalt(null);
+            migrated++;
+        }
+        return new Batch(last, migrated, page.size());
+    }
+
+    /**
+     * Outcome of one page.
+     */
+    private static class Batch {
+
+        /**
+         * ID of the last loaded row.
+         */
+        private final long last;
+
+        private final int migrated, loaded;
+
+        Batch(long last, int migrated, int loaded) {
+            this.last = last;
+            this.migrated = migrated;
+            this.loaded = loaded;
+        }
+
+    }
+
+}
@@ -19,7 +19,9 @@ import org.aspectj.lang.JoinPoint;
 import org.aspectj.lang.annotation.AfterThrowing;
 import org.aspectj.lang.annotation.Aspect;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
+import com.booxware.test.MetricsRegistry;
 import com.booxware.test.WrapExceptions;
 import com.booxware.test.util.ExceptionFactory;
 import java.util.Optional;
@@ -38,10 +40,20 @@ public class ExceptionAspects {
     private static final org.slf4j.Logger LOGGER = LoggerFactory.getLogger(
             ExceptionAspects.class);
 
+    static final String WRAP_METRIC = "ExceptionAspects.wrap";
+
+    @Autowired
+    private MetricsRegistry registry;
+
+    @Autowired
+    private ExceptionFactory exceptionFactory;
+
     /**
      * Wraps every exception from annotated methods into required exception
      * bean, please define required exception bean at
      * {@link  com.booxware.test.util.ExceptionFactory}
+     * Expected business failures are wrapped into exceptions without stack
+     * trace, if annotation requests it.
      *
      * @param joinPoint
      * @param w
@@ -52,6 +64,24 @@ public class ExceptionAspects {
     @AfterThrowing(value = "@annotation(w)", throwing = "e", argNames = "w, e")
     public void wrap(JoinPoint joinPoint, WrapExceptions w, Throwable e)
             throws Throwable {
+        long started = System.nanoTime();
+        String message = describe(e);
+        LOGGER.debug("Registered exceptional activity.", message);
+        Throwable ex = exceptionFactory.build(w.type(), message,
+                w.stackless() && isExpected(e));
+        registry.record(WRAP_METRIC, System.nanoTime() - started);
+        throw Optional.ofNullable(ex).orElse(e);
+    }
+
+    /**
+     * Makes an exception message, which is used for business exception.
+     * Constraint violations are joined into single message.
+     *
+     * @param e
+     *
+     * @return
+     */
+    static String describe(Throwable e) {
         String message = null;
         if (ConstraintViolationException.class.isInstance(e)) {
             StringJoiner sj = new StringJoiner(":", "[", "]");
@@ -63,9 +93,20 @@ public class ExceptionAspects {
         } else {
             message = e.getMessage();
         }
-        LOGGER.debug("Registered exceptional activity.", message);
-        Throwable ex = ExceptionFactory.get().build(w.type(), message);
-        throw Optional.ofNullable(ex).orElse(e);
+        return message;
+    }
+
+    /**
+     * Failed business checks and constraint violations are expected
+     * failures, stack trace of them is not interesting.
+     *
+     * @param e
+     *
+     * @return
+     */
+    static boolean isExpected(Throwable e) {
+        return e instanceof IllegalArgumentException
+                       || e instanceof ConstraintViolationException;
     }
 
 }
@@ -0,0 +1,427 @@
+/*
+ * Copyright 2017 Andrey Alexeenko <Andrey.Alexeenko at t-systems.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.booxware.test.impl;
+
+import com.booxware.test.Account;
+import com.booxware.test.AccountRecord;
+import com.booxware.test.LastLogin;
+import com.booxware.test.PersistenceInterface;
+import com.booxware.test.util.CountingBloomFilter;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import org.slf4j.LoggerFactory;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Decorator for {@link PersistenceInterface}, which answers lookups of
+ * definitely unknown names without database access. Registered names are
+ * kept in {@link CountingBloomFilter}, which is loaded by {@link #warmUp()}
+ * and then maintained by writes made through the decorator.
+ * Filter knows only names written by this process, so it is valid for a
+ * single writer deployment, otherwise {@link #warmUp()} has to be called
+ * periodically. Until filter is loaded, every call is passed through.
+ * Repeated {@link #warmUp()} loads a new filter, while the current one
+ * still serves lookups, names created meanwhile are added to both.
+ * Names are removed from the filter only after the transaction of removal
+ * has been committed, so rolled back removal doesn't hide existing name.
+ * Decorator is declared by "filtered" profile of application context.
+ *
+ * @author Andrey Alexeenko <Andrey.Alexeenko at t-systems.com>
+ */
+public class FilteringPersistence implements PersistenceInterface {
+
+    private static final org.slf4j.Logger LOGGER = LoggerFactory.getLogger(
+            FilteringPersistence.class);
+
+    private final PersistenceInterface delegate;
+
+    private final long expectedAccounts;
+
+    private final double fpp;
+    /**
+     * Filter, which serves lookups, null until it has been loaded.
+     */
+    private volatile CountingBloomFilter filter;
+    /**
+     * Filter, which is being loaded. Removals are not applied to it,
+     * because removed name may not be added yet, and removal of absent
+     * value could produce false negatives.
+     */
+    private volatile CountingBloomFilter loading;
+
+    private final LongAdder skipped = new LongAdder(),
+            passed = new LongAdder(),
+            falsePositives = new LongAdder();
+
+    /**
+     * @param delegate
+     *                           actual persistence
+     * @param expectedAccounts
+     *                           expected amount of registered accounts
+     * @param fpp
+     *                           desired false positive probability
+     */
+    public FilteringPersistence(PersistenceInterface delegate,
+            long expectedAccounts, double fpp) {
+        this.delegate = delegate;
+        this.expectedAccounts = expectedAccounts;
+        this.fpp = fpp;
+    }
+
+    /**
+     * Loads all registered names into a new filter, which replaces the
+     * current one.
+     */
+    public synchronized void warmUp() {
+        CountingBloomFilter fresh = new CountingBloomFilter(expectedAccounts,
+                fpp);
+        LongAdder count = new LongAdder();
+        loading = fresh;
+        try {
+            delegate.forEachName(name -> {
+                fresh.add(name);
+                count.increment();
+            });
+            filter = fresh;
+        } finally {
+            loading = null;
+        }
+        LOGGER.debug("Loaded {} names into lookup filter.", count.sum());
+    }
+
+    /**
+     * {@inheritDoc }
+     *
+     * @param account
+     *
+     * @return
+     */
+    @Override
+    public Account save(Account account) {
+        boolean created = account.getId() == null;
+        Account saved = delegate.save(account);
+        if (created) {
+            added(saved.getUsername());
+        }
+        return saved;
+    }
+
+    /**
+     * {@inheritDoc }
+     *
+     * @param accounts
+     *
+     * @return
+     */
+    @Override
+    public List<Account> saveAll(Collection<Account> accounts) {
+        List<String> created = accounts.stream()
+                .filter(a -> a.getId() == null)
+                .map(Account::getUsername)
+                .collect(Collectors.toList());
+        List<Account> saved = delegate.saveAll(accounts);
+        created.forEach(this::added);
+        return saved;
+    }
+
+    /**
+     * {@inheritDoc }
+     *
+     * @param lastLogins
+     */
+    @Override
+    public void updateLastLogins(Map<String, Date> lastLogins) {
+        delegate.updateLastLogins(lastLogins);
+    }
+
+    /**
+     * {@inheritDoc }
+     *
+     * @param id
+     *
+     * @return
+     */
+    @Override
+    public Account findById(Long id) {
+        return delegate.findById(id);
+    }
+
+    /**
+     * {@inheritDoc }
+     *
+     * @param name
+     *
+     * @return
+     */
+    @Override
+    public Account findByName(String name) {
+        CountingBloomFilter current = filter;
+        if (current != null && !current.mightContain(name)) {
+            skipped.increment();
+            return null;
+        }
+        passed.increment();
+        Account account = delegate.findByName(name);
+        if (account == null && current != null) {
+            falsePositives.increment();
+        }
+        return account;
+    }
+
+    /**
+     * {@inheritDoc }
+     *
+     * @param name
+     *
+     * @return
+     */
+    @Override
+    public LastLogin findLastLoginByName(String name) {
+        CountingBloomFilter current = filter;
+        if (current != null && !current.mightContain(name)) {
+            skipped.increment();
+            return null;
+        }
+        passed.increment();
+        LastLogin lastLogin = delegate.findLastLoginByName(name);
+        if (lastLogin == null && current != null) {
+            falsePositives.increment();
+        }
+        return lastLogin;
+    }
+
+    /**
+     * {@inheritDoc }
+     *
+     * @param names
+     *
+     * @return
+     */
+    @Override
+    public Set<String> findExistingNames(Collection<String> names) {
+        CountingBloomFilter current = filter;
+        if (current == null) {
+            return delegate.findExistingNames(names);
+        }
+        List<String> candidates = names.stream()
+                .filter(current::mightContain)
+                .collect(Collectors.toList());
+        skipped.add(names.size() - candidates.size());
+        return candidates.isEmpty() ? Collections.emptySet()
+                       : delegate.findExistingNames(candidates);
+    }
+
+    /**
+     * {@inheritDoc }
+     *
+     * @param names
+     *
+     * @return
+     */
+    @Override
+    public Map<String, Date> findLastLogins(Collection<String> names) {
+        CountingBloomFilter current = filter;
+        if (current == null) {
+            return delegate.findLastLogins(names);
+        }
+        List<String> candidates = names.stream()
+                .filter(current::mightContain)
+                .collect(Collectors.toList());
+        skipped.add(names.size() - candidates.size());
+        return candidates.isEmpty() ? Collections.emptyMap()
+                       : delegate.findLastLogins(candidates);
+    }
+
+    /**
+     * {@inheritDoc }
+     *
+     * @param consumer
+     */
+    @Override
+    public void forEachName(Consumer<String> consumer) {
+        delegate.forEachName(consumer);
+    }
+
+    /**
+     * {@inheritDoc }
+     *
+     * @param consumer
+     */
+    @Override
+    public void forEachAccount(Consumer<AccountRecord> consumer) {
+        delegate.forEachAccount(consumer);
+    }
+
+    /**
+     * {@inheritDoc }
+     *
+     * @param account
+     */
+    @Override
+    public void delete(Account account) {
+        delegate.delete(account);
+        removed(account.getUsername());
+    }
+
+    /**
+     * {@inheritDoc }
+     *
+     * @param name
+     *
+     * @return
+     */
+    @Override
+    public boolean deleteByName(String name) {
+        boolean deleted = delegate.deleteByName(name);
+        if (deleted) {
+            removed(name);
+        }
+        return deleted;
+    }
+
+    /**
+     * Current filter metrics.
+     *
+     * @return
+     */
+    public Statistics getStatistics() {
+        CountingBloomFilter current = filter;
+        return new Statistics(skipped.sum(), passed.sum(),
+                falsePositives.sum(), current == null ? 0 : current
+                                .getMemoryBytes());
+    }
+
+    /**
+     * Adds created name to the serving and the loading filters at once, so
+     * the name is visible within own transaction. Filters, which have
+     * appeared until commit, get the name after it, because loading may
+     * have missed uncommitted row.
+     *
+     * @param name
+     */
+    private void added(String name) {
+        CountingBloomFilter loaded = loading, current = filter;
+        addTo(loaded, name);
+        if (current != loaded) {
+            addTo(current, name);
+        }
+        afterCommit(() -> {
+            CountingBloomFilter l = loading, f = filter;
+            if (l != loaded && l != current) {
+                addTo(l, name);
+            }
+            if (f != loaded && f != current && f != l) {
+                addTo(f, name);
+            }
+        });
+    }
+
+    /**
+     * Removes name from the serving filter after commit. Filter, which
+     * has replaced it meanwhile, may keep the name, it may only cause a
+     * false positive.
+     *
+     * @param name
+     */
+    private void removed(String name) {
+        CountingBloomFilter current = filter;
+        if (current != null) {
+            afterCommit(() -> current.remove(name));
+        }
+    }
+
+    private static void addTo(CountingBloomFilter target, String name) {
+        if (target != null) {
+            target.add(name);
+        }
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(
+                new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+
+    /**
+     * Immutable snapshot of filter metrics.
+     */
+    public static class Statistics {
+
+        private final long skipped, passed, falsePositives, memoryBytes;
+
+        Statistics(long skipped, long passed, long falsePositives,
+                long memoryBytes) {
+            this.skipped = skipped;
+            this.passed = passed;
+            this.falsePositives = falsePositives;
+            this.memoryBytes = memoryBytes;
+        }
+
+        /**
+         * @return amount of lookups, answered without database access
+         */
+        public long getSkipped() {
+            return skipped;
+        }
+
+        /**
+         * @return amount of lookups, passed to the database
+         */
+        public long getPassed() {
+            return passed;
+        }
+
+        /**
+         * @return amount of passed lookups, which have found nothing
+         */
+        public long getFalsePositives() {
+            return falsePositives;
+        }
+
+        /**
+         * @return memory taken by counters of the filter, which serves
+         *         lookups
+         */
+        public long getMemoryBytes() {
+            return memoryBytes;
+        }
+
+        @Override
+        public String toString() {
+            return "Statistics{skipped=" + skipped + ", passed=" + passed
+                           + ", falsePositives=" + falsePositives
+                           + ", memoryBytes=" + memoryBytes + '}';
+        }
+
+    }
+
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2017 Andrey Alexeenko <Andrey.Alexeenko at t-systems.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.booxware.test.impl;
+
+import com.booxware.test.MetricsRegistry;
+import com.booxware.test.util.LatencyHistogram;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import org.springframework.stereotype.Component;
+
+/**
+ * Default in-memory metrics registry, keeps one
+ * {@link LatencyHistogram} per metric name and the last value per gauge
+ * name.
+ *
+ * @author Andrey Alexeenko <Andrey.Alexeenko at t-systems.com>
+ */
+@Component
+public class HistogramMetricsRegistry implements MetricsRegistry {
+
+    private final Map<String, LatencyHistogram> histograms
+            = new ConcurrentHashMap<>();
+
+    private final Map<String, Long> gauges = new ConcurrentHashMap<>();
+
+    /**
+     * {@inheritDoc }
+     *
+     * @param name
+     * @param nanos
+     */
+    @Override
+    public void record(String name, long nanos) {
+        LatencyHistogram histogram = histograms.get(name);
+        if (histogram == null) {
+            histogram = histograms.computeIfAbsent(name,
+                    n -> new LatencyHistogram());
+        }
+        histogram.record(nanos);
+    }
+
+    /**
+     * {@inheritDoc }
+     *
+     * @param name
+     * @param value
+     */
+    @Override
+    public void gauge(String name, long value) {
+        gauges.put(name, value);
+    }
+
+    /**
+     * {@inheritDoc }
+     *
+     * @return
+     */
+    @Override
+    public Map<String, Long> gauges() {
+        return new TreeMap<>(gauges);
+    }
+
+    /**
+     * {@inheritDoc }
+     *
+     * @return
+     */
+    @Override
+    public Map<String, LatencyHistogram.Snapshot> snapshot() {
+        Map<String, LatencyHistogram.Snapshot> result = new TreeMap<>();
+        histograms.forEach((name, h) -> result.put(name, h.snapshot()));
+        return result;
+    }
+
+    /**
+     * {@inheritDoc }
+     *
+     * @return
+     */
+    @Override
+    public Map<String, LatencyHistogram.Snapshot> snapshotAndReset() {
+        Map<String, LatencyHistogram.Snapshot> result = new TreeMap<>();
+        histograms.forEach((name, h) -> result.put(name,
+                h.snapshotAndReset()));
+        return result;
+    }
+
+}
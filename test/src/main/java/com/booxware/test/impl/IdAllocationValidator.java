@@ -0,0 +1,124 @@
+/*
+ * Copyright 2017 Andrey Alexeenko <Andrey.Alexeenko at t-systems.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.booxware.test.impl;
+
+import com.booxware.test.Account;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import javax.annotation.PostConstruct;
+import javax.persistence.EntityManagerFactory;
+import javax.sql.DataSource;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.id.IdentifierGenerator;
+import org.hibernate.id.enhanced.Optimizer;
+import org.hibernate.id.enhanced.SequenceStyleGenerator;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * Checks at startup, that increment of Account ID sequence matches the
+ * optimizer of its generator. Pooled optimizers with too small increment
+ * produce duplicated IDs, with too large one they waste ID ranges, so
+ * context fails to start on mismatch. Databases, which don't expose
+ * INFORMATION_SCHEMA.SEQUENCES, are not checked.
+ *
+ * @author Andrey Alexeenko <Andrey.Alexeenko at t-systems.com>
+ */
+@Component
+public class IdAllocationValidator {
+
+    private static final org.slf4j.Logger LOGGER = LoggerFactory.getLogger(
+            IdAllocationValidator.class);
+
+    private static final String INCREMENT_SQL
+                                        = "select INCREMENT from "
+                                                  + "INFORMATION_SCHEMA.SEQUENCES "
+                                                  + "where upper(SEQUENCE_NAME) = ?";
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private DataSource dataSource;
+
+    /**
+     * Compares increment of the sequence with the generator.
+     *
+     * @throws IllegalStateException
+     *                               if they don't match
+     */
+    @PostConstruct
+    public void validate() {
+        IdentifierGenerator generator = entityManagerFactory.unwrap(
+                SessionFactoryImplementor.class).getIdentifierGenerator(
+                        Account.class.getName());
+        if (!(generator instanceof SequenceStyleGenerator)
+                    || !((SequenceStyleGenerator) generator)
+                .getDatabaseStructure().isPhysicalSequence()) {
+            return;
+        }
+        SequenceStyleGenerator sequence = (SequenceStyleGenerator) generator;
+        String name = sequence.getDatabaseStructure().getName();
+        name = name.substring(name.lastIndexOf('.') + 1);
+        Optimizer optimizer = sequence.getOptimizer();
+        long expected = optimizer.applyIncrementSizeToSourceValues()
+                                ? optimizer.getIncrementSize() : 1;
+        Long actual = readIncrement(name);
+        if (actual == null) {
+            return;
+        }
+        if (actual != expected) {
+            throw new IllegalStateException("Sequence " + name
+                                                    + " is incremented by "
+                                                    + actual + ", but "
+                                                    + optimizer.getClass()
+                    .getSimpleName() + " of block size " + optimizer
+                    .getIncrementSize() + " requires " + expected + ".");
+        }
+        LOGGER.debug("Sequence {} increment {} matches ID allocation.", name,
+                actual);
+    }
+
+    /**
+     * Reads increment of the sequence.
+     *
+     * @param name
+     *
+     * @return increment, or null, if it could not be read
+     */
+    private Long readIncrement(String name) {
+        try (Connection connection = dataSource.getConnection();
+                PreparedStatement statement = connection.prepareStatement(
+                        INCREMENT_SQL)) {
+            statement.setString(1, name.toUpperCase());
+            try (ResultSet rs = statement.executeQuery()) {
+                if (rs.next()) {
+                    return Long.valueOf(rs.getString(1).trim());
+                }
+            }
+            LOGGER.warn("Sequence {} is not found, increment is not checked.",
+                    name);
+        } catch (SQLException | NumberFormatException e) {
+            LOGGER.warn("Increment of sequence {} could not be read.", name,
+                    e);
+        }
+        return null;
+    }
+
+}
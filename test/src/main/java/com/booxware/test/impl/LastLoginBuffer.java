@@ -0,0 +1,171 @@
+/*
+ * Copyright 2017 Andrey Alexeenko <Andrey.Alexeenko at t-systems.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.booxware.test.impl;
+
+import com.booxware.test.PersistenceInterface;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Write-behind buffer of last login dates. Logins of the same account are
+ * coalesced, the latest date wins, and pending dates are written by one
+ * batched statement on interval, on size threshold and on shutdown.
+ * Pending date stays visible by {@link #get(String)} until it has been
+ * written, so readers never see an older state.
+ * Buffer is disabled by default, then service saves every login at once.
+ *
+ * @author Andrey Alexeenko <Andrey.Alexeenko at t-systems.com>
+ */
+@Component
+public class LastLoginBuffer {
+
+    private static final org.slf4j.Logger LOGGER = LoggerFactory.getLogger(
+            LastLoginBuffer.class);
+
+    @Autowired
+    private PersistenceInterface persistence;
+
+    @Value("${booxware.lastLogin.writeBehind:false}")
+    private boolean enabled;
+    /**
+     * Interval between periodic flushes.
+     */
+    @Value("${booxware.lastLogin.flushIntervalMillis:1000}")
+    private long flushIntervalMillis;
+    /**
+     * Amount of pending accounts, which triggers a flush before interval.
+     */
+    @Value("${booxware.lastLogin.flushThreshold:1000}")
+    private int flushThreshold;
+
+    private final Map<String, Date> pending = new ConcurrentHashMap<>();
+
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+
+    private ScheduledExecutorService scheduler;
+
+    @PostConstruct
+    private void init() {
+        if (!enabled) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "last-login-flush");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.scheduleWithFixedDelay(this::flush, flushIntervalMillis,
+                flushIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    private void destroy() {
+        if (scheduler == null) {
+            return;
+        }
+        scheduler.shutdown();
+        try {
+            scheduler.awaitTermination(flushIntervalMillis,
+                    TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Records login of the account.
+     *
+     * @param username
+     * @param date
+     */
+    public void record(String username, Date date) {
+        pending.merge(username, date, (a, b) -> a.before(b) ? b : a);
+        if (pending.size() >= flushThreshold
+                    && flushScheduled.compareAndSet(false, true)) {
+            scheduler.execute(() -> {
+                flushScheduled.set(false);
+                flush();
+            });
+        }
+    }
+
+    /**
+     * Pending last login date of the account.
+     *
+     * @param username
+     *
+     * @return date, which is not written yet, or null
+     */
+    public Date get(String username) {
+        return pending.get(username);
+    }
+
+    /**
+     * Drops pending date of the account, used when account is deleted.
+     *
+     * @param username
+     */
+    public void discard(String username) {
+        pending.remove(username);
+    }
+
+    /**
+     * Amount of accounts with pending dates.
+     *
+     * @return
+     */
+    public int size() {
+        return pending.size();
+    }
+
+    /**
+     * Writes pending dates. Dates are removed only after successful write,
+     * and only if they have not been replaced by newer ones meanwhile.
+     */
+    public synchronized void flush() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        Map<String, Date> batch = new HashMap<>(pending);
+        try {
+            persistence.updateLastLogins(batch);
+        } catch (RuntimeException e) {
+            LOGGER.warn("Failed to write {} last login dates, will retry.",
+                    batch.size(), e);
+            return;
+        }
+        batch.forEach(pending::remove);
+        LOGGER.debug("Written {} last login dates.", batch.size());
+    }
+
+}
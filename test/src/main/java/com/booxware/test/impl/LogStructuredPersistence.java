@@ -0,0 +1,607 @@
+/*
+ * Copyright 2017 Andrey Alexeenko <Andrey.Alexeenko at t-systems.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.booxware.test.impl;
+
+import com.booxware.test.Account;
+import com.booxware.test.AccountRecord;
+import com.booxware.test.LastLogin;
+import com.booxware.test.PersistenceInterface;
+import com.booxware.test.Timed;
+import com.booxware.test.util.RecordLog;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import javax.validation.ConstraintViolation;
+import javax.validation.ConstraintViolationException;
+import javax.validation.Validator;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataIntegrityViolationException;
+
+/**
+ * Embedded persistence without JPA. Accounts are held in memory by name,
+ * every change is appended to {@link RecordLog} before it becomes visible,
+ * and state is rebuilt by replay of the log at startup. When the log grows
+ * twice over its size after the last compaction and over configured
+ * threshold, it is rewritten with one record per account, so the log
+ * itself is the snapshot.
+ * Reads don't take locks, writes are serialized. Stored entities are never
+ * modified, changes replace them by copies, and callers get copies too.
+ * Engine is declared by "embedded" profile of application context.
+ *
+ * @author Andrey Alexeenko <Andrey.Alexeenko at t-systems.com>
+ */
+public class LogStructuredPersistence implements PersistenceInterface,
+        Closeable {
+
+    private static final org.slf4j.Logger LOGGER = LoggerFactory.getLogger(
+            LogStructuredPersistence.class);
+
+    private static final byte PUT = 1, LOGIN = 2, DELETE = 3;
+
+    private static final long NULL_DATE = Long.MIN_VALUE;
+
+    private static final String DUPLICATE_MSG = "Account with name {0} "
+                                                        + "already exists.";
+
+    private final Map<String, Account> accounts = new ConcurrentHashMap<>();
+
+    private final Map<Long, String> names = new ConcurrentHashMap<>();
+
+    private final RecordLog log;
+    /**
+     * Bean validator, checks entities like JPA provider does on persist.
+     */
+    @Autowired(required = false)
+    private Validator validator;
+
+    private final long compactionBytes;
+
+    private long nextId = 1, compactedSize, compactions;
+
+    /**
+     * Opens the log and restores accounts from it.
+     *
+     * @param directory
+     *                        directory of the log, created if missing
+     * @param sync
+     *                        forces every write to the storage device
+     * @param compactionBytes
+     *                        log size, below which it is not compacted
+     */
+    public LogStructuredPersistence(Path directory, boolean sync,
+            long compactionBytes) {
+        this.compactionBytes = compactionBytes;
+        try {
+            Files.createDirectories(directory);
+            log = new RecordLog(directory.resolve("accounts.log"), sync);
+            long records = log.replay(this::apply);
+            compactedSize = log.size();
+            LOGGER.info("Restored {} accounts from {} log records.",
+                    accounts.size(), records);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * {@inheritDoc }
+     *
+     * @param account
+     *
+     * @return
+     */
+    @Override
+    @Timed
+    public synchronized Account save(Account account) {
+        Account stored = prepare(account, new HashSet<>());
+        write(() -> put(stored), encode(stored));
+        account.setId(stored.getId());
+        return new Account(stored);
+    }
+
+    /**
+     * {@inheritDoc }
+     * All records are appended by one write.
+     *
+     * @param accounts
+     *
+     * @return
+     */
+    @Override
+    @Timed
+    public synchronized List<Account> saveAll(Collection<Account> accounts) {
+        List<Account> prepared = new ArrayList<>(accounts.size());
+        Set<String> batch = new HashSet<>();
+        long id = nextId;
+        try {
+            for (Account account : accounts) {
+                prepared.add(prepare(account, batch));
+            }
+        } finally {
+            if (prepared.size() < accounts.size()) {
+                nextId = id;
+            }
+        }
+        write(() -> prepared.forEach(this::put), prepared.stream()
+                .map(this::encode).toArray(byte[][]::new));
+        List<Account> saved = new ArrayList<>(prepared.size());
+        Iterator<Account> source = accounts.iterator();
+        for (Account stored : prepared) {
+            source.next().setId(stored.getId());
+            saved.add(new Account(stored));
+        }
+        return saved;
+    }
+
+    /**
+     * {@inheritDoc }
+     *
+     * @param lastLogins
+     */
+    @Override
+    @Timed
+    public synchronized void updateLastLogins(Map<String, Date> lastLogins) {
+        List<byte[]> records = new ArrayList<>();
+        List<Account> updated = new ArrayList<>();
+        lastLogins.forEach((name, date) -> {
+            Account stored = accounts.get(name);
+            if (stored != null && date != null && isOlder(stored
+                    .getLastLogin(), date)) {
+                Account copy = new Account(stored);
+                copy.setLastLogin(new Date(date.getTime()));
+                records.add(encodeLogin(name, date.getTime()));
+                updated.add(copy);
+            }
+        });
+        if (records.isEmpty()) {
+            return;
+        }
+        write(() -> updated.forEach(this::put), records.toArray(
+                new byte[records.size()][]));
+    }
+
+    /**
+     * {@inheritDoc }
+     *
+     * @param id
+     *
+     * @return
+     */
+    @Override
+    @Timed
+    public Account findById(Long id) {
+        String name = id == null ? null : names.get(id);
+        return name == null ? null : findByName(name);
+    }
+
+    /**
+     * {@inheritDoc }
+     *
+     * @param name
+     *
+     * @return
+     */
+    @Override
+    @Timed
+    public Account findByName(String name) {
+        Account stored = name == null ? null : accounts.get(name);
+        return stored == null ? null : new Account(stored);
+    }
+
+    /**
+     * {@inheritDoc }
+     *
+     * @param name
+     *
+     * @return
+     */
+    @Override
+    @Timed
+    public LastLogin findLastLoginByName(String name) {
+        Account stored = name == null ? null : accounts.get(name);
+        return stored == null ? null : new LastLogin(name, stored
+                .getLastLogin());
+    }
+
+    /**
+     * {@inheritDoc }
+     *
+     * @param names
+     *
+     * @return
+     */
+    @Override
+    @Timed
+    public Set<String> findExistingNames(Collection<String> names) {
+        return names.stream().filter(n -> n != null && accounts
+                .containsKey(n)).collect(Collectors.toSet());
+    }
+
+    /**
+     * {@inheritDoc }
+     *
+     * @param names
+     *
+     * @return
+     */
+    @Override
+    @Timed
+    public Map<String, Date> findLastLogins(Collection<String> names) {
+        Map<String, Date> result = new HashMap<>();
+        for (String name : names) {
+            Account stored = name == null ? null : accounts.get(name);
+            if (stored != null) {
+                result.put(name, stored.getLastLogin() == null ? null
+                                         : new Date(stored.getLastLogin()
+                                                 .getTime()));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * {@inheritDoc }
+     *
+     * @param consumer
+     */
+    @Override
+    @Timed
+    public void forEachName(Consumer<String> consumer) {
+        accounts.keySet().forEach(consumer);
+    }
+
+    /**
+     * {@inheritDoc }
+     * Only IDs are copied and sorted, accounts, which have been deleted
+     * meanwhile, are skipped.
+     *
+     * @param consumer
+     */
+    @Override
+    @Timed
+    public void forEachAccount(Consumer<AccountRecord> consumer) {
+        long[] ids = names.keySet().stream().mapToLong(Long::longValue)
+                .toArray();
+        Arrays.sort(ids);
+        for (long id : ids) {
+            String name = names.get(id);
+            Account stored = name == null ? null : accounts.get(name);
+            if (stored != null && stored.getId() == id) {
+                consumer.accept(new AccountRecord(id, name, stored
+                        .getEmail(), stored.getLastLogin()));
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc }
+     *
+     * @param account
+     */
+    @Override
+    @Timed
+    public void delete(Account account) {
+        deleteByName(account.getUsername());
+    }
+
+    /**
+     * {@inheritDoc }
+     *
+     * @param name
+     *
+     * @return
+     */
+    @Override
+    @Timed
+    public synchronized boolean deleteByName(String name) {
+        if (name == null || !accounts.containsKey(name)) {
+            return false;
+        }
+        write(() -> remove(name), encodeDelete(name));
+        return true;
+    }
+
+    /**
+     * Rewrites the log with one record per account. Called automatically on
+     * growth of the log, could be also scheduled.
+     */
+    public synchronized void compact() {
+        long before = log.size();
+        Iterator<Account> live = accounts.values().iterator();
+        try {
+            log.rewrite(new Iterator<byte[]>() {
+                @Override
+                public boolean hasNext() {
+                    return live.hasNext();
+                }
+
+                @Override
+                public byte[] next() {
+                    return encode(live.next());
+                }
+            });
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        compactedSize = log.size();
+        compactions++;
+        LOGGER.info("Compacted log from {} to {} bytes.", before,
+                compactedSize);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        log.close();
+    }
+
+    public synchronized Statistics getStatistics() {
+        return new Statistics(accounts.size(), log.size(), compactions);
+    }
+
+    /**
+     * Copies Account for storing, assigns ID and checks uniqueness of name.
+     *
+     * @param account
+     * @param batch
+     *                names, which are already taken by the same batch
+     *
+     * @return
+     */
+    private Account prepare(Account account, Set<String> batch) {
+        String name = account.getUsername();
+        if (name == null) {
+            throw new DataIntegrityViolationException(
+                    "Account name is required.");
+        }
+        Account existing = accounts.get(name);
+        if (!batch.add(name) || existing != null && !existing.getId().equals(
+                account.getId())) {
+            throw new DataIntegrityViolationException(MessageFormat.format(
+                    DUPLICATE_MSG, name));
+        }
+        Account stored = new Account(account);
+        if (stored.getId() == null) {
+            stored.setId(nextId++);
+        } else {
+            nextId = Math.max(nextId, stored.getId() + 1);
+        }
+        if (validator != null) {
+            Set<ConstraintViolation<Account>> violations = validator
+                    .validate(stored);
+            if (!violations.isEmpty()) {
+                throw new ConstraintViolationException(violations);
+            }
+        }
+        return stored;
+    }
+
+    /**
+     * Appends records to the log, applies the change to memory and compacts
+     * the log, when it has grown enough. Change is applied before
+     * compaction, because compaction writes accounts from memory. Failed
+     * append is cut off by the log, so neither the log nor memory keep the
+     * change.
+     *
+     * @param change
+     * @param records
+     */
+    private void write(Runnable change, byte[]... records) {
+        try {
+            log.append(records);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        change.run();
+        if (log.size() > compactionBytes && log.size() > 2 * compactedSize) {
+            compact();
+        }
+    }
+
+    /**
+     * Applies replayed record to the index.
+     *
+     * @param record
+     */
+    private void apply(byte[] record) {
+        try (DataInputStream in = new DataInputStream(
+                new ByteArrayInputStream(record))) {
+            byte type = in.readByte();
+            if (type == PUT) {
+                Account account = decode(in);
+                nextId = Math.max(nextId, account.getId() + 1);
+                put(account);
+            } else if (type == LOGIN) {
+                Account stored = accounts.get(in.readUTF());
+                if (stored != null) {
+                    Account copy = new Account(stored);
+                    copy.setLastLogin(new Date(in.readLong()));
+                    put(copy);
+                }
+            } else if (type == DELETE) {
+                remove(in.readUTF());
+            } else {
+                throw new IllegalStateException("Unknown record type "
+                                                        + type);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Stores account, previous name of the same ID is released.
+     *
+     * @param account
+     */
+    private void put(Account account) {
+        String previous = names.put(account.getId(), account.getUsername());
+        if (previous != null && !previous.equals(account.getUsername())) {
+            accounts.remove(previous);
+        }
+        accounts.put(account.getUsername(), account);
+    }
+
+    private static boolean isOlder(Date stored, Date date) {
+        return stored == null || stored.before(date);
+    }
+
+    private void remove(String name) {
+        Account removed = accounts.remove(name);
+        if (removed != null) {
+            names.remove(removed.getId());
+        }
+    }
+
+    private byte[] encode(Account account) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(160);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(PUT);
+            out.writeLong(account.getId());
+            out.writeUTF(account.getUsername());
+            writeString(out, account.getEmail());
+            writeBytes(out, account.getEncryptedPassword());
+            writeBytes(out, account.getLegacyPassword());
+            writeString(out, account.getSalt());
+            out.writeLong(account.getLastLogin() == null ? NULL_DATE
+                                  : account.getLastLogin().getTime());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static Account decode(DataInputStream in) throws IOException {
+        Account account = new Account();
+        account.setId(in.readLong());
+        account.setUsername(in.readUTF());
+        account.setEmail(readString(in));
+        account.setEncryptedPassword(readBytes(in));
+        account.setLegacyPassword(readBytes(in));
+        account.setSalt(readString(in));
+        long lastLogin = in.readLong();
+        account.setLastLogin(lastLogin == NULL_DATE ? null
+                                     : new Date(lastLogin));
+        return account;
+    }
+
+    private static byte[] encodeLogin(String name, long lastLogin) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(LOGIN);
+            out.writeUTF(name);
+            out.writeLong(lastLogin);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static byte[] encodeDelete(String name) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(DELETE);
+            out.writeUTF(name);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void writeString(DataOutputStream out, String value)
+            throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private static void writeBytes(DataOutputStream out, byte[] value)
+            throws IOException {
+        out.writeInt(value == null ? -1 : value.length);
+        if (value != null) {
+            out.write(value);
+        }
+    }
+
+    private static byte[] readBytes(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] value = new byte[length];
+        in.readFully(value);
+        return value;
+    }
+
+    /**
+     * Snapshot of engine counters.
+     */
+    public static class Statistics {
+
+        private final long accounts, logBytes, compactions;
+
+        Statistics(long accounts, long logBytes, long compactions) {
+            this.accounts = accounts;
+            this.logBytes = logBytes;
+            this.compactions = compactions;
+        }
+
+        public long getAccounts() {
+            return accounts;
+        }
+
+        public long getLogBytes() {
+            return logBytes;
+        }
+
+        public long getCompactions() {
+            return compactions;
+        }
+
+        @Override
+        public String toString() {
+            return "Statistics{" + "accounts=" + accounts + ", logBytes="
+                           + logBytes + ", compactions=" + compactions + '}';
+        }
+
+    }
+
+}
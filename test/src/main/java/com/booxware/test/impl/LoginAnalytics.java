@@ -0,0 +1,345 @@
+/*
+ * Copyright 2017 Andrey Alexeenko <Andrey.Alexeenko at t-systems.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.booxware.test.impl;
+
+import com.booxware.test.LastLogin;
+import com.booxware.test.PersistenceInterface;
+import com.booxware.test.Timed;
+import com.booxware.test.repository.AccountRepository;
+import com.booxware.test.util.SortedLongArray;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import javax.annotation.PostConstruct;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import static org.springframework.util.Assert.isTrue;
+import static org.springframework.util.Assert.notNull;
+
+/**
+ * Active users analytics over LAST_LOGIN column. Queries are answered by
+ * range scans of IDX_ACCOUNT_LAST_LOGIN index, only dates are read and
+ * bucketed into primitive array, so no entities are loaded.
+ * Optionally all last login dates are held in memory as
+ * {@link SortedLongArray} of epoch milliseconds, which is loaded at startup
+ * and maintained by service on login and deletion. Then counts and
+ * histograms cost only binary searches and include pending dates of
+ * write-behind buffer, which are not seen by database queries yet.
+ * Index keeps the date of every name, so a login replaces the date it has
+ * indexed instead of one, which has been read before the write, and
+ * concurrent logins of the same user are counted once. Changes are applied
+ * after commit, so rolled back writes don't reach the index.
+ * Dormant accounts are always listed by query, not by in-memory index.
+ * Accounts of embedded engine are not kept in database, then its accounts
+ * are scanned through {@link PersistenceInterface#forEachAccount} of the
+ * engine instead of index, which is cheap, because engine holds them in memory.
+ *
+ * @author Andrey Alexeenko <Andrey.Alexeenko at t-systems.com>
+ */
+@Component
+public class LoginAnalytics {
+
+    private static final org.slf4j.Logger LOGGER = LoggerFactory.getLogger(
+            LoginAnalytics.class);
+
+    /**
+     * Histogram bucket width.
+     */
+    public enum Granularity {
+
+        DAY(TimeUnit.DAYS.toMillis(1)),
+        WEEK(TimeUnit.DAYS.toMillis(7));
+
+        private final long millis;
+
+        Granularity(long millis) {
+            this.millis = millis;
+        }
+
+        public long getMillis() {
+            return millis;
+        }
+
+    }
+
+    @Autowired
+    private AccountRepository repository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+    /**
+     * Engine of "embedded" profile, null if accounts are kept in database.
+     */
+    @Autowired(required = false)
+    @Qualifier("logStructuredPersistence")
+    private PersistenceInterface engine;
+    /**
+     * Keeps sorted last login dates in memory, memory holds name and date of
+     * every account, which has logged in at least once.
+     */
+    @Value("${booxware.analytics.inMemory:false}")
+    private boolean inMemory;
+
+    private SortedLongArray index;
+    /**
+     * Indexed dates by names.
+     */
+    private Map<String, Long> dates;
+
+    private TransactionTemplate readOnly;
+
+    @PostConstruct
+    private void init() {
+        readOnly = new TransactionTemplate(transactionManager);
+        readOnly.setReadOnly(true);
+        if (inMemory) {
+            reload();
+        }
+    }
+
+    public boolean isEnabled() {
+        return inMemory;
+    }
+
+    /**
+     * Rebuilds in-memory index from database, should be called after rows
+     * have been changed bypassing service.
+     */
+    public void reload() {
+        Map<String, Long> names = new HashMap<>();
+        if (engine != null) {
+            engine.forEachAccount(r -> {
+                if (r.getLastLogin() != null) {
+                    names.put(r.getUsername(), r.getLastLogin().getTime());
+                }
+            });
+        } else {
+            readOnly.execute(status -> {
+                try (Stream<LastLogin> lastLogins = repository
+                        .streamAllLastLogins()) {
+                    lastLogins.forEach(l -> names.put(l.getUsername(), l
+                            .getLastLogin().getTime()));
+                }
+                return null;
+            });
+        }
+        // ascending dates are appended
+        SortedLongArray loaded = new SortedLongArray();
+        names.values().stream().mapToLong(Long::longValue).sorted()
+                .forEach(loaded::add);
+        synchronized (this) {
+            index = loaded;
+            dates = names;
+        }
+        LOGGER.info("Loaded {} last login dates.", loaded.size());
+    }
+
+    /**
+     * Amount of accounts, which have logged in since the date.
+     *
+     * @param since
+     *
+     * @return
+     */
+    @Timed
+    public long countActiveSince(Date since) {
+        notNull(since, "Date is required.");
+        if (inMemory) {
+            synchronized (this) {
+                return index.countAtLeast(since.getTime());
+            }
+        }
+        if (engine != null) {
+            long[] count = new long[1];
+            scan(d -> {
+                if (!d.before(since)) {
+                    count[0]++;
+                }
+            });
+            return count[0];
+        }
+        return readOnly.execute(status -> repository
+                .countLastLoginSince(since));
+    }
+
+    /**
+     * Histogram of last login dates within [from, to) range, buckets start
+     * at from date, the last one may be shorter.
+     *
+     * @param from
+     * @param to
+     * @param granularity
+     *
+     * @return amounts of accounts by bucket
+     */
+    @Timed
+    public long[] histogram(Date from, Date to, Granularity granularity) {
+        notNull(from, "Date is required.");
+        notNull(to, "Date is required.");
+        notNull(granularity, "Granularity is required.");
+        isTrue(!to.before(from), "Range is reversed.");
+        long start = from.getTime(), end = to.getTime(),
+                step = granularity.getMillis();
+        long[] buckets = new long[(int) ((end - start + step - 1) / step)];
+        if (inMemory) {
+            synchronized (this) {
+                for (int i = 0; i < buckets.length; i++) {
+                    long lo = start + i * step;
+                    buckets[i] = index.count(lo, Math.min(lo + step, end));
+                }
+            }
+            return buckets;
+        }
+        if (engine != null) {
+            scan(d -> {
+                if (!d.before(from) && d.before(to)) {
+                    buckets[(int) ((d.getTime() - start) / step)]++;
+                }
+            });
+            return buckets;
+        }
+        readOnly.execute(status -> {
+            try (Stream<Date> dates = repository.streamLastLoginsBetween(from,
+                    to)) {
+                dates.forEach(d -> buckets[(int) ((d.getTime() - start)
+                                                          / step)]++);
+            }
+            return null;
+        });
+        return buckets;
+    }
+
+    /**
+     * Accounts, which have not logged in since the date, never logged in
+     * accounts come first, then the oldest ones.
+     *
+     * @param before
+     * @param limit
+     *
+     * @return
+     */
+    @Timed
+    public List<LastLogin> findDormant(Date before, int limit) {
+        notNull(before, "Date is required.");
+        isTrue(limit > 0, "Limit should be positive.");
+        if (engine != null) {
+            List<LastLogin> dormant = new ArrayList<>();
+            engine.forEachAccount(r -> {
+                if (r.getLastLogin() == null || r.getLastLogin().before(
+                        before)) {
+                    dormant.add(new LastLogin(r.getUsername(), r
+                            .getLastLogin()));
+                }
+            });
+            // stable sort keeps id order of equal dates
+            dormant.sort(Comparator.comparing(LastLogin::getLastLogin,
+                    Comparator.nullsFirst(Comparator.naturalOrder())));
+            return new ArrayList<>(dormant.subList(0, Math.min(limit, dormant
+                    .size())));
+        }
+        return readOnly.execute(status -> repository.findDormant(before,
+                new PageRequest(0, limit)));
+    }
+
+    /**
+     * Passes last login dates of engine accounts, which have logged in.
+     *
+     * @param consumer
+     */
+    private void scan(Consumer<Date> consumer) {
+        engine.forEachAccount(r -> {
+            if (r.getLastLogin() != null) {
+                consumer.accept(r.getLastLogin());
+            }
+        });
+    }
+
+    /**
+     * Moves account in index to the written date after commit, older date
+     * doesn't replace newer one.
+     *
+     * @param username
+     * @param lastLogin
+     *                  written last login date
+     */
+    void loggedIn(String username, Date lastLogin) {
+        if (!inMemory) {
+            return;
+        }
+        long date = lastLogin.getTime();
+        afterCommit(() -> {
+            synchronized (this) {
+                Long indexed = dates.get(username);
+                if (indexed != null && indexed >= date) {
+                    return;
+                }
+                if (indexed != null) {
+                    index.remove(indexed);
+                }
+                dates.put(username, date);
+                index.add(date);
+            }
+        });
+    }
+
+    /**
+     * Removes account from index after commit of deletion.
+     *
+     * @param username
+     */
+    void deleted(String username) {
+        if (!inMemory) {
+            return;
+        }
+        afterCommit(() -> {
+            synchronized (this) {
+                Long indexed = dates.remove(username);
+                if (indexed != null) {
+                    index.remove(indexed);
+                }
+            }
+        });
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(
+                new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright 2017 Andrey Alexeenko <Andrey.Alexeenko at t-systems.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.booxware.test.impl;
+
+import com.booxware.test.util.SlidingWindowCounter;
+import java.util.concurrent.atomic.LongAdder;
+import javax.annotation.PostConstruct;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Throttles logins by recent failures of the username. Failures are counted
+ * exactly per username by {@link SlidingWindowCounter}, so failures of
+ * other names never block the username. Memory is bounded by capacity,
+ * flood of distinct names may only make throttling of the least recently
+ * failed names weaker.
+ * Service checks throttle before any query or password hashing, so hammering
+ * one account costs neither database nor BCrypt time.
+ *
+ * @author Andrey Alexeenko <Andrey.Alexeenko at t-systems.com>
+ */
+@Component
+public class LoginThrottle {
+
+    private static final org.slf4j.Logger LOGGER = LoggerFactory.getLogger(
+            LoginThrottle.class);
+    /**
+     * Failures of one username within window, after which its logins are
+     * rejected, 0 disables throttling.
+     */
+    @Value("${booxware.throttle.maxFailures:5}")
+    private int maxFailures;
+
+    @Value("${booxware.throttle.windowMillis:60000}")
+    private long windowMillis;
+    /**
+     * Maximum amount of tracked usernames, memory takes about 200 bytes per
+     * username.
+     */
+    @Value("${booxware.throttle.capacity:100000}")
+    private int capacity;
+
+    private SlidingWindowCounter failures;
+
+    private final LongAdder failed = new LongAdder(),
+            rejected = new LongAdder();
+
+    @PostConstruct
+    private void init() {
+        failures = new SlidingWindowCounter(capacity, windowMillis, 4);
+    }
+
+    public boolean isEnabled() {
+        return maxFailures > 0;
+    }
+
+    /**
+     * Checks, whether login of the username should be rejected.
+     *
+     * @param username
+     *
+     * @return
+     */
+    public boolean isBlocked(String username) {
+        if (!isEnabled() || failures.estimate(username) < maxFailures) {
+            return false;
+        }
+        rejected.increment();
+        LOGGER.debug("Rejected login of {}, too many failures.", username);
+        return true;
+    }
+
+    /**
+     * Registers failed login of the username.
+     *
+     * @param username
+     */
+    public void recordFailure(String username) {
+        if (isEnabled()) {
+            failed.increment();
+            failures.increment(username);
+        }
+    }
+
+    /**
+     * Forgets failures of the username after successful login.
+     *
+     * @param username
+     */
+    public void recordSuccess(String username) {
+        if (isEnabled()) {
+            failures.reset(username);
+        }
+    }
+
+    public Statistics getStatistics() {
+        return new Statistics(failed.sum(), rejected.sum());
+    }
+
+    /**
+     * Snapshot of throttle counters.
+     */
+    public static class Statistics {
+
+        private final long failed, rejected;
+
+        Statistics(long failed, long rejected) {
+            this.failed = failed;
+            this.rejected = rejected;
+        }
+
+        public long getFailed() {
+            return failed;
+        }
+
+        public long getRejected() {
+            return rejected;
+        }
+
+        @Override
+        public String toString() {
+            return "Statistics{" + "failed=" + failed + ", rejected="
+                           + rejected + '}';
+        }
+
+    }
+
+}
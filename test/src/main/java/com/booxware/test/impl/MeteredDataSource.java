@@ -0,0 +1,175 @@
+/*
+ * Copyright 2017 Andrey Alexeenko <Andrey.Alexeenko at t-systems.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.booxware.test.impl;
+
+import com.booxware.test.MetricsRegistry;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import org.apache.commons.dbcp2.BasicDataSource;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+/**
+ * Connection pool decorator, which records connection acquisition time into
+ * metrics registry and exposes pool state.
+ * Pool is defined by "production" profile of application context:
+ * <pre>
+ * &lt;bean id="dataSource" class="com.booxware.test.impl.MeteredDataSource"&gt;
+ *     &lt;constructor-arg ref="pooledDataSource" /&gt;
+ *     &lt;constructor-arg ref="histogramMetricsRegistry" /&gt;
+ * &lt;/bean&gt;
+ * </pre>
+ *
+ * @author Andrey Alexeenko <Andrey.Alexeenko at t-systems.com>
+ */
+public class MeteredDataSource extends DelegatingDataSource {
+
+    /**
+     * Name of connection acquisition metric.
+     */
+    static final String WAIT_METRIC = "DataSource.getConnection";
+
+    private final BasicDataSource pool;
+
+    private final MetricsRegistry registry;
+
+    private final LongAdder acquired = new LongAdder(),
+            waitNanos = new LongAdder();
+
+    private final LongAccumulator maxWaitNanos = new LongAccumulator(
+            Math::max, 0);
+
+    /**
+     * @param pool
+     *                 connection pool
+     * @param registry
+     *                 registry of acquisition time
+     */
+    public MeteredDataSource(BasicDataSource pool, MetricsRegistry registry) {
+        super(pool);
+        this.pool = pool;
+        this.registry = registry;
+    }
+
+    /**
+     * {@inheritDoc }
+     *
+     * @return
+     *
+     * @throws SQLException
+     */
+    @Override
+    public Connection getConnection() throws SQLException {
+        long started = System.nanoTime();
+        try {
+            return pool.getConnection();
+        } finally {
+            recordWait(System.nanoTime() - started);
+        }
+    }
+
+    /**
+     * {@inheritDoc }
+     *
+     * @param username
+     * @param password
+     *
+     * @return
+     *
+     * @throws SQLException
+     */
+    @Override
+    public Connection getConnection(String username, String password)
+            throws SQLException {
+        long started = System.nanoTime();
+        try {
+            return pool.getConnection(username, password);
+        } finally {
+            recordWait(System.nanoTime() - started);
+        }
+    }
+
+    private void recordWait(long nanos) {
+        acquired.increment();
+        waitNanos.add(nanos);
+        maxWaitNanos.accumulate(nanos);
+        registry.record(WAIT_METRIC, nanos);
+    }
+
+    public Statistics getStatistics() {
+        return new Statistics(pool.getNumActive(), pool.getNumIdle(),
+                pool.getMaxTotal(), acquired.sum(), waitNanos.sum(),
+                maxWaitNanos.get());
+    }
+
+    /**
+     * Snapshot of pool state.
+     */
+    public static class Statistics {
+
+        private final int active, idle, maxTotal;
+
+        private final long acquired, waitNanos, maxWaitNanos;
+
+        Statistics(int active, int idle, int maxTotal, long acquired,
+                long waitNanos, long maxWaitNanos) {
+            this.active = active;
+            this.idle = idle;
+            this.maxTotal = maxTotal;
+            this.acquired = acquired;
+            this.waitNanos = waitNanos;
+            this.maxWaitNanos = maxWaitNanos;
+        }
+
+        public int getActive() {
+            return active;
+        }
+
+        public int getIdle() {
+            return idle;
+        }
+
+        public int getMaxTotal() {
+            return maxTotal;
+        }
+
+        public long getAcquired() {
+            return acquired;
+        }
+
+        /**
+         * @return mean connection acquisition time in nanoseconds
+         */
+        public long getAverageWait() {
+            return acquired == 0 ? 0 : waitNanos / acquired;
+        }
+
+        public long getMaxWait() {
+            return maxWaitNanos;
+        }
+
+        @Override
+        public String toString() {
+            return "Statistics{active=" + active + ", idle=" + idle
+                           + ", maxTotal=" + maxTotal + ", acquired="
+                           + acquired + ", avgWait=" + getAverageWait()
+                           + ", maxWait=" + maxWaitNanos + '}';
+        }
+
+    }
+
+}
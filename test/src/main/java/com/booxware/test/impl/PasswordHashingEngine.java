@@ -0,0 +1,510 @@
+/*
+ * Copyright 2017 Andrey Alexeenko <Andrey.Alexeenko at t-systems.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.booxware.test.impl;
+
+import com.booxware.test.MetricsRegistry;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.crypto.bcrypt.BCrypt;
+import org.springframework.stereotype.Component;
+
+/**
+ * Dedicated executor for BCrypt calculations. Pool is limited by amount of
+ * cores and has bounded queue, so CPU consumption is bounded as well, and
+ * requests over the capacity are rejected instead of waiting.
+ * Bulk calculations go to a separate smaller pool with own queue, which
+ * blocks submitters instead of rejecting, so bulk work never takes queue
+ * slots of interactive requests and takes only a share of cores.
+ * Every request has own deadline. Deadline of interactive request starts
+ * when the request has been accepted, so it covers the queue wait. Deadline
+ * of bulk request starts when the calculation starts, because the bulk
+ * queue is a back pressure of submitters, not an overload.
+ *
+ * @author Andrey Alexeenko <Andrey.Alexeenko at t-systems.com>
+ */
+@Component
+public class PasswordHashingEngine {
+
+    private static final org.slf4j.Logger LOGGER = LoggerFactory.getLogger(
+            PasswordHashingEngine.class);
+
+    /**
+     * Names of BCrypt phase metrics.
+     */
+    static final String QUEUE_WAIT_METRIC = "PasswordHashingEngine.queueWait",
+            BULK_QUEUE_WAIT_METRIC = "PasswordHashingEngine.bulkQueueWait",
+            COMPUTE_METRIC = "PasswordHashingEngine.compute";
+    /**
+     * Names of calibration gauges.
+     */
+    static final String COST_GAUGE = "PasswordHashingEngine.cost",
+            HASH_NANOS_GAUGE = "PasswordHashingEngine.hashNanos";
+
+    private static final String OVERLOADED_MSG = "Service is overloaded, "
+                                                         + "try again later.",
+            INTERRUPTED_MSG = "Password hashing has been interrupted.";
+
+    /**
+     * Amount of worker threads, 0 means amount of available cores.
+     */
+    @Value("${booxware.hashing.threads:0}")
+    private int threads;
+    /**
+     * Amount of hashing requests, which could wait for a worker.
+     */
+    @Value("${booxware.hashing.queueCapacity:64}")
+    private int queueCapacity;
+    /**
+     * Amount of bulk worker threads, 0 means half of available cores.
+     */
+    @Value("${booxware.hashing.bulkThreads:0}")
+    private int bulkThreads;
+    /**
+     * Amount of bulk hashing requests, which could wait for a bulk worker.
+     */
+    @Value("${booxware.hashing.bulkQueueCapacity:64}")
+    private int bulkQueueCapacity;
+    /**
+     * Maximum time from acceptance of interactive hashing request, or from
+     * start of bulk calculation, till its result.
+     */
+    @Value("${booxware.hashing.timeoutMillis:5000}")
+    private long timeoutMillis;
+
+    /**
+     * Fixed BCrypt cost, 0 means that cost is calibrated at startup.
+     */
+    @Value("${booxware.hashing.cost:0}")
+    private int fixedCost;
+    /**
+     * Desired time of one hash calculation, used by calibration.
+     */
+    @Value("${booxware.hashing.targetMillis:100}")
+    private long targetMillis;
+    /**
+     * Lower bound of calibrated cost, weaker hashes are never produced.
+     */
+    @Value("${booxware.hashing.minCost:10}")
+    private int minCost;
+    /**
+     * Upper bound of calibrated cost.
+     */
+    @Value("${booxware.hashing.maxCost:16}")
+    private int maxCost;
+
+    @Autowired
+    private MetricsRegistry registry;
+
+    private volatile int cost;
+
+    private volatile long hashNanos;
+
+    private ThreadPoolExecutor executor, bulkExecutor;
+
+    private final LongAdder submitted = new LongAdder(),
+            rejected = new LongAdder(),
+            completed = new LongAdder(),
+            queueWaitNanos = new LongAdder(),
+            computeNanos = new LongAdder();
+
+    private final AtomicLong maxQueueWaitNanos = new AtomicLong();
+
+    @PostConstruct
+    private void init() {
+        int cores = Runtime.getRuntime().availableProcessors();
+        int size = threads > 0 ? threads : cores,
+                bulkSize = bulkThreads > 0 ? bulkThreads : Math.max(1,
+                                cores / 2);
+        executor = newExecutor("bcrypt-", size, queueCapacity);
+        bulkExecutor = newExecutor("bcrypt-bulk-", bulkSize,
+                bulkQueueCapacity);
+        calibrate();
+        LOGGER.debug("Started password hashing engine with {} workers and "
+                             + "{} bulk workers.", size, bulkSize);
+    }
+
+    private static ThreadPoolExecutor newExecutor(String prefix, int size,
+            int capacity) {
+        AtomicInteger counter = new AtomicInteger();
+        ThreadFactory factory = r -> {
+            Thread t = new Thread(r, prefix + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(size, size, 0L,
+                TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, capacity)), factory,
+                new ThreadPoolExecutor.AbortPolicy());
+        pool.prestartAllCoreThreads();
+        return pool;
+    }
+
+    /**
+     * Chooses the highest cost, which hash calculation fits into target
+     * time on this machine, but not lower than minimal cost. Every next cost
+     * doubles calculation time, so only chosen cost is measured again.
+     * Chosen cost and its hash time are exported as gauges.
+     */
+    private void calibrate() {
+        if (fixedCost > 0) {
+            cost = fixedCost;
+            hashNanos = measure(cost);
+            export();
+            return;
+        }
+        long target = TimeUnit.MILLISECONDS.toNanos(targetMillis);
+        int c = minCost;
+        long nanos = measure(c);
+        while (c < maxCost && nanos * 2 <= target) {
+            c++;
+            nanos *= 2;
+        }
+        cost = c;
+        hashNanos = c == minCost ? nanos : measure(c);
+        export();
+        LOGGER.info("Calibrated BCrypt cost {}, hash takes {} ms.", cost,
+                TimeUnit.NANOSECONDS.toMillis(hashNanos));
+    }
+
+    private void export() {
+        registry.gauge(COST_GAUGE, cost);
+        registry.gauge(HASH_NANOS_GAUGE, hashNanos);
+    }
+
+    /**
+     * Average time of hash calculation with requested cost.
+     *
+     * @param rounds
+     *
+     * @return
+     */
+    private static long measure(int rounds) {
+        String salt = BCrypt.gensalt(rounds);
+        BCrypt.hashpw("calibration", salt);
+        int runs = 3;
+        long started = System.nanoTime();
+        for (int i = 0; i < runs; i++) {
+            BCrypt.hashpw("calibration", salt);
+        }
+        return (System.nanoTime() - started) / runs;
+    }
+
+    /**
+     * BCrypt cost, which should be used for new hashes.
+     *
+     * @return
+     */
+    public int getCost() {
+        return cost;
+    }
+
+    /**
+     * Generates new salt with current cost.
+     *
+     * @return
+     */
+    public String gensalt() {
+        return BCrypt.gensalt(cost);
+    }
+
+    @PreDestroy
+    private void destroy() {
+        executor.shutdownNow().forEach(r -> ((Future<?>) r).cancel(false));
+        bulkExecutor.shutdownNow().forEach(r -> ((Future<?>) r).cancel(
+                false));
+    }
+
+    /**
+     * Calculates BCrypt hash, rejects the request if engine is saturated.
+     *
+     * @param password
+     * @param salt
+     *
+     * @return
+     */
+    public String hashpw(String password, String salt) {
+        Future<String> f;
+        try {
+            f = submit(() -> BCrypt.hashpw(password, salt), false);
+        } catch (RejectedExecutionException e) {
+            throw new IllegalStateException(OVERLOADED_MSG, e);
+        }
+        return await(f);
+    }
+
+    /**
+     * Submits BCrypt calculation for bulk processing, caller is blocked until
+     * the bulk queue accepts the request.
+     *
+     * @param password
+     * @param salt
+     *
+     * @return
+     */
+    public Future<String> submitHashpw(String password, String salt) {
+        return submit(() -> BCrypt.hashpw(password, salt), true);
+    }
+
+    /**
+     * Waits for result of previously submitted calculation until its
+     * deadline, so waits for earlier requests don't shorten waits for the
+     * later ones.
+     *
+     * @param <T>
+     * @param f
+     *
+     * @return
+     */
+    public <T> T await(Future<T> f) {
+        try {
+            long remaining = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+            if (f instanceof Job) {
+                Job<?> job = (Job<?>) f;
+                // queued bulk job always starts, or is cancelled by shutdown
+                job.started.await();
+                remaining = job.deadline - System.nanoTime();
+            }
+            return f.get(Math.max(0, remaining), TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(INTERRUPTED_MSG, e);
+        } catch (TimeoutException e) {
+            f.cancel(true);
+            throw new IllegalStateException(OVERLOADED_MSG, e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    /**
+     * Current engine metrics.
+     *
+     * @return
+     */
+    public Statistics getStatistics() {
+        return new Statistics(submitted.sum(), rejected.sum(),
+                completed.sum(), queueWaitNanos.sum(), maxQueueWaitNanos.get(),
+                computeNanos.sum(), executor.getQueue().size(),
+                executor.getActiveCount(), bulkExecutor.getQueue().size(),
+                bulkExecutor.getActiveCount(), cost, hashNanos);
+    }
+
+    private <T> Future<T> submit(Callable<T> job, boolean bulk) {
+        long enqueued = System.nanoTime();
+        long timeout = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        Job<T> task = new Job<>(bulk, enqueued + timeout, timeout, () -> {
+            long started = System.nanoTime();
+            long waited = started - enqueued;
+            queueWaitNanos.add(waited);
+            maxQueueWaitNanos.accumulateAndGet(waited, Math::max);
+            registry.record(bulk ? BULK_QUEUE_WAIT_METRIC : QUEUE_WAIT_METRIC,
+                    waited);
+            try {
+                return job.call();
+            } finally {
+                long computed = System.nanoTime() - started;
+                computeNanos.add(computed);
+                registry.record(COMPUTE_METRIC, computed);
+                completed.increment();
+            }
+        });
+        submitted.increment();
+        if (!bulk) {
+            try {
+                executor.execute(task);
+            } catch (RejectedExecutionException e) {
+                rejected.increment();
+                throw e;
+            }
+        } else {
+            // core threads are prestarted, so direct queue feeding is safe
+            try {
+                bulkExecutor.getQueue().put(task);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(INTERRUPTED_MSG, e);
+            }
+        }
+        return task;
+    }
+
+    /**
+     * Hashing task with own deadline, deadline of bulk task starts with the
+     * calculation.
+     */
+    private static class Job<T> extends FutureTask<T> {
+
+        private final boolean bulk;
+
+        private final long timeout;
+
+        private final CountDownLatch started = new CountDownLatch(1);
+
+        private volatile long deadline;
+
+        Job(boolean bulk, long deadline, long timeout, Callable<T> callable) {
+            super(callable);
+            this.bulk = bulk;
+            this.deadline = deadline;
+            this.timeout = timeout;
+        }
+
+        @Override
+        public void run() {
+            if (bulk) {
+                deadline = System.nanoTime() + timeout;
+            }
+            started.countDown();
+            super.run();
+        }
+
+        @Override
+        protected void done() {
+            started.countDown();
+        }
+
+    }
+
+    /**
+     * Immutable snapshot of engine metrics, time values are in nanoseconds.
+     */
+    public static class Statistics {
+
+        private final long submitted, rejected, completed, queueWait,
+                maxQueueWait, compute;
+
+        private final int queued, active, bulkQueued, bulkActive, cost;
+
+        private final long calibratedHash;
+
+        Statistics(long submitted, long rejected, long completed,
+                long queueWait, long maxQueueWait, long compute, int queued,
+                int active, int bulkQueued, int bulkActive, int cost,
+                long calibratedHash) {
+            this.submitted = submitted;
+            this.rejected = rejected;
+            this.completed = completed;
+            this.queueWait = queueWait;
+            this.maxQueueWait = maxQueueWait;
+            this.compute = compute;
+            this.queued = queued;
+            this.active = active;
+            this.bulkQueued = bulkQueued;
+            this.bulkActive = bulkActive;
+            this.cost = cost;
+            this.calibratedHash = calibratedHash;
+        }
+
+        public long getSubmitted() {
+            return submitted;
+        }
+
+        public long getRejected() {
+            return rejected;
+        }
+
+        public long getCompleted() {
+            return completed;
+        }
+
+        public long getQueueWait() {
+            return queueWait;
+        }
+
+        public long getMaxQueueWait() {
+            return maxQueueWait;
+        }
+
+        public long getCompute() {
+            return compute;
+        }
+
+        public int getQueued() {
+            return queued;
+        }
+
+        public int getActive() {
+            return active;
+        }
+
+        public int getBulkQueued() {
+            return bulkQueued;
+        }
+
+        public int getBulkActive() {
+            return bulkActive;
+        }
+
+        /**
+         * @return BCrypt cost of new hashes
+         */
+        public int getCost() {
+            return cost;
+        }
+
+        /**
+         * @return measured time of one hash with chosen cost
+         */
+        public long getCalibratedHash() {
+            return calibratedHash;
+        }
+
+        public long getAverageQueueWait() {
+            return completed == 0 ? 0 : queueWait / completed;
+        }
+
+        public long getAverageCompute() {
+            return completed == 0 ? 0 : compute / completed;
+        }
+
+        @Override
+        public String toString() {
+            return "Statistics{submitted=" + submitted + ", rejected="
+                           + rejected + ", completed=" + completed
+                           + ", avgQueueWait=" + getAverageQueueWait()
+                           + ", maxQueueWait=" + maxQueueWait
+                           + ", avgCompute=" + getAverageCompute()
+                           + ", queued=" + queued + ", active=" + active
+                           + ", bulkQueued=" + bulkQueued + ", bulkActive="
+                           + bulkActive
+                           + ", cost=" + cost + ", calibratedHash="
+                           + calibratedHash + '}';
+        }
+
+    }
+
+}
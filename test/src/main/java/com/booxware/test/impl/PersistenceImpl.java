@@ -16,8 +16,27 @@
 package com.booxware.test.impl;
 
 import com.booxware.test.Account;
+import com.booxware.test.AccountRecord;
+import com.booxware.test.LastLogin;
 import com.booxware.test.PersistenceInterface;
+import com.booxware.test.Timed;
 import com.booxware.test.repository.AccountRepository;
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import org.hibernate.Session;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Repository;
 import org.springframework.transaction.annotation.Transactional;
@@ -39,6 +58,28 @@ public class PersistenceImpl implements PersistenceInterface {
      */
     @Autowired
     private AccountRepository repository;
+    /**
+     * Shared entity manager, used for plain JDBC batches.
+     */
+    @PersistenceContext
+    private EntityManager entityManager;
+    /**
+     * Names, which are read from primary database after own writes, it is
+     * declared only together with replicas.
+     */
+    @Autowired(required = false)
+    private ReadYourWritesWindow readYourWrites;
+
+    /**
+     * Maximum amount of names within one IN list.
+     */
+    private static final int IN_CHUNK = 1000;
+
+    private static final String UPDATE_LAST_LOGIN_SQL
+                                        = "UPDATE ACCOUNT SET LAST_LOGIN = ? "
+                                                  + "WHERE USERNAME = ? AND "
+                                                  + "(LAST_LOGIN IS NULL OR "
+                                                  + "LAST_LOGIN < ?)";
 
     /**
      * {@inheritDoc }
@@ -48,11 +89,62 @@ public class PersistenceImpl implements PersistenceInterface {
      * @return
      */
     @Override
+    @Timed
     @Transactional
     public Account save(Account account) {
+        written(account.getUsername());
         return repository.saveAndFlush(account);
     }
 
+    /**
+     * {@inheritDoc }
+     * Entities are flushed once, so Hibernate is able to group inserts into
+     * JDBC batches (see hibernate.jdbc.batch_size).
+     *
+     * @param accounts
+     *
+     * @return
+     */
+    @Override
+    @Timed
+    @Transactional
+    public List<Account> saveAll(Collection<Account> accounts) {
+        accounts.forEach(a -> written(a.getUsername()));
+        List<Account> saved = repository.save(accounts);
+        repository.flush();
+        return saved;
+    }
+
+    /**
+     * {@inheritDoc }
+     * Statement is executed as JDBC batch on the connection of current
+     * transaction, so persistence context is not involved.
+     *
+     * @param lastLogins
+     */
+    @Override
+    @Timed
+    @Transactional
+    public void updateLastLogins(Map<String, Date> lastLogins) {
+        if (lastLogins.isEmpty()) {
+            return;
+        }
+        lastLogins.keySet().forEach(this::written);
+        entityManager.unwrap(Session.class).doWork(connection -> {
+            try (PreparedStatement ps = connection
+                    .prepareStatement(UPDATE_LAST_LOGIN_SQL)) {
+                for (Map.Entry<String, Date> e : lastLogins.entrySet()) {
+                    Timestamp ts = new Timestamp(e.getValue().getTime());
+                    ps.setTimestamp(1, ts);
+                    ps.setString(2, e.getKey());
+                    ps.setTimestamp(3, ts);
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+            }
+        });
+    }
+
     /**
      * {@inheritDoc }
      *
@@ -61,8 +153,9 @@ public class PersistenceImpl implements PersistenceInterface {
      * @return
      */
     @Override
+    @Timed
     public Account findById(Long id) {
-        return repository.getOne(id);
+        return repository.findOne(id);
     }
 
     /**
@@ -73,8 +166,110 @@ public class PersistenceImpl implements PersistenceInterface {
      * @return
      */
     @Override
+    @Timed
     public Account findByName(String name) {
-        return repository.findByUsername(name);
+        return read(name, () -> repository.findByUsername(name));
+    }
+
+    /**
+     * {@inheritDoc }
+     *
+     * @param name
+     *
+     * @return
+     */
+    @Override
+    @Timed
+    public LastLogin findLastLoginByName(String name) {
+        return read(name, () -> repository.findLastLoginByUsername(name));
+    }
+
+    /**
+     * {@inheritDoc }
+     *
+     * @param names
+     *
+     * @return
+     */
+    @Override
+    @Timed
+    public Set<String> findExistingNames(Collection<String> names) {
+        if (names.isEmpty()) {
+            return Collections.emptySet();
+        }
+        if (readYourWrites != null && names.stream().anyMatch(
+                readYourWrites::isRecent)) {
+            return ReplicaRoutingDataSource.withPrimary(() -> repository
+                    .findUsernamesIn(names));
+        }
+        return repository.findUsernamesIn(names);
+    }
+
+    /**
+     * {@inheritDoc }
+     * Names are queried by chunks of {@value #IN_CHUNK} within one
+     * transaction.
+     *
+     * @param names
+     *
+     * @return
+     */
+    @Override
+    @Timed
+    public Map<String, Date> findLastLogins(Collection<String> names) {
+        if (readYourWrites != null && names.stream().anyMatch(
+                readYourWrites::isRecent)) {
+            return ReplicaRoutingDataSource.withPrimary(() -> queryLastLogins(
+                    names));
+        }
+        return queryLastLogins(names);
+    }
+
+    private Map<String, Date> queryLastLogins(Collection<String> names) {
+        Map<String, Date> lastLogins = new HashMap<>();
+        List<String> chunk = new ArrayList<>(Math.min(IN_CHUNK, names
+                .size()));
+        for (String name : names) {
+            chunk.add(name);
+            if (chunk.size() == IN_CHUNK) {
+                repository.findLastLoginsByUsernameIn(chunk).forEach(
+                        l -> lastLogins.put(l.getUsername(), l.getLastLogin()));
+                chunk.clear();
+            }
+        }
+        if (!chunk.isEmpty()) {
+            repository.findLastLoginsByUsernameIn(chunk).forEach(
+                    l -> lastLogins.put(l.getUsername(), l.getLastLogin()));
+        }
+        return lastLogins;
+    }
+
+    /**
+     * {@inheritDoc }
+     *
+     * @param consumer
+     */
+    @Override
+    @Timed
+    public void forEachName(Consumer<String> consumer) {
+        try (Stream<String> names = repository.streamAllUsernames()) {
+            names.forEach(consumer);
+        }
+    }
+
+    /**
+     * {@inheritDoc }
+     * Rows are read as projections, so persistence context stays empty
+     * regardless of amount of rows.
+     *
+     * @param consumer
+     */
+    @Override
+    @Timed
+    public void forEachAccount(Consumer<AccountRecord> consumer) {
+        try (Stream<AccountRecord> records = repository.streamAllRecords()) {
+            records.forEach(consumer);
+        }
     }
 
     /**
@@ -83,9 +278,42 @@ public class PersistenceImpl implements PersistenceInterface {
      * @param account
      */
     @Override
+    @Timed
     @Transactional
     public void delete(Account account) {
+        written(account.getUsername());
         repository.delete(account);
     }
 
+    /**
+     * {@inheritDoc }
+     *
+     * @param name
+     *
+     * @return
+     */
+    @Override
+    @Timed
+    @Transactional
+    public boolean deleteByName(String name) {
+        written(name);
+        return repository.deleteByUsername(name) > 0;
+    }
+
+    private void written(String name) {
+        if (readYourWrites != null) {
+            readYourWrites.written(name);
+        }
+    }
+
+    /**
+     * Reads from primary database, if the name has been written recently.
+     */
+    private <T> T read(String name, Supplier<T> query) {
+        if (readYourWrites != null && readYourWrites.isRecent(name)) {
+            return ReplicaRoutingDataSource.withPrimary(query);
+        }
+        return query.get();
+    }
+
 }
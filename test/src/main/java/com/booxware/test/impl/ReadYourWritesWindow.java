@@ -0,0 +1,119 @@
+/*
+ * Copyright 2017 Andrey Alexeenko <Andrey.Alexeenko at t-systems.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.booxware.test.impl;
+
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Remembers recently written usernames, so their reads are served by
+ * primary database until replicas have caught up. Writes are queued in
+ * order of expiry, every write drops only expired head of the queue, so
+ * pruning costs are proportional to amount of expired writes.
+ * Window is declared by "replicated" profile of application context and
+ * is used by {@link PersistenceImpl} together with
+ * {@link ReplicaRoutingDataSource}.
+ *
+ * @author Andrey Alexeenko <Andrey.Alexeenko at t-systems.com>
+ */
+public class ReadYourWritesWindow {
+
+    private final Map<String, Long> written = new ConcurrentHashMap<>();
+
+    private final Queue<Write> expiries = new ConcurrentLinkedQueue<>();
+
+    private final Lock pruning = new ReentrantLock();
+
+    private final long windowNanos;
+
+    /**
+     * @param windowMillis
+     *                     time after write, while reads go to primary
+     */
+    public ReadYourWritesWindow(long windowMillis) {
+        this.windowNanos = windowMillis * 1_000_000L;
+    }
+
+    /**
+     * Registers write of the username.
+     *
+     * @param username
+     */
+    public void written(String username) {
+        if (windowNanos <= 0) {
+            return;
+        }
+        long now = System.nanoTime();
+        Write write = new Write(username, now + windowNanos);
+        written.put(username, write.expiresAt);
+        expiries.add(write);
+        // one writer prunes at a time, others don't wait for it
+        if (!pruning.tryLock()) {
+            return;
+        }
+        try {
+            Write head = expiries.peek();
+            while (head != null && head.expiresAt - now < 0) {
+                expiries.poll();
+                // name, which has been written again, is kept
+                written.remove(head.username, head.expiresAt);
+                head = expiries.peek();
+            }
+        } finally {
+            pruning.unlock();
+        }
+    }
+
+    /**
+     * Checks, whether the username has been written within window.
+     *
+     * @param username
+     *
+     * @return
+     */
+    public boolean isRecent(String username) {
+        Long expiresAt = written.get(username);
+        if (expiresAt == null) {
+            return false;
+        }
+        if (expiresAt - System.nanoTime() < 0) {
+            written.remove(username, expiresAt);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Remembered write.
+     */
+    private static class Write {
+
+        private final String username;
+
+        private final long expiresAt;
+
+        Write(String username, long expiresAt) {
+            this.username = username;
+            this.expiresAt = expiresAt;
+        }
+
+    }
+
+}
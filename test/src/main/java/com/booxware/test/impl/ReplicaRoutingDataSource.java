@@ -0,0 +1,139 @@
+/*
+ * Copyright 2017 Andrey Alexeenko <Andrey.Alexeenko at t-systems.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.booxware.test.impl;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import javax.sql.DataSource;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Routes connections of read only transactions to replicas by round robin,
+ * all other connections go to primary. Read only flag is known only after
+ * transaction begins, so data source must be wrapped by
+ * {@link org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy},
+ * which takes actual connection on first statement. See "replicated" profile
+ * of application context.
+ *
+ * @author Andrey Alexeenko <Andrey.Alexeenko at t-systems.com>
+ */
+public class ReplicaRoutingDataSource extends AbstractRoutingDataSource {
+
+    private static final String PRIMARY = "primary";
+
+    private static final ThreadLocal<Boolean> FORCE_PRIMARY = ThreadLocal
+            .withInitial(() -> Boolean.FALSE);
+
+    private final int replicas;
+
+    private final AtomicInteger next = new AtomicInteger();
+
+    private final LongAdder primaryConnections = new LongAdder(),
+            replicaConnections = new LongAdder();
+
+    /**
+     * @param primary
+     *                 data source of writes
+     * @param replicas
+     *                 data sources of read only transactions
+     */
+    public ReplicaRoutingDataSource(DataSource primary,
+            List<DataSource> replicas) {
+        Map<Object, Object> targets = new HashMap<>();
+        targets.put(PRIMARY, primary);
+        for (int i = 0; i < replicas.size(); i++) {
+            targets.put(i, replicas.get(i));
+        }
+        setTargetDataSources(targets);
+        setDefaultTargetDataSource(primary);
+        this.replicas = replicas.size();
+    }
+
+    /**
+     * Executes the action with primary connections even within read only
+     * transactions, e.g. to read own recent writes.
+     *
+     * @param <T>
+     * @param action
+     *
+     * @return result of the action
+     */
+    public static <T> T withPrimary(Supplier<T> action) {
+        Boolean previous = FORCE_PRIMARY.get();
+        FORCE_PRIMARY.set(Boolean.TRUE);
+        try {
+            return action.get();
+        } finally {
+            FORCE_PRIMARY.set(previous);
+        }
+    }
+
+    /**
+     * {@inheritDoc }
+     *
+     * @return
+     */
+    @Override
+    protected Object determineCurrentLookupKey() {
+        if (replicas == 0 || FORCE_PRIMARY.get()
+                    || !TransactionSynchronizationManager
+                            .isCurrentTransactionReadOnly()) {
+            primaryConnections.increment();
+            return PRIMARY;
+        }
+        replicaConnections.increment();
+        return Math.floorMod(next.getAndIncrement(), replicas);
+    }
+
+    public Statistics getStatistics() {
+        return new Statistics(primaryConnections.sum(),
+                replicaConnections.sum());
+    }
+
+    /**
+     * Snapshot of routing counters.
+     */
+    public static class Statistics {
+
+        private final long primary, replica;
+
+        Statistics(long primary, long replica) {
+            this.primary = primary;
+            this.replica = replica;
+        }
+
+        public long getPrimary() {
+            return primary;
+        }
+
+        public long getReplica() {
+            return replica;
+        }
+
+        @Override
+        public String toString() {
+            return "Statistics{primary=" + primary + ", replica=" + replica
+                           + '}';
+        }
+
+    }
+
+}
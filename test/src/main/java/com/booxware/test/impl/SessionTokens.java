@@ -0,0 +1,360 @@
+/*
+ * Copyright 2017 Andrey Alexeenko <Andrey.Alexeenko at t-systems.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.booxware.test.impl;
+
+import com.booxware.test.Account;
+import com.booxware.test.SessionToken;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import javax.annotation.PostConstruct;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Issues and verifies HMAC-SHA256 signed session tokens, so authenticated
+ * requests don't need password hashing or database access.
+ * Token is URL-safe Base64 of version, key ID, account ID, issue and expiry
+ * times, username and truncated signature. Signing key is derived from
+ * the secret by rotation period, key ID is the number of the period, so
+ * keys rotate without coordination between nodes, which share the secret,
+ * and keys older than token lifetime are not accepted anymore.
+ * Tokens of deleted accounts are revoked by username. Revocation entries
+ * are kept only for token lifetime; if there are still too many of them,
+ * all tokens issued so far are revoked instead, so bound of memory never
+ * makes revoked token valid again.
+ *
+ * @author Andrey Alexeenko <Andrey.Alexeenko at t-systems.com>
+ */
+@Component
+public class SessionTokens {
+
+    private static final org.slf4j.Logger LOGGER = LoggerFactory.getLogger(
+            SessionTokens.class);
+
+    private static final String ALGORITHM = "HmacSHA256";
+
+    private static final byte VERSION = 1;
+
+    private static final int HEADER = 1 + 4 + 8 + 8 + 8, SIGNATURE = 16;
+
+    private static final String INVALID_MSG = "Invalid session token.",
+            EXPIRED_MSG = "Session token has expired.",
+            REVOKED_MSG = "Session token has been revoked.";
+
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder()
+            .withoutPadding();
+
+    private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+    /**
+     * Base64 encoded secret, shared by nodes. Random secret is generated,
+     * if it's empty, then tokens are not accepted after restart.
+     */
+    @Value("${booxware.token.secret:}")
+    private String secret;
+
+    @Value("${booxware.token.ttlSeconds:3600}")
+    private long ttlSeconds;
+
+    @Value("${booxware.token.rotationSeconds:86400}")
+    private long rotationSeconds;
+    /**
+     * Maximum amount of revoked usernames.
+     */
+    @Value("${booxware.token.revocations:10000}")
+    private int maxRevocations;
+
+    private byte[] master;
+
+    private long ttlMillis, rotationMillis;
+
+    private final Map<Integer, SecretKeySpec> keys
+                                                      = new ConcurrentHashMap<>();
+
+    private final Map<String, Long> revoked = new ConcurrentHashMap<>();
+    /**
+     * Tokens issued not after this time are rejected.
+     */
+    private volatile long notAfter = Long.MIN_VALUE;
+
+    /**
+     * Mac of every thread, initialized by the key of the last call, so
+     * key is not set up again within one rotation period.
+     */
+    private final ThreadLocal<KeyedMac> macs = ThreadLocal.withInitial(
+            KeyedMac::new);
+
+    private final LongAdder issued = new LongAdder(),
+            validated = new LongAdder(),
+            rejected = new LongAdder();
+
+    @PostConstruct
+    private void init() {
+        if (ttlSeconds <= 0 || rotationSeconds <= 0) {
+            throw new IllegalStateException("Token lifetime and rotation "
+                                                    + "period should be "
+                                                    + "positive.");
+        }
+        ttlMillis = TimeUnit.SECONDS.toMillis(ttlSeconds);
+        rotationMillis = TimeUnit.SECONDS.toMillis(rotationSeconds);
+        if (secret.isEmpty()) {
+            master = new byte[32];
+            new SecureRandom().nextBytes(master);
+            LOGGER.info("Session tokens are signed by random secret.");
+        } else {
+            master = Base64.getDecoder().decode(secret);
+        }
+    }
+
+    /**
+     * Issues token for authenticated account.
+     *
+     * @param account
+     *
+     * @return
+     */
+    public SessionToken issue(Account account) {
+        long now = System.currentTimeMillis(), expires = now + ttlMillis;
+        int keyId = (int) (now / rotationMillis);
+        byte[] name = account.getUsername().getBytes(StandardCharsets.UTF_8);
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER + name.length
+                                                        + SIGNATURE);
+        buffer.put(VERSION).putInt(keyId).putLong(account.getId())
+                .putLong(now).putLong(expires).put(name);
+        buffer.put(sign(keyId, buffer.array(), buffer.position()), 0,
+                SIGNATURE);
+        issued.increment();
+        return new SessionToken(ENCODER.encodeToString(buffer.array()),
+                account.getId(), account.getUsername(), now, expires);
+    }
+
+    /**
+     * Verifies signature, expiry and revocation of the token.
+     *
+     * @param token
+     *
+     * @return claims of the token
+     *
+     * @throws IllegalArgumentException
+     *                                  if token is not acceptable
+     */
+    public SessionToken validate(String token) {
+        byte[] bytes;
+        try {
+            bytes = DECODER.decode(token);
+        } catch (IllegalArgumentException e) {
+            throw reject(INVALID_MSG);
+        }
+        int length = bytes.length - SIGNATURE;
+        if (length <= HEADER || bytes[0] != VERSION) {
+            throw reject(INVALID_MSG);
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        long now = System.currentTimeMillis();
+        int keyId = buffer.getInt(1);
+        if (keyId > now / rotationMillis
+                    || keyId < (now - ttlMillis) / rotationMillis
+                    || !matches(sign(keyId, bytes, length), bytes, length)) {
+            throw reject(INVALID_MSG);
+        }
+        long accountId = buffer.getLong(5), issuedAt = buffer.getLong(13),
+                expiresAt = buffer.getLong(21);
+        if (expiresAt <= now) {
+            throw reject(EXPIRED_MSG);
+        }
+        String username = new String(bytes, HEADER, length - HEADER,
+                StandardCharsets.UTF_8);
+        Long revokedAt = revoked.get(username);
+        if (issuedAt <= notAfter || revokedAt != null
+                                            && issuedAt <= revokedAt) {
+            throw reject(REVOKED_MSG);
+        }
+        validated.increment();
+        return new SessionToken(token, accountId, username, issuedAt,
+                expiresAt);
+    }
+
+    /**
+     * Revokes all tokens of the username, issued so far.
+     *
+     * @param username
+     */
+    public void revoke(String username) {
+        long now = System.currentTimeMillis();
+        revoked.put(username, now);
+        if (revoked.size() > maxRevocations) {
+            prune(now);
+        }
+    }
+
+    /**
+     * Revokes all tokens, issued so far.
+     */
+    public void revokeAll() {
+        notAfter = System.currentTimeMillis();
+        LOGGER.info("Revoked all session tokens.");
+    }
+
+    public Statistics getStatistics() {
+        return new Statistics(issued.sum(), validated.sum(), rejected.sum(),
+                revoked.size());
+    }
+
+    /**
+     * Drops revocations, which are older than token lifetime, falls back to
+     * revocation of all tokens, if there are still too many.
+     *
+     * @param now
+     */
+    private synchronized void prune(long now) {
+        revoked.values().removeIf(at -> at <= now - ttlMillis);
+        if (revoked.size() > maxRevocations) {
+            notAfter = now;
+            revoked.clear();
+            LOGGER.warn("Too many revoked usernames, revoked all session "
+                                + "tokens.");
+        }
+    }
+
+    /**
+     * Signs first bytes of data by the key of rotation period.
+     *
+     * @param keyId
+     * @param data
+     * @param length
+     *
+     * @return full signature
+     */
+    private byte[] sign(int keyId, byte[] data, int length) {
+        KeyedMac keyed = macs.get();
+        if (keyed.mac == null || keyed.keyId != keyId) {
+            try {
+                keyed.mac = Mac.getInstance(ALGORITHM);
+                keyed.mac.init(key(keyId));
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException(e);
+            }
+            keyed.keyId = keyId;
+        }
+        keyed.mac.update(data, 0, length);
+        return keyed.mac.doFinal();
+    }
+
+    /**
+     * Key of rotation period, derived as HMAC of period number by secret.
+     *
+     * @param keyId
+     *
+     * @return
+     */
+    private SecretKeySpec key(int keyId) {
+        SecretKeySpec key = keys.get(keyId);
+        if (key != null) {
+            return key;
+        }
+        try {
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(new SecretKeySpec(master, ALGORITHM));
+            key = new SecretKeySpec(mac.doFinal(ByteBuffer.allocate(4)
+                    .putInt(keyId).array()), ALGORITHM);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+        long retired = (System.currentTimeMillis() - ttlMillis)
+                               / rotationMillis;
+        keys.keySet().removeIf(id -> id < retired);
+        keys.put(keyId, key);
+        return key;
+    }
+
+    /**
+     * Compares truncated signature in constant time.
+     */
+    private static boolean matches(byte[] expected, byte[] token,
+            int offset) {
+        int diff = 0;
+        for (int i = 0; i < SIGNATURE; i++) {
+            diff |= expected[i] ^ token[offset + i];
+        }
+        return diff == 0;
+    }
+
+    private IllegalArgumentException reject(String message) {
+        rejected.increment();
+        return new IllegalArgumentException(message);
+    }
+
+    private static class KeyedMac {
+
+        private Mac mac;
+
+        private int keyId;
+
+    }
+
+    /**
+     * Snapshot of token counters.
+     */
+    public static class Statistics {
+
+        private final long issued, validated, rejected, revoked;
+
+        Statistics(long issued, long validated, long rejected,
+                long revoked) {
+            this.issued = issued;
+            this.validated = validated;
+            this.rejected = rejected;
+            this.revoked = revoked;
+        }
+
+        public long getIssued() {
+            return issued;
+        }
+
+        public long getValidated() {
+            return validated;
+        }
+
+        public long getRejected() {
+            return rejected;
+        }
+
+        /**
+         * @return amount of revoked usernames
+         */
+        public long getRevoked() {
+            return revoked;
+        }
+
+        @Override
+        public String toString() {
+            return "Statistics{" + "issued=" + issued + ", validated="
+                           + validated + ", rejected=" + rejected
+                           + ", revoked=" + revoked + '}';
+        }
+
+    }
+
+}
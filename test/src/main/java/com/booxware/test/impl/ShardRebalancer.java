@@ -0,0 +1,114 @@
+/*
+ * Copyright 2017 Andrey Alexeenko <Andrey.Alexeenko at t-systems.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.booxware.test.impl;
+
+import com.booxware.test.Account;
+import com.booxware.test.PersistenceInterface;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Moves accounts, which are stored by another shard than their names are
+ * routed to, e.g. after new shards have been appended to
+ * {@link ShardedPersistence}. Accounts are copied into target shard first
+ * and deleted from source shard then, names already present in target shard
+ * are only deleted from source, so rebalancing could be restarted at any
+ * time. Accounts, which have not been moved yet, are not found by sharded
+ * persistence, so rebalancing should run while logins are paused.
+ *
+ * @author Andrey Alexeenko <Andrey.Alexeenko at t-systems.com>
+ */
+public class ShardRebalancer {
+
+    private static final org.slf4j.Logger LOGGER = LoggerFactory.getLogger(
+            ShardRebalancer.class);
+
+    private final ShardedPersistence persistence;
+
+    /**
+     * @param persistence
+     *                    sharded persistence with the new set of shards
+     */
+    public ShardRebalancer(ShardedPersistence persistence) {
+        this.persistence = persistence;
+    }
+
+    /**
+     * Moves all misplaced accounts.
+     *
+     * @param batchSize
+     *                  amount of accounts, moved by one call per shard
+     *
+     * @return amount of moved accounts
+     */
+    public long rebalance(int batchSize) {
+        List<PersistenceInterface> shards = persistence.getShards();
+        long moved = 0;
+        for (int source = 0; source < shards.size(); source++) {
+            int s = source;
+            List<String> misplaced = new ArrayList<>();
+            shards.get(s).forEachName(name -> {
+                if (persistence.shardOf(name) != s) {
+                    misplaced.add(name);
+                }
+            });
+            for (int from = 0; from < misplaced.size(); from += batchSize) {
+                moved += move(shards.get(s), misplaced.subList(from, Math.min(
+                        from + batchSize, misplaced.size())));
+            }
+            LOGGER.info("Moved {} accounts from shard {}.", misplaced.size(),
+                    s);
+        }
+        return moved;
+    }
+
+    private int move(PersistenceInterface source, List<String> names) {
+        Map<Integer, List<Account>> groups = new HashMap<>();
+        for (String name : names) {
+            Account account = source.findByName(name);
+            if (account != null) {
+                account = new Account(account);
+                account.setId(null);
+                groups.computeIfAbsent(persistence.shardOf(name),
+                        t -> new ArrayList<>()).add(account);
+            }
+        }
+        int moved = 0;
+        for (Map.Entry<Integer, List<Account>> e : groups.entrySet()) {
+            PersistenceInterface target = persistence.getShards().get(
+                    e.getKey());
+            List<String> groupNames = new ArrayList<>();
+            e.getValue().forEach(a -> groupNames.add(a.getUsername()));
+            Set<String> present = target.findExistingNames(groupNames);
+            List<Account> copies = new ArrayList<>();
+            e.getValue().stream().filter(a -> !present.contains(a
+                    .getUsername())).forEach(copies::add);
+            if (!copies.isEmpty()) {
+                target.saveAll(copies);
+            }
+            for (String name : groupNames) {
+                source.deleteByName(name);
+            }
+            moved += groupNames.size();
+        }
+        return moved;
+    }
+
+}
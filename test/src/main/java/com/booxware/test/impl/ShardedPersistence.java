@@ -0,0 +1,342 @@
+/*
+ * Copyright 2017 Andrey Alexeenko <Andrey.Alexeenko at t-systems.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.booxware.test.impl;
+
+import com.booxware.test.Account;
+import com.booxware.test.AccountRecord;
+import com.booxware.test.LastLogin;
+import com.booxware.test.PersistenceInterface;
+import com.booxware.test.util.ConsistentHash;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * {@link PersistenceInterface} over several databases, every Account is
+ * stored by the shard, which is chosen by consistent hash of its name.
+ * Shard is encoded into the lowest {@value #SHARD_BITS} bits of Account ID,
+ * so lookup by ID goes directly to the shard too; IDs of shard databases are
+ * translated on the way in and out, returned entities are copies.
+ * When shards are added, accounts are moved by {@link ShardRebalancer}, and
+ * moved accounts get new IDs.
+ * Every shard is a separate persistence with own data source, entity
+ * manager factory and transaction manager, e.g. {@link PersistenceImpl} of
+ * own application context. Decorator is not a component, it should be
+ * declared as primary persistence bean:
+ * <pre>
+ * &lt;bean id="shardedPersistence" primary="true"
+ *       class="com.booxware.test.impl.ShardedPersistence"&gt;
+ *     &lt;constructor-arg&gt;
+ *         &lt;list&gt;
+ *             &lt;ref bean="shard0Persistence"/&gt;
+ *             &lt;ref bean="shard1Persistence"/&gt;
+ *         &lt;/list&gt;
+ *     &lt;/constructor-arg&gt;
+ * &lt;/bean&gt;
+ * </pre>
+ *
+ * @author Andrey Alexeenko <Andrey.Alexeenko at t-systems.com>
+ */
+public class ShardedPersistence implements PersistenceInterface {
+
+    /**
+     * Amount of ID bits, which keep shard index.
+     */
+    public static final int SHARD_BITS = 10;
+
+    private static final long SHARD_MASK = (1L << SHARD_BITS) - 1;
+
+    private static final String FOREIGN_ID_MSG
+                                        = "Account {0} with ID {1} belongs to "
+                                                  + "shard {2}, but is routed "
+                                                  + "to shard {3}.";
+
+    private final List<PersistenceInterface> shards;
+
+    /**
+     * @param shards
+     *               shard persistences, order defines shard indexes and must
+     *               never change, new shards are appended
+     */
+    public ShardedPersistence(List<PersistenceInterface> shards) {
+        if (shards.isEmpty() || shards.size() > SHARD_MASK + 1) {
+            throw new IllegalArgumentException("Amount of shards must be "
+                                                       + "from 1 to "
+                                                       + (SHARD_MASK + 1)
+                                                       + ".");
+        }
+        this.shards = Collections.unmodifiableList(new ArrayList<>(shards));
+    }
+
+    /**
+     * {@inheritDoc }
+     *
+     * @param account
+     *
+     * @return
+     */
+    @Override
+    public Account save(Account account) {
+        int shard = shardOf(account.getUsername());
+        return toGlobal(shards.get(shard).save(toLocal(account, shard)),
+                shard);
+    }
+
+    /**
+     * {@inheritDoc }
+     * Accounts are stored by one call per shard, shards are not updated
+     * atomically.
+     *
+     * @param accounts
+     *
+     * @return
+     */
+    @Override
+    public List<Account> saveAll(Collection<Account> accounts) {
+        Account[] result = new Account[accounts.size()];
+        Map<Integer, List<Integer>> positions = new HashMap<>();
+        Map<Integer, List<Account>> groups = new HashMap<>();
+        int i = 0;
+        for (Account account : accounts) {
+            int shard = shardOf(account.getUsername());
+            positions.computeIfAbsent(shard, s -> new ArrayList<>()).add(i++);
+            groups.computeIfAbsent(shard, s -> new ArrayList<>()).add(
+                    toLocal(account, shard));
+        }
+        groups.forEach((shard, group) -> {
+            List<Account> saved = shards.get(shard).saveAll(group);
+            List<Integer> at = positions.get(shard);
+            for (int j = 0; j < saved.size(); j++) {
+                result[at.get(j)] = toGlobal(saved.get(j), shard);
+            }
+        });
+        return Arrays.asList(result);
+    }
+
+    /**
+     * {@inheritDoc }
+     *
+     * @param lastLogins
+     */
+    @Override
+    public void updateLastLogins(Map<String, Date> lastLogins) {
+        Map<Integer, Map<String, Date>> groups = new HashMap<>();
+        lastLogins.forEach((name, date) -> groups.computeIfAbsent(
+                shardOf(name), s -> new HashMap<>()).put(name, date));
+        groups.forEach((shard, group) -> shards.get(shard).updateLastLogins(
+                group));
+    }
+
+    /**
+     * {@inheritDoc }
+     *
+     * @param id
+     *
+     * @return
+     */
+    @Override
+    public Account findById(Long id) {
+        int shard = (int) (id & SHARD_MASK);
+        if (shard >= shards.size()) {
+            return null;
+        }
+        return toGlobal(shards.get(shard).findById(id >>> SHARD_BITS), shard);
+    }
+
+    /**
+     * {@inheritDoc }
+     *
+     * @param name
+     *
+     * @return
+     */
+    @Override
+    public Account findByName(String name) {
+        int shard = shardOf(name);
+        return toGlobal(shards.get(shard).findByName(name), shard);
+    }
+
+    /**
+     * {@inheritDoc }
+     *
+     * @param name
+     *
+     * @return
+     */
+    @Override
+    public LastLogin findLastLoginByName(String name) {
+        return shards.get(shardOf(name)).findLastLoginByName(name);
+    }
+
+    /**
+     * {@inheritDoc }
+     *
+     * @param names
+     *
+     * @return
+     */
+    @Override
+    public Set<String> findExistingNames(Collection<String> names) {
+        Map<Integer, List<String>> groups = new HashMap<>();
+        for (String name : names) {
+            groups.computeIfAbsent(shardOf(name), s -> new ArrayList<>())
+                    .add(name);
+        }
+        Set<String> existing = new HashSet<>();
+        groups.forEach((shard, group) -> existing.addAll(shards.get(shard)
+                .findExistingNames(group)));
+        return existing;
+    }
+
+    /**
+     * {@inheritDoc }
+     *
+     * @param names
+     *
+     * @return
+     */
+    @Override
+    public Map<String, Date> findLastLogins(Collection<String> names) {
+        Map<Integer, List<String>> groups = new HashMap<>();
+        for (String name : names) {
+            groups.computeIfAbsent(shardOf(name), s -> new ArrayList<>())
+                    .add(name);
+        }
+        Map<String, Date> lastLogins = new HashMap<>();
+        groups.forEach((shard, group) -> lastLogins.putAll(shards.get(shard)
+                .findLastLogins(group)));
+        return lastLogins;
+    }
+
+    /**
+     * {@inheritDoc }
+     * Shards are iterated one by one.
+     *
+     * @param consumer
+     */
+    @Override
+    public void forEachName(Consumer<String> consumer) {
+        shards.forEach(shard -> shard.forEachName(consumer));
+    }
+
+    /**
+     * {@inheritDoc }
+     * Shards are iterated one by one, so records are ordered by ID only
+     * within shard.
+     *
+     * @param consumer
+     */
+    @Override
+    public void forEachAccount(Consumer<AccountRecord> consumer) {
+        for (int i = 0; i < shards.size(); i++) {
+            int shard = i;
+            shards.get(i).forEachAccount(r -> consumer.accept(
+                    new AccountRecord(encodeId(r.getId(), shard),
+                            r.getUsername(), r.getEmail(), r.getLastLogin())));
+        }
+    }
+
+    /**
+     * {@inheritDoc }
+     *
+     * @param account
+     */
+    @Override
+    public void delete(Account account) {
+        int shard = shardOf(account.getUsername());
+        shards.get(shard).delete(toLocal(account, shard));
+    }
+
+    /**
+     * {@inheritDoc }
+     *
+     * @param name
+     *
+     * @return
+     */
+    @Override
+    public boolean deleteByName(String name) {
+        return shards.get(shardOf(name)).deleteByName(name);
+    }
+
+    /**
+     * Shard of the name.
+     *
+     * @param name
+     *
+     * @return shard index
+     */
+    public int shardOf(String name) {
+        return ConsistentHash.bucket(name, shards.size());
+    }
+
+    public List<PersistenceInterface> getShards() {
+        return shards;
+    }
+
+    /**
+     * Global ID of shard database ID.
+     *
+     * @param localId
+     * @param shard
+     *
+     * @return
+     */
+    public static long encodeId(long localId, int shard) {
+        return localId << SHARD_BITS | shard;
+    }
+
+    /**
+     * Copy of shard entity with global ID.
+     */
+    private static Account toGlobal(Account account, int shard) {
+        if (account == null) {
+            return null;
+        }
+        Account copy = new Account(account);
+        if (account.getId() != null) {
+            copy.setId(encodeId(account.getId(), shard));
+        }
+        return copy;
+    }
+
+    /**
+     * Copy of entity with ID of shard database.
+     */
+    private static Account toLocal(Account account, int shard) {
+        Account copy = new Account(account);
+        Long id = account.getId();
+        if (id != null) {
+            if ((id & SHARD_MASK) != shard) {
+                throw new IllegalArgumentException(MessageFormat.format(
+                        FOREIGN_ID_MSG, account.getUsername(), id,
+                        id & SHARD_MASK, shard));
+            }
+            copy.setId(id >>> SHARD_BITS);
+        }
+        return copy;
+    }
+
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright 2017 Andrey Alexeenko <Andrey.Alexeenko at t-systems.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.booxware.test.impl;
+
+import com.booxware.test.MetricsRegistry;
+import com.booxware.test.Timed;
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+/**
+ * Records latency of annotated methods. Aspect runs right after Spring's
+ * invocation exposing interceptor (it binds annotation argument), so time of
+ * failed calls includes exception wrapping by {@link ExceptionAspects}.
+ *
+ * @author Andrey Alexeenko <Andrey.Alexeenko at t-systems.com>
+ */
+@Aspect
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE + 1)
+public class TimingAspects {
+
+    @Autowired
+    private MetricsRegistry registry;
+    /**
+     * Success and failure metric names by target class and method.
+     */
+    private final Map<Class<?>, Map<Method, String[]>> names
+            = new ConcurrentHashMap<>();
+
+    /**
+     * Measures every call of annotated methods.
+     *
+     * @param joinPoint
+     * @param t
+     *
+     * @return
+     *
+     * @throws Throwable
+     */
+    @Around(value = "@annotation(t)", argNames = "joinPoint, t")
+    public Object time(ProceedingJoinPoint joinPoint, Timed t)
+            throws Throwable {
+        long started = System.nanoTime();
+        boolean success = false;
+        try {
+            Object result = joinPoint.proceed();
+            success = true;
+            return result;
+        } finally {
+            long elapsed = System.nanoTime() - started;
+            String[] n = names(joinPoint, t);
+            registry.record(success ? n[0] : n[1], elapsed);
+        }
+    }
+
+    /**
+     * Metric names of the call, method of JDK proxy belongs to interface, so
+     * target class name is used.
+     */
+    private String[] names(ProceedingJoinPoint joinPoint, Timed t) {
+        Class<?> type = joinPoint.getTarget().getClass();
+        Method method = ((MethodSignature) joinPoint.getSignature())
+                .getMethod();
+        return names.computeIfAbsent(type, c -> new ConcurrentHashMap<>())
+                .computeIfAbsent(method, m -> {
+                    String base = t.value().isEmpty()
+                                          ? type.getSimpleName() + "."
+                                                    + m.getName()
+                                          : t.value();
+                    return new String[]{base + ".success",
+                        base + ".failure"};
+                });
+    }
+
+}
@@ -15,8 +15,21 @@
  */
 package com.booxware.test.repository;
 
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Stream;
+import javax.persistence.QueryHint;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import com.booxware.test.Account;
+import com.booxware.test.AccountRecord;
+import com.booxware.test.LastLogin;
 
 /**
  * Account repository template.
@@ -34,4 +47,142 @@ public interface AccountRepository extends JpaRepository<Account, Long> {
      */
     Account findByUsername(String username);
 
+    /**
+     * Used to find LAST_LOGIN column value by USERNAME column value, entity
+     * is not loaded.
+     *
+     * @param username
+     *
+     * @return
+     */
+    @Query("select new com.booxware.test.LastLogin(a.username, a.lastLogin) "
+                   + "from Account a where a.username = :username")
+    LastLogin findLastLoginByUsername(@Param("username") String username);
+
+    /**
+     * Used to find LAST_LOGIN column values by USERNAME column values within
+     * one query, entities are not loaded.
+     *
+     * @param usernames
+     *
+     * @return
+     */
+    @Query("select new com.booxware.test.LastLogin(a.username, a.lastLogin) "
+                   + "from Account a where a.username in :usernames")
+    List<LastLogin> findLastLoginsByUsernameIn(
+            @Param("usernames") Collection<String> usernames);
+
+    /**
+     * Used to count LAST_LOGIN column values since the date by index range
+     * scan.
+     *
+     * @param since
+     *
+     * @return
+     */
+    @Query("select count(a) from Account a where a.lastLogin >= :since")
+    long countLastLoginSince(@Param("since") Date since);
+
+    /**
+     * Used to read LAST_LOGIN column values within [from, to) range by index
+     * range scan, stream has to be consumed within transaction and closed.
+     *
+     * @param from
+     * @param to
+     *
+     * @return
+     */
+    @Query("select a.lastLogin from Account a where a.lastLogin >= :from "
+                   + "and a.lastLogin < :to")
+    @QueryHints(@QueryHint(name = "org.hibernate.fetchSize", value = "1000"))
+    Stream<Date> streamLastLoginsBetween(@Param("from") Date from,
+            @Param("to") Date to);
+
+    /**
+     * Used to read names and not null LAST_LOGIN column values in ascending
+     * order of dates, stream has to be consumed within transaction and
+     * closed.
+     *
+     * @return
+     */
+    @Query("select new com.booxware.test.LastLogin(a.username, a.lastLogin) "
+                   + "from Account a where a.lastLogin is not null "
+                   + "order by a.lastLogin")
+    @QueryHints(@QueryHint(name = "org.hibernate.fetchSize", value = "1000"))
+    Stream<LastLogin> streamAllLastLogins();
+
+    /**
+     * Used to find names of accounts, which have not logged in since the
+     * date, never logged in accounts come first.
+     *
+     * @param before
+     * @param pageable
+     *
+     * @return
+     */
+    @Query("select new com.booxware.test.LastLogin(a.username, a.lastLogin) "
+                   + "from Account a where a.lastLogin is null "
+                   + "or a.lastLogin < :before "
+                   + "order by a.lastLogin nulls first, a.id")
+    List<LastLogin> findDormant(@Param("before") Date before,
+            Pageable pageable);
+
+    /**
+     * Used to delete Account by USERNAME column value within one statement.
+     *
+     * @param username
+     *
+     * @return amount of deleted rows
+     */
+    @Modifying(clearAutomatically = true)
+    @Query("delete from Account a where a.username = :username")
+    int deleteByUsername(@Param("username") String username);
+
+    /**
+     * Used to find already used USERNAME column values within one query.
+     *
+     * @param usernames
+     *
+     * @return
+     */
+    @Query("select a.username from Account a where a.username in :usernames")
+    Set<String> findUsernamesIn(@Param("usernames") Collection<String> usernames);
+
+    /**
+     * Used to read all USERNAME column values by forward only cursor, stream
+     * has to be consumed within transaction and closed.
+     *
+     * @return
+     */
+    @Query("select a.username from Account a")
+    @QueryHints(@QueryHint(name = "org.hibernate.fetchSize", value = "1000"))
+    Stream<String> streamAllUsernames();
+
+    /**
+     * Used to read all Accounts without credentials by forward only cursor in
+     * ID column order, entities are not loaded, stream has to be consumed
+     * within transaction and closed.
+     *
+     * @return
+     */
+    @Query("select new com.booxware.test.AccountRecord(a.id, a.username, "
+                   + "a.email, a.lastLogin) from Account a order by a.id")
+    @QueryHints(@QueryHint(name = "org.hibernate.fetchSize", value = "1000"))
+    Stream<AccountRecord> streamAllRecords();
+
+    /**
+     * Used to find Account entities, which still have legacy credential, in
+     * ID column order.
+     *
+     * @param after
+     *                 last ID of previous page
+     * @param pageable
+     *
+     * @return
+     */
+    @Query("select a from Account a where a.encryptedPassword is null "
+                   + "and a.id > :after order by a.id")
+    List<Account> findLegacyAfter(@Param("after") Long after,
+            Pageable pageable);
+
 }
@@ -0,0 +1,51 @@
+/*
+ * Copyright 2017 Andrey Alexeenko <Andrey.Alexeenko at t-systems.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.booxware.test.util;
+
+/**
+ * Jump consistent hash of strings (Lamping, Veach). When amount of buckets
+ * grows from n to n + 1, only 1/(n + 1) of keys move, and all of them move
+ * into the new bucket.
+ *
+ * @author Andrey Alexeenko <Andrey.Alexeenko at t-systems.com>
+ */
+public final class ConsistentHash {
+
+    private ConsistentHash() {
+    }
+
+    /**
+     * Bucket of the key.
+     *
+     * @param key
+     * @param buckets
+     *                amount of buckets
+     *
+     * @return bucket index from 0 to buckets - 1
+     */
+    public static int bucket(String key, int buckets) {
+        long h = CountingBloomFilter.hash(key);
+        long b = -1, j = 0;
+        while (j < buckets) {
+            b = j;
+            h = h * 2862933555777941757L + 1;
+            j = (long) ((b + 1) * ((double) (1L << 31)
+                                           / (double) ((h >>> 33) + 1)));
+        }
+        return (int) b;
+    }
+
+}
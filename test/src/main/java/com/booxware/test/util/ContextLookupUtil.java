@@ -15,7 +15,9 @@
  */
 package com.booxware.test.util;
 
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
 import javax.annotation.PostConstruct;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -37,6 +39,11 @@ public class ContextLookupUtil {
     private ApplicationContext applicationContext;
 
     private static ContextLookupUtil INSTANCE;
+    /**
+     * Bean names by type, context scan is done once per type.
+     */
+    private final Map<Class<?>, Optional<String>> beanNames
+            = new ConcurrentHashMap<>();
 
     @PostConstruct
     private void init() {
@@ -49,7 +56,7 @@ public class ContextLookupUtil {
 
     /**
      * Check if bean of required type presents within system. Lookup by name to
-     * avoid context exceptions.
+     * avoid context exceptions. Result is cached per type.
      *
      * @param <T>
      * @param beanType
@@ -57,13 +64,15 @@ public class ContextLookupUtil {
      * @return
      */
     public <T> String lookupBeanName(Class<T> beanType) {
-        String beanName = null;
-        for (String object : applicationContext.
-                getBeanNamesForType(beanType)) {
-            beanName = object;
-            break;
-        }
-        return beanName;
+        return beanNames.computeIfAbsent(beanType, t -> {
+            String beanName = null;
+            for (String object : applicationContext.
+                    getBeanNamesForType(t)) {
+                beanName = object;
+                break;
+            }
+            return Optional.ofNullable(beanName);
+        }).orElse(null);
     }
 
     /**
@@ -0,0 +1,180 @@
+/*
+ * Copyright 2017 Andrey Alexeenko <Andrey.Alexeenko at t-systems.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.booxware.test.util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counting Bloom filter of strings, which supports removal. Every counter
+ * takes 4 bits, sixteen counters are packed into one long and updated by
+ * CAS, so filter is thread safe without locks.
+ * Saturated counters are never decremented, and only previously added
+ * values may be removed, otherwise filter could produce false negatives.
+ *
+ * @author Andrey Alexeenko <Andrey.Alexeenko at t-systems.com>
+ */
+public class CountingBloomFilter {
+
+    private static final int COUNTER_BITS = 4,
+            COUNTERS_PER_WORD = Long.SIZE / COUNTER_BITS;
+
+    private static final long COUNTER_MASK = (1L << COUNTER_BITS) - 1;
+
+    private final AtomicLongArray words;
+
+    private final long counters;
+
+    private final int hashes;
+
+    /**
+     * @param expectedInsertions
+     *                           expected amount of values
+     * @param fpp
+     *                           desired false positive probability
+     */
+    public CountingBloomFilter(long expectedInsertions, double fpp) {
+        long n = Math.max(1, expectedInsertions);
+        double ln2 = Math.log(2);
+        long m = Math.max(COUNTERS_PER_WORD,
+                (long) Math.ceil(-n * Math.log(fpp) / (ln2 * ln2)));
+        int words = (int) Math.min(Integer.MAX_VALUE - 8,
+                (m + COUNTERS_PER_WORD - 1) / COUNTERS_PER_WORD);
+        this.words = new AtomicLongArray(words);
+        this.counters = (long) words * COUNTERS_PER_WORD;
+        this.hashes = Math.max(1, (int) Math.round((double) m / n * ln2));
+    }
+
+    /**
+     * Adds value to the filter.
+     *
+     * @param value
+     */
+    public void add(String value) {
+        long h1 = hash(value), h2 = rehash(h1);
+        for (int i = 0; i < hashes; i++) {
+            update(index(h1, h2, i), 1);
+        }
+    }
+
+    /**
+     * Removes previously added value from the filter.
+     *
+     * @param value
+     */
+    public void remove(String value) {
+        long h1 = hash(value), h2 = rehash(h1);
+        for (int i = 0; i < hashes; i++) {
+            update(index(h1, h2, i), -1);
+        }
+    }
+
+    /**
+     * Checks the value.
+     *
+     * @param value
+     *
+     * @return false, if value has definitely not been added
+     */
+    public boolean mightContain(String value) {
+        long h1 = hash(value), h2 = rehash(h1);
+        for (int i = 0; i < hashes; i++) {
+            if (counter(index(h1, h2, i)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Resets all counters.
+     */
+    public void clear() {
+        for (int i = 0; i < words.length(); i++) {
+            words.set(i, 0L);
+        }
+    }
+
+    public long getCounters() {
+        return counters;
+    }
+
+    public int getHashes() {
+        return hashes;
+    }
+
+    /**
+     * @return size of counters array in bytes
+     */
+    public long getMemoryBytes() {
+        return (long) words.length() * Long.BYTES;
+    }
+
+    private long index(long h1, long h2, int i) {
+        return Long.remainderUnsigned(h1 + i * h2, counters);
+    }
+
+    private long counter(long index) {
+        int shift = (int) (index % COUNTERS_PER_WORD) * COUNTER_BITS;
+        return (words.get((int) (index / COUNTERS_PER_WORD)) >>> shift)
+                       & COUNTER_MASK;
+    }
+
+    private void update(long index, int delta) {
+        int word = (int) (index / COUNTERS_PER_WORD);
+        int shift = (int) (index % COUNTERS_PER_WORD) * COUNTER_BITS;
+        long prev, next;
+        do {
+            prev = words.get(word);
+            long c = (prev >>> shift) & COUNTER_MASK;
+            if (c == COUNTER_MASK || (delta < 0 && c == 0)) {
+                return;
+            }
+            next = (prev & ~(COUNTER_MASK << shift))
+                           | ((c + delta) << shift);
+        } while (!words.compareAndSet(word, prev, next));
+    }
+
+    /**
+     * 64 bit FNV-1a of UTF-8 bytes, finalized by MurmurHash3 mixer.
+     *
+     * @param value
+     *
+     * @return
+     */
+    static long hash(String value) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            h ^= b & 0xff;
+            h *= 0x100000001b3L;
+        }
+        return mix(h);
+    }
+
+    private static long rehash(long h) {
+        return mix(h ^ 0x9e3779b97f4a7c15L) | 1L;
+    }
+
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb93fe1a85a53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+}
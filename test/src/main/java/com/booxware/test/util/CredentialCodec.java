@@ -0,0 +1,253 @@
+/*
+ * Copyright 2017 Andrey Alexeenko <Andrey.Alexeenko at t-systems.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.booxware.test.util;
+
+import java.util.Arrays;
+
+/**
+ * Converts BCrypt hash strings into compact fixed width binary credentials
+ * and back. BCrypt string "$2a$10$" + 22 chars of salt + 31 chars of hash
+ * takes 60 bytes, while the same data is stored within {@value #LENGTH}
+ * bytes: revision, cost, 16 bytes of salt and 23 bytes of hash.
+ *
+ * @author Andrey Alexeenko <Andrey.Alexeenko at t-systems.com>
+ */
+public final class CredentialCodec {
+
+    /**
+     * Length of binary credential.
+     */
+    public static final int LENGTH = 41;
+
+    private static final int SALT_LENGTH = 16, HASH_LENGTH = 23,
+            SALT_CHARS = 22, HASH_CHARS = 31, PREFIX_CHARS = 7;
+
+    private static final char[] ALPHABET
+                                        = ("./ABCDEFGHIJKLMNOPQRSTUVWXYZ"
+                                                   + "abcdefghijklmnopqrstuvwxyz"
+                                                   + "0123456789").toCharArray();
+
+    private static final byte[] INDEX = new byte[128];
+
+    static {
+        Arrays.fill(INDEX, (byte) -1);
+        for (int i = 0; i < ALPHABET.length; i++) {
+            INDEX[ALPHABET[i]] = (byte) i;
+        }
+    }
+
+    private CredentialCodec() {
+    }
+
+    /**
+     * Makes binary credential of BCrypt hash string.
+     *
+     * @param hash
+     *
+     * @return
+     *
+     * @throws IllegalArgumentException
+     *                                  if hash is not BCrypt hash
+     */
+    public static byte[] encode(String hash) {
+        if (hash == null || hash.length() != PREFIX_CHARS + SALT_CHARS
+                                                     + HASH_CHARS
+                    || hash.charAt(0) != '$' || hash.charAt(1) != '2'
+                    || hash.charAt(3) != '$' || hash.charAt(6) != '$') {
+            throw new IllegalArgumentException("Not a BCrypt hash.");
+        }
+        byte[] credential = new byte[LENGTH];
+        credential[0] = (byte) hash.charAt(2);
+        credential[1] = (byte) Integer.parseInt(hash.substring(4, 6));
+        decodeBase64(hash, PREFIX_CHARS, credential, 2, SALT_LENGTH);
+        decodeBase64(hash, PREFIX_CHARS + SALT_CHARS, credential,
+                2 + SALT_LENGTH, HASH_LENGTH);
+        return credential;
+    }
+
+    /**
+     * Checks if BCrypt hash string represents the same credential. Check
+     * takes the same time for every mismatch position and doesn't allocate
+     * memory.
+     *
+     * @param credential
+     * @param hash
+     *
+     * @return
+     */
+    public static boolean matches(byte[] credential, String hash) {
+        if (credential == null || credential.length != LENGTH || hash == null
+                    || hash.length() != PREFIX_CHARS + SALT_CHARS + HASH_CHARS) {
+            return false;
+        }
+        int cost = credential[1];
+        int diff = (hash.charAt(2) ^ credential[0])
+                           | (hash.charAt(4) - '0' ^ cost / 10)
+                           | (hash.charAt(5) - '0' ^ cost % 10);
+        diff |= diffBase64(hash, PREFIX_CHARS, credential, 2, SALT_LENGTH);
+        diff |= diffBase64(hash, PREFIX_CHARS + SALT_CHARS, credential,
+                2 + SALT_LENGTH, HASH_LENGTH);
+        return diff == 0;
+    }
+
+    /**
+     * Makes BCrypt hash string of binary credential.
+     *
+     * @param credential
+     *
+     * @return
+     */
+    public static String decode(byte[] credential) {
+        StringBuilder sb = prefix(credential);
+        encodeBase64(credential, 2, SALT_LENGTH, sb);
+        encodeBase64(credential, 2 + SALT_LENGTH, HASH_LENGTH, sb);
+        return sb.toString();
+    }
+
+    /**
+     * Makes BCrypt salt string, which is required to check a password.
+     *
+     * @param credential
+     *
+     * @return
+     */
+    public static String salt(byte[] credential) {
+        StringBuilder sb = prefix(credential);
+        encodeBase64(credential, 2, SALT_LENGTH, sb);
+        return sb.toString();
+    }
+
+    /**
+     * BCrypt cost (log rounds) of binary credential.
+     *
+     * @param credential
+     *
+     * @return
+     */
+    public static int cost(byte[] credential) {
+        return credential[1];
+    }
+
+    private static StringBuilder prefix(byte[] credential) {
+        if (credential == null || credential.length != LENGTH) {
+            throw new IllegalArgumentException("Not a binary credential.");
+        }
+        int cost = credential[1];
+        return new StringBuilder(PREFIX_CHARS + SALT_CHARS + HASH_CHARS)
+                .append("$2").append((char) credential[0]).append('$')
+                .append((char) ('0' + cost / 10))
+                .append((char) ('0' + cost % 10)).append('$');
+    }
+
+    /**
+     * BCrypt flavour of base64, without padding.
+     */
+    private static void encodeBase64(byte[] src, int off, int len,
+            StringBuilder sb) {
+        int end = off + len;
+        for (int i = off; i < end;) {
+            int c1 = src[i++] & 0xff;
+            sb.append(ALPHABET[c1 >> 2]);
+            c1 = (c1 & 0x03) << 4;
+            if (i >= end) {
+                sb.append(ALPHABET[c1]);
+                break;
+            }
+            int c2 = src[i++] & 0xff;
+            c1 |= c2 >> 4;
+            sb.append(ALPHABET[c1]);
+            c1 = (c2 & 0x0f) << 2;
+            if (i >= end) {
+                sb.append(ALPHABET[c1]);
+                break;
+            }
+            c2 = src[i++] & 0xff;
+            c1 |= c2 >> 6;
+            sb.append(ALPHABET[c1]);
+            sb.append(ALPHABET[c2 & 0x3f]);
+        }
+    }
+
+    private static void decodeBase64(String src, int from, byte[] dst,
+            int off, int len) {
+        int pos = from, n = 0;
+        while (n < len) {
+            int c1 = index(src, pos++), c2 = index(src, pos++);
+            dst[off + n++] = (byte) ((c1 << 2) | ((c2 & 0x30) >> 4));
+            if (n >= len) {
+                break;
+            }
+            int c3 = index(src, pos++);
+            dst[off + n++] = (byte) (((c2 & 0x0f) << 4) | ((c3 & 0x3c) >> 2));
+            if (n >= len) {
+                break;
+            }
+            int c4 = index(src, pos++);
+            dst[off + n++] = (byte) (((c3 & 0x03) << 6) | c4);
+        }
+    }
+
+    /**
+     * Decodes base64 the same way as {@link #decodeBase64}, but compares
+     * decoded bytes with expected ones instead of storing them.
+     *
+     * @return 0, if all bytes are equal
+     */
+    private static int diffBase64(String src, int from, byte[] expected,
+            int off, int len) {
+        int pos = from, n = 0, diff = 0;
+        while (n < len) {
+            int c1 = lenientIndex(src, pos++), c2 = lenientIndex(src, pos++);
+            diff |= (c1 | c2) & 0x100;
+            diff |= expected[off + n++] ^ (byte) ((c1 << 2)
+                                                          | ((c2 & 0x30) >> 4));
+            if (n >= len) {
+                break;
+            }
+            int c3 = lenientIndex(src, pos++);
+            diff |= c3 & 0x100;
+            diff |= expected[off + n++] ^ (byte) (((c2 & 0x0f) << 4)
+                                                          | ((c3 & 0x3c) >> 2));
+            if (n >= len) {
+                break;
+            }
+            int c4 = lenientIndex(src, pos++);
+            diff |= c4 & 0x100;
+            diff |= expected[off + n++] ^ (byte) (((c3 & 0x03) << 6) | c4);
+        }
+        return diff;
+    }
+
+    /**
+     * Alphabet index of the char, or 0x100 for unknown char, which marks
+     * the difference.
+     */
+    private static int lenientIndex(String src, int pos) {
+        char c = src.charAt(pos);
+        int i = c < INDEX.length ? INDEX[c] : -1;
+        return i < 0 ? 0x100 : i;
+    }
+
+    private static int index(String src, int pos) {
+        char c = src.charAt(pos);
+        int i = c < INDEX.length ? INDEX[c] : -1;
+        if (i < 0) {
+            throw new IllegalArgumentException("Not a BCrypt hash.");
+        }
+        return i;
+    }
+
+}
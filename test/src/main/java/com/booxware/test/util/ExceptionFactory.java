@@ -16,8 +16,14 @@
 package com.booxware.test.util;
 
 import com.booxware.test.AccountServiceException;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiFunction;
 import javax.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Scope;
@@ -31,6 +37,17 @@ import org.springframework.context.annotation.Scope;
 public class ExceptionFactory {
 
     private static ExceptionFactory INSTANCE;
+    /**
+     * Lookup of own context, static instance belongs to the last started
+     * one.
+     */
+    @Autowired
+    private ContextLookupUtil contextLookup;
+    /**
+     * Exception creators by type, resolved once per type.
+     */
+    private final Map<Class<?>, Optional<BiFunction<String, Boolean, Throwable>>> creators
+            = new ConcurrentHashMap<>();
 
     @PostConstruct
     private void init() {
@@ -52,9 +69,68 @@ public class ExceptionFactory {
      * @return
      */
     public <T extends Throwable> T build(Class<T> type, String message) {
-        T ex = ContextLookupUtil.get()
-                .getBeanOfTypeAndArgs(type, message);
-        return Optional.ofNullable(ex).orElse(null);
+        return build(type, message, false);
+    }
+
+    /**
+     * Same as {@link #build(Class, String)}, but could make an exception
+     * without stack trace. Exception bean defines, that type is supported,
+     * while instances are created by cached constructor, if type has
+     * (String) or (String, boolean) one, and by Spring context otherwise.
+     *
+     * @param <T>
+     * @param type
+     * @param message
+     * @param stackless
+     *                  make an exception without stack trace, if type
+     *                  supports it
+     *
+     * @return
+     */
+    public <T extends Throwable> T build(Class<T> type, String message,
+            boolean stackless) {
+        return creators.computeIfAbsent(type, this::resolve)
+                .map(c -> type.cast(c.apply(message, stackless)))
+                .orElse(null);
+    }
+
+    private Optional<BiFunction<String, Boolean, Throwable>> resolve(
+            Class<?> type) {
+        if (contextLookup.lookupBeanName(type) == null) {
+            return Optional.empty();
+        }
+        Constructor<?> plain = constructor(type, String.class),
+                stackless = constructor(type, String.class, boolean.class);
+        if (plain == null && stackless == null) {
+            return Optional.of((m, s) -> (Throwable) contextLookup
+                    .getBeanOfTypeAndArgs(type, m));
+        }
+        return Optional.of((m, s) -> {
+            if (stackless != null && (s || plain == null)) {
+                return instantiate(stackless, m, !s);
+            }
+            return instantiate(plain, m);
+        });
+    }
+
+    private static Constructor<?> constructor(Class<?> type,
+            Class<?>... parameterTypes) {
+        try {
+            return type.getConstructor(parameterTypes);
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    private static Throwable instantiate(Constructor<?> constructor,
+            Object... args) {
+        try {
+            return (Throwable) constructor.newInstance(args);
+        } catch (InvocationTargetException e) {
+            throw new IllegalStateException(e.getCause());
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
     }
 
     @Bean
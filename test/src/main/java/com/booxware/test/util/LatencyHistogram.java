@@ -0,0 +1,174 @@
+/*
+ * Copyright 2017 Andrey Alexeenko <Andrey.Alexeenko at t-systems.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.booxware.test.util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock free latency histogram with log-linear buckets, in the style of
+ * HdrHistogram: every power of two range is split into 16 buckets, so
+ * recorded values are kept with about 6% precision. Recording takes a few
+ * atomic increments and never allocates.
+ *
+ * @author Andrey Alexeenko <Andrey.Alexeenko at t-systems.com>
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BITS = 4, SUB_BUCKETS = 1 << SUB_BITS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(
+            Long.SIZE * SUB_BUCKETS);
+
+    private final LongAdder count = new LongAdder(), sum = new LongAdder();
+
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    /**
+     * Records a value, negative values are recorded as 0.
+     *
+     * @param value
+     */
+    public void record(long value) {
+        long v = Math.max(0, value);
+        counts.incrementAndGet(index(v));
+        count.increment();
+        sum.add(v);
+        max.accumulate(v);
+    }
+
+    /**
+     * Current state of histogram.
+     *
+     * @return
+     */
+    public Snapshot snapshot() {
+        long[] buckets = new long[counts.length()];
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = counts.get(i);
+        }
+        return new Snapshot(buckets, count.sum(), sum.sum(), max.get());
+    }
+
+    /**
+     * Current state of histogram, histogram is cleared. Values recorded
+     * concurrently are counted either by this snapshot or by next one.
+     *
+     * @return
+     */
+    public Snapshot snapshotAndReset() {
+        long[] buckets = new long[counts.length()];
+        long total = 0;
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = counts.getAndSet(i, 0);
+            total += buckets[i];
+        }
+        count.reset();
+        return new Snapshot(buckets, total, sum.sumThenReset(),
+                max.getThenReset());
+    }
+
+    static int index(long v) {
+        if (v < SUB_BUCKETS) {
+            return (int) v;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(v) - SUB_BITS;
+        return (shift + 1) * SUB_BUCKETS
+                       + (int) ((v >>> shift) & (SUB_BUCKETS - 1));
+    }
+
+    /**
+     * Highest value, which is counted by the bucket.
+     */
+    static long upperBound(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int shift = index / SUB_BUCKETS - 1;
+        long sub = SUB_BUCKETS + index % SUB_BUCKETS;
+        return ((sub + 1) << shift) - 1;
+    }
+
+    /**
+     * Immutable state of histogram.
+     */
+    public static class Snapshot {
+
+        private final long[] buckets;
+
+        private final long count, sum, max;
+
+        Snapshot(long[] buckets, long count, long sum, long max) {
+            this.buckets = buckets;
+            this.count = count;
+            this.sum = sum;
+            this.max = max;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getMax() {
+            return max;
+        }
+
+        public double getMean() {
+            return count == 0 ? 0 : (double) sum / count;
+        }
+
+        /**
+         * Value, which is not exceeded by requested share of recorded
+         * values.
+         *
+         * @param percentile
+         *                   percentile within [0, 100] range
+         *
+         * @return
+         */
+        public long getValueAtPercentile(double percentile) {
+            long total = 0;
+            for (long b : buckets) {
+                total += b;
+            }
+            if (total == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(percentile / 100
+                                                             * total));
+            long seen = 0;
+            for (int i = 0; i < buckets.length; i++) {
+                seen += buckets[i];
+                if (seen >= rank) {
+                    return Math.min(upperBound(i), max);
+                }
+            }
+            return max;
+        }
+
+        @Override
+        public String toString() {
+            return "Snapshot{count=" + count + ", mean=" + (long) getMean()
+                           + ", p50=" + getValueAtPercentile(50)
+                           + ", p99=" + getValueAtPercentile(99)
+                           + ", p999=" + getValueAtPercentile(99.9)
+                           + ", max=" + max + '}';
+        }
+
+    }
+
+}
@@ -0,0 +1,268 @@
+/*
+ * Copyright 2017 Andrey Alexeenko <Andrey.Alexeenko at t-systems.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.booxware.test.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Append-only log of checksummed records in a single file. Every record is
+ * framed by payload length and CRC32 of payload, so torn or corrupted tail,
+ * left by crash, is detected by {@link #replay} and cut off.
+ * Log is compacted by {@link #rewrite}: live records are written into
+ * sibling file, which atomically replaces the log, so crash during
+ * compaction leaves either old or new log.
+ * Append, which fails, is cut off at once, so later appends don't land
+ * behind a torn record; if it can't be cut off, the log refuses further
+ * appends.
+ * Class is not thread safe, appends should be serialized by caller.
+ *
+ * @author Andrey Alexeenko <Andrey.Alexeenko at t-systems.com>
+ */
+public class RecordLog implements Closeable {
+
+    private static final org.slf4j.Logger LOGGER = LoggerFactory.getLogger(
+            RecordLog.class);
+
+    private static final int HEADER = 8, MAX_RECORD = 1 << 20;
+
+    private static final StandardOpenOption[] OPTIONS = {
+        StandardOpenOption.CREATE, StandardOpenOption.READ,
+        StandardOpenOption.WRITE};
+
+    private final Path file, compacted;
+
+    private final boolean sync;
+
+    private FileChannel channel;
+
+    private long size;
+    /**
+     * Failure of append, which could not be cut off.
+     */
+    private IOException failure;
+
+    /**
+     * Opens or creates log, {@link #replay} should be called before the
+     * first append.
+     *
+     * @param file
+     * @param sync
+     *             forces every append to the storage device, otherwise
+     *             records survive crash of the process, but not of the OS
+     *
+     * @throws IOException
+     */
+    public RecordLog(Path file, boolean sync) throws IOException {
+        this.file = file;
+        this.sync = sync;
+        this.compacted = file.resolveSibling(file.getFileName() + ".compact");
+        // unfinished compaction, the log itself is still complete
+        Files.deleteIfExists(compacted);
+        channel = FileChannel.open(file, OPTIONS);
+    }
+
+    /**
+     * Passes payloads of all valid records to consumer in order of appends.
+     * Log is truncated after the last valid record.
+     *
+     * @param consumer
+     *
+     * @return amount of records
+     *
+     * @throws IOException
+     */
+    public long replay(Consumer<byte[]> consumer) throws IOException {
+        long length = channel.size(), position = 0, records = 0;
+        ByteBuffer header = ByteBuffer.allocate(HEADER);
+        CRC32 crc = new CRC32();
+        while (position + HEADER <= length) {
+            header.clear();
+            readFully(header, position);
+            int size = header.getInt(0);
+            if (size < 0 || size > MAX_RECORD
+                        || position + HEADER + size > length) {
+                break;
+            }
+            ByteBuffer payload = ByteBuffer.allocate(size);
+            readFully(payload, position + HEADER);
+            crc.reset();
+            crc.update(payload.array(), 0, size);
+            if ((int) crc.getValue() != header.getInt(4)) {
+                break;
+            }
+            consumer.accept(payload.array());
+            position += HEADER + size;
+            records++;
+        }
+        if (position < length) {
+            LOGGER.warn("Cut {} bytes of broken tail of log {}.",
+                    length - position, file);
+            channel.truncate(position);
+            channel.force(true);
+        }
+        channel.position(position);
+        size = position;
+        return records;
+    }
+
+    /**
+     * Appends records by one write. Log is left as it was, when append
+     * fails.
+     *
+     * @param payloads
+     *
+     * @throws IOException
+     */
+    public void append(byte[]... payloads) throws IOException {
+        if (failure != null) {
+            throw new IOException("Log " + file + " is broken.", failure);
+        }
+        int length = 0;
+        for (byte[] payload : payloads) {
+            length += HEADER + payload.length;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        for (byte[] payload : payloads) {
+            frame(buffer, payload);
+        }
+        buffer.flip();
+        try {
+            write(channel, buffer);
+            if (sync) {
+                channel.force(false);
+            }
+        } catch (IOException e) {
+            cut(e);
+            throw e;
+        }
+        size += length;
+    }
+
+    /**
+     * Writes the whole buffer at the current position of the channel.
+     *
+     * @param channel
+     * @param buffer
+     *
+     * @throws IOException
+     */
+    protected void write(FileChannel channel, ByteBuffer buffer)
+            throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * Cuts off partially written records of failed append.
+     */
+    private void cut(IOException cause) {
+        try {
+            channel.truncate(size);
+            channel.position(size);
+        } catch (IOException e) {
+            cause.addSuppressed(e);
+            failure = cause;
+            LOGGER.error("Failed append could not be cut off, log {} is "
+                                 + "broken.", file, e);
+        }
+    }
+
+    /**
+     * Replaces content of the log with the records.
+     *
+     * @param payloads
+     *
+     * @throws IOException
+     */
+    public void rewrite(Iterator<byte[]> payloads) throws IOException {
+        long length = 0;
+        try (FileChannel out = FileChannel.open(compacted,
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+            while (payloads.hasNext()) {
+                byte[] payload = payloads.next();
+                if (buffer.remaining() < HEADER + payload.length) {
+                    buffer.flip();
+                    length += drain(out, buffer);
+                    if (buffer.capacity() < HEADER + payload.length) {
+                        buffer = ByteBuffer.allocate(HEADER + payload.length);
+                    }
+                }
+                frame(buffer, payload);
+            }
+            buffer.flip();
+            length += drain(out, buffer);
+            out.force(true);
+        }
+        channel.close();
+        Files.move(compacted, file, StandardCopyOption.ATOMIC_MOVE,
+                StandardCopyOption.REPLACE_EXISTING);
+        channel = FileChannel.open(file, OPTIONS);
+        channel.position(length);
+        size = length;
+    }
+
+    /**
+     * @return length of the log in bytes
+     */
+    public long size() {
+        return size;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private void readFully(ByteBuffer buffer, long position)
+            throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of log " + file);
+            }
+        }
+    }
+
+    private static void frame(ByteBuffer buffer, byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(payload, 0, payload.length);
+        buffer.putInt(payload.length).putInt((int) crc.getValue())
+                .put(payload);
+    }
+
+    private static long drain(FileChannel out, ByteBuffer buffer)
+            throws IOException {
+        long written = buffer.remaining();
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+        buffer.clear();
+        return written;
+    }
+
+}
@@ -0,0 +1,186 @@
+/*
+ * Copyright 2017 Andrey Alexeenko <Andrey.Alexeenko at t-systems.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.booxware.test.util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Exact per key event counter over a sliding time window, with memory
+ * bounded by capacity. Window is split into slices, every tracked key has
+ * own row of slices, so events of one key never affect counts of others.
+ * Keys are kept in segments with own locks, every segment is LRU ordered
+ * map, so when capacity is exceeded, the key with the oldest activity of
+ * the segment is forgotten. Flood of distinct keys may therefore only lose
+ * counts of keys, which have not been active recently.
+ *
+ * @author Andrey Alexeenko <Andrey.Alexeenko at t-systems.com>
+ */
+public class SlidingWindowCounter {
+
+    private static final int SEGMENTS = 16;
+
+    private final Segment[] segments = new Segment[SEGMENTS];
+
+    private final int capacity, slices;
+
+    private final long sliceMillis;
+
+    /**
+     * @param capacity
+     *                     maximum amount of tracked keys
+     * @param windowMillis
+     *                     window length
+     * @param slices
+     *                     amount of slices per window, more slices make window
+     *                     sliding more smoothly
+     */
+    public SlidingWindowCounter(int capacity, long windowMillis, int slices) {
+        this.capacity = Math.max(SEGMENTS, capacity);
+        this.slices = Math.max(1, slices);
+        this.sliceMillis = Math.max(1, windowMillis / this.slices);
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment(this.capacity / SEGMENTS);
+        }
+    }
+
+    /**
+     * Registers one event of the key.
+     *
+     * @param key
+     *
+     * @return amount of events within window, including this one
+     */
+    public long increment(String key) {
+        long epoch = epoch();
+        Segment segment = segmentFor(key);
+        synchronized (segment) {
+            long[] row = segment.computeIfAbsent(key, k -> new long[slices
+                                                                             * 2]);
+            int s = (int) (epoch % slices) * 2;
+            if (row[s] != epoch) {
+                row[s] = epoch;
+                row[s + 1] = 0;
+            }
+            row[s + 1]++;
+            return sum(row, epoch);
+        }
+    }
+
+    /**
+     * Amount of events of the key.
+     *
+     * @param key
+     *
+     * @return amount of events within window
+     */
+    public long estimate(String key) {
+        long epoch = epoch();
+        Segment segment = segmentFor(key);
+        synchronized (segment) {
+            long[] row = segment.get(key);
+            return row == null ? 0 : sum(row, epoch);
+        }
+    }
+
+    /**
+     * Forgets events of the key.
+     *
+     * @param key
+     */
+    public void reset(String key) {
+        Segment segment = segmentFor(key);
+        synchronized (segment) {
+            segment.remove(key);
+        }
+    }
+
+    /**
+     * @return amount of tracked keys
+     */
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public long getWindowMillis() {
+        return sliceMillis * slices;
+    }
+
+    /**
+     * Current time of the window clock.
+     *
+     * @return
+     */
+    protected long currentTimeMillis() {
+        return System.currentTimeMillis();
+    }
+
+    private long epoch() {
+        return currentTimeMillis() / sliceMillis;
+    }
+
+    private Segment segmentFor(String key) {
+        int h = key.hashCode();
+        h ^= h >>> 16;
+        return segments[h & (SEGMENTS - 1)];
+    }
+
+    /**
+     * Sums counts of slices, which belong to the current window. Row holds
+     * epoch and count of every slice.
+     */
+    private long sum(long[] row, long epoch) {
+        long sum = 0;
+        for (int s = 0; s < row.length; s += 2) {
+            if (epoch - row[s] < slices) {
+                sum += row[s + 1];
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * LRU ordered part of tracked keys.
+     */
+    private static class Segment extends LinkedHashMap<String, long[]> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int capacity;
+
+        Segment(int capacity) {
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, long[]> eldest) {
+            return size() > capacity;
+        }
+
+    }
+
+}
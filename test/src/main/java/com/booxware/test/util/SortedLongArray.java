@@ -0,0 +1,156 @@
+/*
+ * Copyright 2017 Andrey Alexeenko <Andrey.Alexeenko at t-systems.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.booxware.test.util;
+
+import java.util.Arrays;
+
+/**
+ * Sorted multiset of longs in primitive arrays. Values, which are not less
+ * than the last one, are appended, others are inserted in place; removed
+ * values are collected into small sorted array and merged out, when it
+ * grows. Range counts are answered by binary searches, so they don't
+ * depend on amount of values.
+ * Class is not thread safe.
+ *
+ * @author Andrey Alexeenko <Andrey.Alexeenko at t-systems.com>
+ */
+public class SortedLongArray {
+
+    private static final int MIN_COMPACTION = 1024;
+
+    private long[] values = new long[16], removed = new long[16];
+
+    private int size, removedSize;
+
+    /**
+     * Adds value.
+     *
+     * @param value
+     */
+    public void add(long value) {
+        if (size == values.length) {
+            values = Arrays.copyOf(values, size * 2);
+        }
+        int at = size == 0 || values[size - 1] <= value ? size
+                         : upperBound(values, size, value);
+        System.arraycopy(values, at, values, at + 1, size - at);
+        values[at] = value;
+        size++;
+    }
+
+    /**
+     * Removes one occurrence of previously added value.
+     *
+     * @param value
+     */
+    public void remove(long value) {
+        if (removedSize == removed.length) {
+            removed = Arrays.copyOf(removed, removedSize * 2);
+        }
+        int at = upperBound(removed, removedSize, value);
+        System.arraycopy(removed, at, removed, at + 1, removedSize - at);
+        removed[at] = value;
+        removedSize++;
+        if (removedSize > Math.max(MIN_COMPACTION, size >>> 6)) {
+            compact();
+        }
+    }
+
+    /**
+     * @return amount of values
+     */
+    public int size() {
+        return size - removedSize;
+    }
+
+    /**
+     * Amount of values within [from, to) range.
+     *
+     * @param from
+     * @param to
+     *
+     * @return
+     */
+    public int count(long from, long to) {
+        if (from >= to) {
+            return 0;
+        }
+        return lowerBound(values, size, to) - lowerBound(values, size, from)
+                       - lowerBound(removed, removedSize, to)
+                       + lowerBound(removed, removedSize, from);
+    }
+
+    /**
+     * Amount of values, which are not less than the bound.
+     *
+     * @param from
+     *
+     * @return
+     */
+    public int countAtLeast(long from) {
+        return size - lowerBound(values, size, from) - removedSize
+                       + lowerBound(removed, removedSize, from);
+    }
+
+    /**
+     * Merges removed values out of values.
+     */
+    private void compact() {
+        int w = 0, r = 0;
+        for (int i = 0; i < size; i++) {
+            if (r < removedSize && removed[r] == values[i]) {
+                r++;
+            } else {
+                values[w++] = values[i];
+            }
+        }
+        size = w;
+        removedSize = 0;
+    }
+
+    /**
+     * Index of the first element, which is not less than value.
+     */
+    private static int lowerBound(long[] a, int length, long value) {
+        int lo = 0, hi = length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (a[mid] < value) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * Index of the first element, which is greater than value.
+     */
+    private static int upperBound(long[] a, int length, long value) {
+        int lo = 0, hi = length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (a[mid] <= value) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+}
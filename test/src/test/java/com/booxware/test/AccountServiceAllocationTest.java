@@ -0,0 +1,210 @@
+/*
+ * Copyright 2017 Andrey Alexeenko <Andrey.Alexeenko at t-systems.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.booxware.test;
+
+import com.github.springtestdbunit.DbUnitTestExecutionListener;
+import com.github.springtestdbunit.annotation.DatabaseSetup;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.function.Supplier;
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.TestExecutionListeners;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.test.context.support.DependencyInjectionTestExecutionListener;
+import org.springframework.test.context.transaction.TransactionalTestExecutionListener;
+import org.springframework.test.util.AopTestUtils;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Guards against allocation regressions of hot service methods. Allocated
+ * bytes of the calling thread and of password hashing threads are measured
+ * by HotSpot thread allocation counters. Service code is measured over
+ * in-memory persistence, whole calls are measured over JPA with SQL and
+ * debug logging turned off.
+ *
+ * @author Andrey Alexeenko <Andrey.Alexeenko at t-systems.com>
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(locations = {"classpath:applicationContext.xml"})
+@TestPropertySource(properties = {
+    "hibernate.show_sql=false",
+    "booxware.jdbc.url=jdbc:hsqldb:mem:allocation"})
+@TestExecutionListeners({
+    TransactionalTestExecutionListener.class,
+    DependencyInjectionTestExecutionListener.class,
+    DbUnitTestExecutionListener.class
+})
+@Transactional
+@DatabaseSetup("classpath:data/DataSet.xml")
+public class AccountServiceAllocationTest {
+
+    private static final int WARMUP = 20, ITERATIONS = 20, ROUNDS = 3;
+
+    /**
+     * Budgets in bytes per call of service code over in-memory persistence,
+     * including BCrypt on hashing engine threads. Measured figures are
+     * about 56900 bytes per login, of which BCrypt takes about 54400, and
+     * 1630 bytes per hasLoggedInSince. Budgets leave about 1 KiB and 120
+     * bytes on top of them, so a message formatted per call exceeds them.
+     */
+    private static final long SERVICE_LOGIN_BUDGET = 58_000,
+            SERVICE_LOGGED_IN_SINCE_BUDGET = 1_750;
+    /**
+     * Budgets in bytes per call over JPA, most of it is allocated by
+     * Hibernate query processing. Measured figures are about 113200 bytes
+     * per login and 25750 bytes per hasLoggedInSince, budgets leave about
+     * 6% on top of them.
+     */
+    private static final long LOGIN_BUDGET = 120_000,
+            LOGGED_IN_SINCE_BUDGET = 27_500;
+
+    @Autowired
+    AccountServiceInterface accountService;
+
+    @Autowired
+    PersistenceInterface persistence;
+
+    com.sun.management.ThreadMXBean threads;
+
+    ch.qos.logback.classic.Logger logger;
+
+    ch.qos.logback.classic.Level level;
+
+    @Before
+    public void setUp() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory
+                .getThreadMXBean();
+        assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        threads = (com.sun.management.ThreadMXBean) bean;
+        assumeTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+        // debug logging of test configuration allocates per call
+        logger = (ch.qos.logback.classic.Logger) LoggerFactory.getLogger(
+                "com.booxware.test");
+        level = logger.getLevel();
+        logger.setLevel(ch.qos.logback.classic.Level.INFO);
+    }
+
+    @After
+    public void tearDown() {
+        logger.setLevel(level);
+    }
+
+    @Test
+    public void loginAllocationBudget() {
+        long allocated = measure(() -> accountService
+                .login("test_1", "test123"));
+        assertTrue("login allocates " + allocated + " bytes per call",
+                allocated <= LOGIN_BUDGET);
+    }
+
+    @Test
+    public void hasLoggedInSinceAllocationBudget() {
+        Date date = new Date();
+        long allocated = measure(() -> accountService
+                .hasLoggedInSince("test_2", date));
+        assertTrue("hasLoggedInSince allocates " + allocated
+                           + " bytes per call",
+                allocated <= LOGGED_IN_SINCE_BUDGET);
+    }
+
+    @Test
+    public void serviceLoginAllocationBudget() {
+        long allocated = measureService("test_1", () -> accountService
+                .login("test_1", "test123"));
+        assertTrue("login allocates " + allocated
+                           + " bytes per call over in-memory persistence",
+                allocated <= SERVICE_LOGIN_BUDGET);
+    }
+
+    @Test
+    public void serviceHasLoggedInSinceAllocationBudget() {
+        Date date = new Date();
+        long allocated = measureService("test_2", () -> accountService
+                .hasLoggedInSince("test_2", date));
+        assertTrue("hasLoggedInSince allocates " + allocated
+                           + " bytes per call over in-memory persistence",
+                allocated <= SERVICE_LOGGED_IN_SINCE_BUDGET);
+    }
+
+    /**
+     * Measures call with persistence of the service replaced by in-memory
+     * one, which holds the account loaded by actual persistence. Credential
+     * is migrated by one login before.
+     */
+    private long measureService(String username, Supplier<?> call) {
+        accountService.login(username, "test123");
+        InMemoryPersistence memory = new InMemoryPersistence();
+        memory.accounts.put(username, persistence.findByName(username));
+        Object service = AopTestUtils.getUltimateTargetObject(
+                accountService);
+        Object actual = ReflectionTestUtils.getField(service,
+                "persistence");
+        ReflectionTestUtils.setField(service, "persistence", memory);
+        try {
+            return measure(call);
+        } finally {
+            ReflectionTestUtils.setField(service, "persistence", actual);
+        }
+    }
+
+    /**
+     * Average amount of bytes, allocated by one call. The lowest average of
+     * several rounds is taken, because a round, which overlaps with JIT
+     * compilation of hot methods, allocates more.
+     */
+    private long measure(Supplier<?> call) {
+        for (int i = 0; i < WARMUP; i++) {
+            call.get();
+        }
+        long[] ids = measuredThreads();
+        long lowest = Long.MAX_VALUE;
+        for (int r = 0; r < ROUNDS; r++) {
+            long before = allocated(ids);
+            for (int i = 0; i < ITERATIONS; i++) {
+                call.get();
+            }
+            lowest = Math.min(lowest, (allocated(ids) - before)
+                                              / ITERATIONS);
+        }
+        return lowest;
+    }
+
+    /**
+     * @return identifiers of calling thread and of password hashing threads
+     */
+    private long[] measuredThreads() {
+        return Thread.getAllStackTraces().keySet().stream().filter(
+                t -> t == Thread.currentThread() || t.getName().startsWith(
+                "bcrypt-")).mapToLong(Thread::getId).toArray();
+    }
+
+    private long allocated(long[] ids) {
+        return Arrays.stream(threads.getThreadAllocatedBytes(ids)).sum();
+    }
+
+}
@@ -16,13 +16,31 @@
 package com.booxware.test;
 
 import com.github.springtestdbunit.DbUnitTestExecutionListener;
+import com.booxware.test.impl.AccountExporter;
+import com.booxware.test.impl.AccountImporter;
+import com.booxware.test.impl.LoginAnalytics;
+import com.booxware.test.impl.LoginThrottle;
+import com.booxware.test.impl.PasswordHashingEngine;
+import com.booxware.test.util.CredentialCodec;
+import com.booxware.test.util.LatencyHistogram;
 import com.github.springtestdbunit.annotation.DatabaseSetup;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 import org.junit.After;
 import static org.junit.Assert.*;
 import org.junit.Before;
 import org.junit.BeforeClass;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.test.context.ContextConfiguration;
@@ -30,6 +48,7 @@ import org.springframework.test.context.TestExecutionListeners;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 import org.springframework.test.context.support.DependencyInjectionTestExecutionListener;
 import org.springframework.test.context.transaction.TransactionalTestExecutionListener;
+import org.springframework.test.util.ReflectionTestUtils;
 import org.springframework.transaction.annotation.Transactional;
 
 /**
@@ -50,6 +69,30 @@ public class AccountServiceTest {
     @Autowired
     AccountServiceInterface accountService;
 
+    @Autowired
+    AccountExporter accountExporter;
+
+    @Autowired
+    AccountImporter accountImporter;
+
+    @Autowired
+    LoginAnalytics loginAnalytics;
+
+    @Autowired
+    LoginThrottle loginThrottle;
+
+    @Autowired
+    PasswordHashingEngine hashingEngine;
+
+    @Autowired
+    PersistenceInterface persistence;
+
+    @Autowired
+    MetricsRegistry metricsRegistry;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
     String checkUsername;
     String checkEmail;
     String checkPassword;
@@ -82,6 +125,63 @@ public class AccountServiceTest {
         assertNotNull(account.getLastLogin());
     }
 
+    @Test
+    public void legacyCredentialIsMigratedOnLogin() {
+        int cost = hashingEngine.getCost();
+        try {
+            // data set hash has cost 10, so it is migrated without rehash
+            ReflectionTestUtils.setField(hashingEngine, "cost", 10);
+            assertNull(persistence.findByName("test_1").getEncryptedPassword());
+            byte[] credential = accountService.login("test_1", "test123")
+                    .getEncryptedPassword();
+            Account migrated = persistence.findByName("test_1");
+            assertArrayEquals(credential, migrated.getEncryptedPassword());
+            assertNull(migrated.getLegacyPassword());
+            assertNull(migrated.getSalt());
+            assertEquals(CredentialCodec.LENGTH, credential.length);
+            assertEquals("$2a$10$ZnTjPYprCyruzhY7hUx53u7rXBpIEwDn4yUwQMrCUap4hkn9fDwty",
+                    CredentialCodec.decode(credential));
+            assertArrayEquals(credential, accountService.login("test_1",
+                    "test123").getEncryptedPassword());
+            try {
+                accountService.login("test_1", "test1231");
+                fail();
+            } catch (AccountServiceException e) {
+                assertEquals("Wrong password.", e.getMessage());
+            }
+        } finally {
+            ReflectionTestUtils.setField(hashingEngine, "cost", cost);
+        }
+    }
+
+    @Test
+    public void timedCallsAreRecorded() {
+        long success = count("AccountServiceImpl.login.success"),
+                failure = count("AccountServiceImpl.login.failure");
+        accountService.login("test_1", "test123");
+        try {
+            accountService.login("test_1", "test1231");
+            fail();
+        } catch (AccountServiceException e) {
+            assertEquals("Wrong password.", e.getMessage());
+        }
+        assertEquals(success + 1, count("AccountServiceImpl.login.success"));
+        assertEquals(failure + 1, count("AccountServiceImpl.login.failure"));
+        LatencyHistogram.Snapshot login = metricsRegistry.snapshot().get(
+                "AccountServiceImpl.login.success");
+        assertTrue(login.getMax() > 0);
+        assertTrue(login.getValueAtPercentile(50) <= login.getMax());
+    }
+
+    /**
+     * Amount of calls, recorded by the metric so far.
+     */
+    private long count(String name) {
+        LatencyHistogram.Snapshot snapshot = metricsRegistry.snapshot().get(
+                name);
+        return snapshot == null ? 0 : snapshot.getCount();
+    }
+
     @Test
     public void accountNotValidLoginTest() {
         String uname = "test_1";
@@ -97,6 +197,223 @@ public class AccountServiceTest {
         assertEquals("Wrong password.", ex.getMessage());
     }
 
+    @Test
+    public void loginThrottledAfterFailures() {
+        String uname = "brute_1";
+        for (int i = 0; i < 6; i++) {
+            Exception ex = null;
+            try {
+                accountService.login(uname, "test123");
+            } catch (Exception e) {
+                ex = e;
+            }
+            assertNotNull(ex);
+            assertEquals(AccountServiceException.class, ex.getClass());
+            assertEquals(i < 5
+                                 ? "Account with name brute_1 is not "
+                                           + "registered within system."
+                                 : "Too many failed logins of brute_1, "
+                                           + "try again later.",
+                    ex.getMessage());
+        }
+    }
+
+    @Test
+    public void failuresOfOtherNamesDontBlockUser() {
+        for (int i = 0; i < 200000; i++) {
+            for (int k = 0; k < 5; k++) {
+                loginThrottle.recordFailure("stuffing_" + i);
+            }
+        }
+        assertTrue(loginThrottle.isBlocked("stuffing_199999"));
+        assertFalse(loginThrottle.isBlocked("test_1"));
+        assertNotNull(accountService.login("test_1", "test123"));
+        loginThrottle.recordSuccess("stuffing_199999");
+        assertFalse(loginThrottle.isBlocked("stuffing_199999"));
+        assertTrue(loginThrottle.isBlocked("stuffing_199998"));
+    }
+
+    @Test
+    public void exportWithoutCredentials() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertEquals(3, accountExporter.export(out,
+                AccountExporter.Format.NDJSON));
+        String[] lines = new String(out.toByteArray(), StandardCharsets.UTF_8)
+                .split("\n");
+        assertEquals(3, lines.length);
+        assertEquals("{\"id\":1001,\"username\":\"test_1\",\"email\":"
+                             + "\"test_1@test.com\",\"lastLogin\":null}",
+                lines[0]);
+
+        out.reset();
+        assertEquals(3, accountExporter.export(out,
+                AccountExporter.Format.CSV));
+        lines = new String(out.toByteArray(), StandardCharsets.UTF_8)
+                .split("\n");
+        assertEquals(4, lines.length);
+        assertEquals("id,username,email,lastLogin", lines[0]);
+        assertEquals("1003,test_3,test_3@test.com,", lines[3]);
+    }
+
+    @Test
+    public void importCsvFile() throws IOException {
+        Path file = folder.newFile("accounts.csv").toPath();
+        Files.write(file, Arrays.asList(
+                "username,email,password,credential",
+                "imp_1,imp_1@booxware.test,imp12345,",
+                "imp_2,imp_2@booxware.test,,$2a$10$ZnTjPYprCyruzhY7hUx53u"
+                        + "7rXBpIEwDn4yUwQMrCUap4hkn9fDwty",
+                "test_1,test_1@booxware.test,test123,",
+                "imp_4,not-an-email,imp12345,"), StandardCharsets.UTF_8);
+        AccountImporter.Report report = accountImporter.importFile(file,
+                AccountExporter.Format.CSV);
+        assertEquals(2, report.getImported());
+        assertEquals(1, report.getDuplicates());
+        assertEquals(1, report.getRejected());
+        assertEquals(2, report.getErrors().size());
+        assertTrue(report.getErrors().get(1).startsWith("Line 5: "));
+        assertNotNull(accountService.login("imp_1", "imp12345"));
+        assertNotNull(accountService.login("imp_2", "test123"));
+        assertFalse(Files.exists(file.resolveSibling("accounts.csv"
+                                                             + ".checkpoint")));
+    }
+
+    @Test
+    public void importRejectsRowsOnHashTimeout() throws IOException {
+        Path file = folder.newFile("accounts.csv").toPath();
+        Files.write(file, Arrays.asList(
+                "username,email,password,credential",
+                "imp_1,imp_1@booxware.test,imp12345,",
+                "imp_2,imp_2@booxware.test,,$2a$10$ZnTjPYprCyruzhY7hUx53u"
+                        + "7rXBpIEwDn4yUwQMrCUap4hkn9fDwty",
+                "imp_3,imp_3@booxware.test,imp12345,"),
+                StandardCharsets.UTF_8);
+        Object timeout = ReflectionTestUtils.getField(hashingEngine,
+                "timeoutMillis");
+        ReflectionTestUtils.setField(hashingEngine, "timeoutMillis", 0L);
+        AccountImporter.Report report;
+        try {
+            report = accountImporter.importFile(file,
+                    AccountExporter.Format.CSV);
+        } finally {
+            ReflectionTestUtils.setField(hashingEngine, "timeoutMillis",
+                    timeout);
+        }
+        assertEquals(1, report.getImported());
+        assertEquals(2, report.getRejected());
+        assertEquals(Arrays.asList(
+                "Line 2: Service is overloaded, try again later.",
+                "Line 4: Service is overloaded, try again later."), report
+                .getErrors());
+        assertNotNull(accountService.login("imp_2", "test123"));
+    }
+
+    @Test
+    public void onlyWeakerHashesAreRehashed() {
+        int cost = hashingEngine.getCost();
+        byte[] credential = accountService.register("cost_1",
+                "cost_1@booxware.test", "cost123").getEncryptedPassword();
+        assertEquals(cost, CredentialCodec.cost(credential));
+        try {
+            ReflectionTestUtils.setField(hashingEngine, "cost", cost - 1);
+            assertArrayEquals(credential, accountService.login("cost_1",
+                    "cost123").getEncryptedPassword());
+            ReflectionTestUtils.setField(hashingEngine, "cost", cost + 1);
+            byte[] rehashed = accountService.login("cost_1", "cost123")
+                    .getEncryptedPassword();
+            assertEquals(cost + 1, CredentialCodec.cost(rehashed));
+            assertNotNull(accountService.login("cost_1", "cost123"));
+        } finally {
+            ReflectionTestUtils.setField(hashingEngine, "cost", cost);
+        }
+    }
+
+    @Test
+    public void importNdjsonFromCheckpoint() throws IOException {
+        Path file = folder.newFile("accounts.ndjson").toPath();
+        String first = "{\"username\":\"imp_1\",\"email\":"
+                               + "\"imp_1@booxware.test\","
+                               + "\"password\":\"imp12345\"}";
+        Files.write(file, Arrays.asList(first,
+                "{\"username\":\"imp_2\",\"email\":\"imp_2@booxware.test\","
+                        + "\"password\":\"imp12345\"}",
+                "{\"username\":\"imp_3\",\"email\":\"imp_3@booxware.test\","
+                        + "\"password\":\"imp12345\"}"),
+                StandardCharsets.UTF_8);
+        Path checkpoint = folder.getRoot().toPath().resolve("import.state");
+        Files.write(checkpoint, Arrays.asList("offset=" + (first.length() + 1),
+                "line=1", "imported=1"), StandardCharsets.UTF_8);
+        AccountImporter.Report report = accountImporter.importFile(file,
+                AccountExporter.Format.NDJSON, checkpoint);
+        assertEquals(1, report.getResumedLine());
+        assertEquals(2, report.getProcessed());
+        assertEquals(3, report.getImported());
+        assertNotNull(accountService.login("imp_3", "imp12345"));
+        Exception ex = null;
+        try {
+            accountService.login("imp_1", "imp12345");
+        } catch (AccountServiceException e) {
+            ex = e;
+        }
+        assertNotNull(ex);
+    }
+
+    @Test
+    public void checkLoggedInSinceBatch() {
+        accountService.login("test_1", "test123");
+        LoginActivity activity = accountService.hasLoggedInSince(Arrays
+                .asList("test_2", "unknown", "test_1", null, "test_1"),
+                checkDate);
+        assertEquals(5, activity.size());
+        assertEquals("{2, 4}", activity.getLoggedIn().toString());
+        assertEquals("{1, 3}", activity.getUnknown().toString());
+    }
+
+    @Test
+    public void activeUsersAnalytics() {
+        long day = TimeUnit.DAYS.toMillis(1);
+        Date from = new Date(checkDate.getTime() - day),
+                to = new Date(checkDate.getTime() + day);
+        accountService.login("test_1", "test123");
+        accountService.login("test_2", "test123");
+        assertEquals(2, loginAnalytics.countActiveSince(checkDate));
+        assertArrayEquals(new long[]{0, 2}, loginAnalytics.histogram(from, to,
+                LoginAnalytics.Granularity.DAY));
+        List<LastLogin> dormant = loginAnalytics.findDormant(checkDate, 10);
+        assertEquals(1, dormant.size());
+        assertEquals("test_3", dormant.get(0).getUsername());
+    }
+
+    @Test
+    public void sessionTokenLifecycle() {
+        SessionToken session = accountService.loginForToken("test_1",
+                "test123");
+        String token = session.getToken();
+        SessionToken checked = accountService.validateToken(token);
+        assertEquals("test_1", checked.getUsername());
+        assertEquals(1001L, checked.getAccountId());
+        assertTrue(checked.getExpiresAt().after(checkDate));
+
+        char c = token.charAt(10);
+        String forged = token.substring(0, 10) + (c == 'A' ? 'B' : 'A')
+                                + token.substring(11);
+        assertTokenRejected(forged, "Invalid session token.");
+        accountService.deleteAccount("test_1");
+        assertTokenRejected(token, "Session token has been revoked.");
+    }
+
+    void assertTokenRejected(String token, String message) {
+        Exception ex = null;
+        try {
+            accountService.validateToken(token);
+        } catch (Exception e) {
+            ex = e;
+        }
+        assertNotNull(ex);
+        assertEquals(AccountServiceException.class, ex.getClass());
+        assertEquals(message, ex.getMessage());
+    }
+
     @Test
     public void registerExistentAccount() {
         String uname = "test_2";
@@ -151,7 +468,7 @@ public class AccountServiceTest {
         assertNotNull(checkAccount.getId());
         assertNotNull(checkAccount.getUsername());
         assertNotNull(checkAccount.getEmail());
-        assertNotNull(checkAccount.getSalt());
+        assertNull(checkAccount.getSalt());
         assertNotNull(checkAccount.getEncryptedPassword());
         assertNull(checkAccount.getLastLogin());
         checkAccount = accountService.login(checkUsername, checkPassword);
@@ -171,4 +488,46 @@ public class AccountServiceTest {
                 ex.getMessage());
     }
 
+    @Test
+    public void registerAllOverBulkQueueCapacity() {
+        // default settings: 64 queued bulk hashes, 5 s timeout
+        List<Registration> items = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            String name = "many_" + i;
+            items.add(new Registration(name, name + "@booxware.test",
+                    "many123"));
+        }
+        List<RegistrationResult> results = accountService.registerAll(items);
+        assertEquals(100, results.size());
+        for (RegistrationResult result : results) {
+            assertTrue(result.getError(), result.isSuccess());
+        }
+        assertNotNull(accountService.login("many_99", "many123"));
+    }
+
+    @Test
+    public void registerAllReportsEveryItem() {
+        List<RegistrationResult> results = accountService.registerAll(Arrays
+                .asList(new Registration("bulk_1", "bulk_1@booxware.test",
+                        "bulk001"),
+                        new Registration("test_2", "e@mai.il", "test123"),
+                        new Registration("bulk_2", "dfsdf234ma432",
+                                "bulk002"),
+                        new Registration("bulk_1", "bulk_1@booxware.test",
+                                "bulk001"),
+                        new Registration("bulk_3", "bulk_3@booxware.test",
+                                "bulk003")));
+        assertEquals(5, results.size());
+        assertTrue(results.get(0).isSuccess());
+        assertNotNull(results.get(0).getAccount().getId());
+        assertEquals("Account with name test_2 is already registered.",
+                results.get(1).getError());
+        assertEquals("[must be a well-formed email address]",
+                results.get(2).getError());
+        assertFalse(results.get(3).isSuccess());
+        assertTrue(results.get(4).isSuccess());
+        assertNotNull(accountService.login("bulk_3", "bulk003")
+                .getLastLogin());
+    }
+
 }
@@ -0,0 +1,144 @@
+/*
+ * Copyright 2017 Andrey Alexeenko <Andrey.Alexeenko at t-systems.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.booxware.test;
+
+import com.booxware.test.impl.AsyncAccountServiceImpl;
+import com.github.springtestdbunit.DbUnitTestExecutionListener;
+import com.github.springtestdbunit.annotation.DatabaseSetup;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import static org.junit.Assert.*;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.TestExecutionListeners;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.test.context.support.DependencyInjectionTestExecutionListener;
+import org.springframework.test.util.ReflectionTestUtils;
+
+/**
+ * Calls are executed by other threads, so they are committed instead of
+ * being rolled back with a test transaction; data set is restored before
+ * every test.
+ *
+ * @author Andrey Alexeenko <Andrey.Alexeenko at t-systems.com>
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(locations = {"classpath:applicationContext.xml"})
+@TestExecutionListeners({
+    DependencyInjectionTestExecutionListener.class,
+    DbUnitTestExecutionListener.class
+})
+@DatabaseSetup("classpath:data/DataSet.xml")
+public class AsyncAccountServiceTest {
+
+    @Autowired
+    AsyncAccountServiceInterface asyncAccountService;
+
+    @Test
+    public void futuresCompleteWithResults() throws Exception {
+        Date since = new Date();
+        Account account = get(asyncAccountService.loginAsync("test_1",
+                "test123"));
+        assertEquals("test_1", account.getUsername());
+        assertNotNull(account.getLastLogin());
+        assertTrue(get(asyncAccountService.hasLoggedInSinceAsync("test_1",
+                since)));
+        assertFalse(get(asyncAccountService.hasLoggedInSinceAsync("test_2",
+                since)));
+        Account registered = get(asyncAccountService.registerAsync(
+                "async_1", "async_1@booxware.test", "async12"));
+        assertNotNull(registered.getId());
+        assertEquals("async_1", get(asyncAccountService.loginAsync("async_1",
+                "async12")).getUsername());
+        assertNull(get(asyncAccountService.deleteAccountAsync("async_1")));
+    }
+
+    @Test
+    public void failuresArriveAsAccountServiceException() throws Exception {
+        assertFailure(asyncAccountService.loginAsync("test_1", "wrong12"),
+                "Wrong password.");
+        assertFailure(asyncAccountService.deleteAccountAsync("unknown"),
+                null);
+        assertFailure(asyncAccountService.registerAsync("test_1",
+                "test_1@booxware.test", "test123"), null);
+        assertFailure(asyncAccountService.hasLoggedInSinceAsync("test_1",
+                null), null);
+    }
+
+    @Test
+    public void configuredExecutorIsUsed() throws Exception {
+        List<Runnable> executed = new ArrayList<>();
+        Executor configured = task -> {
+            executed.add(task);
+            task.run();
+        };
+        AsyncAccountServiceImpl service = new AsyncAccountServiceImpl();
+        ReflectionTestUtils.setField(service, "configuredExecutor",
+                configured);
+        ReflectionTestUtils.setField(service, "accountService",
+                (AccountServiceInterface) Proxy.newProxyInstance(
+                        AccountServiceInterface.class.getClassLoader(),
+                        new Class<?>[]{AccountServiceInterface.class},
+                        (proxy, method, args) -> new Account(
+                                (String) args[0], null)));
+        ReflectionTestUtils.invokeMethod(service, "init");
+        try {
+            assertEquals("name_1", get(service.loginAsync("name_1",
+                    "secret")).getUsername());
+            assertEquals(1, executed.size());
+            assertNull(ReflectionTestUtils.getField(service,
+                    "ownedExecutor"));
+        } finally {
+            ReflectionTestUtils.invokeMethod(service, "destroy");
+        }
+    }
+
+    /**
+     * Checks, that future fails by AccountServiceException itself.
+     *
+     * @param f
+     * @param message
+     *                expected message or null, if it should not be checked
+     */
+    private static void assertFailure(CompletableFuture<?> f,
+            String message) throws Exception {
+        try {
+            f.get(10, TimeUnit.SECONDS);
+            fail();
+        } catch (ExecutionException e) {
+            assertEquals(AccountServiceException.class, e.getCause()
+                    .getClass());
+            if (message != null) {
+                assertEquals(message, e.getCause().getMessage());
+            }
+        }
+        assertTrue(f.isCompletedExceptionally());
+    }
+
+    private static <T> T get(Future<T> f) throws Exception {
+        return f.get(10, TimeUnit.SECONDS);
+    }
+
+}
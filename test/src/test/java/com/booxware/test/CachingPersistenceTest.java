@@ -0,0 +1,200 @@
+/*
+ * Copyright 2017 Andrey Alexeenko <Andrey.Alexeenko at t-systems.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.booxware.test;
+
+import com.booxware.test.impl.CachingPersistence;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import static org.junit.Assert.*;
+import org.junit.Test;
+import org.springframework.context.support.ClassPathXmlApplicationContext;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ *
+ * @author Andrey Alexeenko <Andrey.Alexeenko at t-systems.com>
+ */
+public class CachingPersistenceTest {
+
+    final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+    final InMemoryPersistence delegate = new InMemoryPersistence();
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+        TransactionSynchronizationManager.setActualTransactionActive(false);
+    }
+
+    @Test
+    public void hitMissAndEviction() {
+        CachingPersistence persistence = new CachingPersistence(delegate,
+                16, 60000);
+        for (int i = 0; i < 200; i++) {
+            persistence.save(account("name_" + i));
+        }
+        assertEquals(0, delegate.lookups());
+        assertTrue(persistence.getStatistics().getEvictions() >= 200 - 16);
+        assertTrue(persistence.getStatistics().getSize() <= 16);
+        persistence.invalidateAll();
+        Account first = persistence.findByName("name_1");
+        Account second = persistence.findByName("name_1");
+        assertEquals(1, delegate.lookups());
+        assertEquals("name_1", second.getUsername());
+        assertNotSame(first, second);
+        second.setEmail(null);
+        assertEquals("name_1@booxware.test", persistence.findByName("name_1")
+                .getEmail());
+        assertNull(persistence.findByName("absent"));
+        assertNull(persistence.findByName("absent"));
+        assertEquals(3, delegate.lookups());
+        CachingPersistence.Statistics statistics = persistence
+                .getStatistics();
+        assertEquals(2, statistics.getHits());
+        assertEquals(3, statistics.getMisses());
+        assertEquals(1, statistics.getSize());
+    }
+
+    @Test
+    public void lastLoginMissFillsCache() {
+        CachingPersistence persistence = new CachingPersistence(delegate,
+                16, 60000);
+        Account account = account("name_1");
+        account.setLastLogin(new Date());
+        delegate.accounts.put("name_1", account);
+        assertEquals(account.getLastLogin(), persistence.findLastLoginByName(
+                "name_1").getLastLogin());
+        assertEquals(account.getLastLogin(), persistence.findLastLoginByName(
+                "name_1").getLastLogin());
+        assertEquals("name_1", persistence.findByName("name_1")
+                .getUsername());
+        assertNull(persistence.findLastLoginByName("absent"));
+        assertEquals(2, delegate.lookups());
+        assertEquals(2, persistence.getStatistics().getHits());
+        assertEquals(1, persistence.getStatistics().getSize());
+    }
+
+    @Test
+    public void entriesExpireAfterTtl() throws InterruptedException {
+        CachingPersistence persistence = new CachingPersistence(delegate,
+                16, 50);
+        delegate.accounts.put("name_1", account("name_1"));
+        persistence.findByName("name_1");
+        persistence.findByName("name_1");
+        assertEquals(1, delegate.lookups());
+        Thread.sleep(100);
+        persistence.findByName("name_1");
+        assertEquals(2, delegate.lookups());
+        assertEquals(1, persistence.getStatistics().getExpirations());
+    }
+
+    @Test
+    public void deleteDuringLoadIsNotCached() throws Exception {
+        CachingPersistence persistence = new CachingPersistence(delegate,
+                16, 60000);
+        delegate.accounts.put("name_1", account("name_1"));
+        CountDownLatch loadStarted = new CountDownLatch(1),
+                releaseLoad = new CountDownLatch(1);
+        delegate.onLookup = name -> {
+            loadStarted.countDown();
+            try {
+                releaseLoad.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        };
+        Future<Account> stale = executor.submit(() -> persistence
+                .findByName("name_1"));
+        assertTrue(loadStarted.await(10, TimeUnit.SECONDS));
+        assertTrue(persistence.deleteByName("name_1"));
+        releaseLoad.countDown();
+        assertNotNull(stale.get(10, TimeUnit.SECONDS));
+        delegate.onLookup = name -> {
+        };
+        assertNull(persistence.findByName("name_1"));
+        assertEquals(0, persistence.getStatistics().getSize());
+    }
+
+    @Test
+    public void transactionWritesAreCachedAfterCompletion() {
+        CachingPersistence persistence = new CachingPersistence(delegate,
+                16, 60000);
+        persistence.save(account("name_1"));
+        TransactionSynchronizationManager.initSynchronization();
+        TransactionSynchronizationManager.setActualTransactionActive(true);
+        Account changed = account("name_1");
+        changed.setEmail("changed@booxware.test");
+        persistence.save(changed);
+        assertEquals("changed@booxware.test", persistence.findByName(
+                "name_1").getEmail());
+        assertEquals(0, persistence.getStatistics().getSize());
+        // rollback restores the row
+        delegate.accounts.put("name_1", account("name_1"));
+        for (TransactionSynchronization synchronization
+                     : TransactionSynchronizationManager
+                .getSynchronizations()) {
+            synchronization.afterCompletion(
+                    TransactionSynchronization.STATUS_ROLLED_BACK);
+        }
+        TransactionSynchronizationManager.clearSynchronization();
+        TransactionSynchronizationManager.setActualTransactionActive(false);
+        assertEquals("name_1@booxware.test", persistence.findByName("name_1")
+                .getEmail());
+        assertEquals(1, persistence.getStatistics().getSize());
+    }
+
+    @Test
+    public void cachedProfileWrapsPersistence() {
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("booxware.jdbc.url", "jdbc:hsqldb:mem:cached");
+        properties.put("hibernate.show_sql", "false");
+        try (ClassPathXmlApplicationContext context
+                = new ClassPathXmlApplicationContext(new String[]{
+                    "applicationContext.xml"}, false)) {
+            context.getEnvironment().setActiveProfiles("production",
+                    "cached");
+            context.getEnvironment().getPropertySources().addFirst(
+                    new MapPropertySource("cached", properties));
+            context.refresh();
+            CachingPersistence persistence = (CachingPersistence) context
+                    .getBean(PersistenceInterface.class);
+            AccountServiceInterface accountService = context.getBean(
+                    AccountServiceInterface.class);
+            accountService.register("cached_1", "cached_1@booxware.test",
+                    "cached1");
+            accountService.login("cached_1", "cached1");
+            accountService.login("cached_1", "cached1");
+            assertTrue(persistence.getStatistics().getHits() > 0);
+        }
+    }
+
+    private static Account account(String name) {
+        return new Account(name, name + "@booxware.test");
+    }
+
+}
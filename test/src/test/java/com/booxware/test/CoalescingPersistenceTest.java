@@ -0,0 +1,186 @@
+/*
+ * Copyright 2017 Andrey Alexeenko <Andrey.Alexeenko at t-systems.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.booxware.test;
+
+import com.booxware.test.impl.CoalescingPersistence;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import org.junit.After;
+import org.junit.Before;
+import static org.junit.Assert.*;
+import org.junit.Test;
+import org.springframework.context.support.ClassPathXmlApplicationContext;
+import org.springframework.core.env.MapPropertySource;
+
+/**
+ *
+ * @author Andrey Alexeenko <Andrey.Alexeenko at t-systems.com>
+ */
+public class CoalescingPersistenceTest {
+
+    final ExecutorService executor = Executors.newFixedThreadPool(16);
+
+    final InMemoryPersistence delegate = new InMemoryPersistence();
+
+    @Before
+    public void setUp() {
+        delegate.accounts.put("same", new Account("same",
+                "same@booxware.test"));
+        for (int i = 0; i < 8; i++) {
+            delegate.accounts.put("name_" + i, new Account("name_" + i,
+                    "name_" + i + "@booxware.test"));
+        }
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void coalescedProfileWrapsPersistence() {
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("booxware.jdbc.url", "jdbc:hsqldb:mem:coalesced");
+        properties.put("hibernate.show_sql", "false");
+        try (ClassPathXmlApplicationContext context
+                = new ClassPathXmlApplicationContext(new String[]{
+                    "applicationContext.xml"}, false)) {
+            context.getEnvironment().setActiveProfiles("production",
+                    "coalesced");
+            context.getEnvironment().getPropertySources().addFirst(
+                    new MapPropertySource("coalesced", properties));
+            context.refresh();
+            CoalescingPersistence persistence = (CoalescingPersistence) context
+                    .getBean(PersistenceInterface.class);
+            AccountServiceInterface accountService = context.getBean(
+                    AccountServiceInterface.class);
+            accountService.register("coalesce_1", "coalesce_1@booxware.test",
+                    "coalesce1");
+            assertNotNull(accountService.login("coalesce_1", "coalesce1"));
+            assertTrue(persistence.getStatistics().getExecuted() > 0);
+            assertEquals(0, persistence.getStatistics().getInFlight());
+        }
+    }
+
+    /**
+     * Makes lookups of the delegate slow, lookups of names starting with
+     * "fail" throw.
+     *
+     * @param lookup
+     */
+    void lookup(Runnable lookup) {
+        delegate.onLookup = name -> {
+            lookup.run();
+            if (name.startsWith("fail")) {
+                throw new IllegalStateException("Lookup of " + name
+                                                        + " failed.");
+            }
+        };
+    }
+
+    @Test
+    public void concurrentLookupsShareOneQuery() throws Exception {
+        int callers = 16;
+        CountDownLatch release = new CountDownLatch(1);
+        lookup(() -> {
+            try {
+                release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        CoalescingPersistence persistence = new CoalescingPersistence(
+                delegate);
+        List<Future<Account>> results = new ArrayList<>();
+        for (int i = 0; i < callers; i++) {
+            results.add(executor.submit(() -> persistence
+                    .findByName("same")));
+        }
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (persistence.getStatistics().getCoalesced() < callers - 1
+                       && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        release.countDown();
+        List<Account> accounts = new ArrayList<>();
+        for (Future<Account> result : results) {
+            accounts.add(result.get(10, TimeUnit.SECONDS));
+        }
+        assertEquals(1, delegate.lookups.get("same").get());
+        assertEquals(1, persistence.getStatistics().getExecuted());
+        assertEquals(callers - 1, persistence.getStatistics().getCoalesced());
+        assertEquals(0, persistence.getStatistics().getInFlight());
+        for (Account account : accounts) {
+            assertEquals("same", account.getUsername());
+        }
+        assertNotSame(accounts.get(0), accounts.get(1));
+    }
+
+    @Test
+    public void stressKeepsResultsOfEveryName() throws Exception {
+        int tasks = 16, lookups = 2000;
+        lookup(() -> LockSupport.parkNanos(50_000));
+        CoalescingPersistence persistence = new CoalescingPersistence(
+                delegate);
+        AtomicInteger failures = new AtomicInteger();
+        List<Callable<Void>> workers = new ArrayList<>();
+        for (int t = 0; t < tasks; t++) {
+            workers.add(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int i = 0; i < lookups; i++) {
+                    String name = (random.nextInt(10) == 0 ? "fail_"
+                                           : "name_") + random.nextInt(8);
+                    try {
+                        Account account = persistence.findByName(name);
+                        assertEquals(name, account.getUsername());
+                        // shared entity would be seen modified by others
+                        assertEquals(name + "@booxware.test", account
+                                .getEmail());
+                        account.setEmail(null);
+                    } catch (IllegalStateException e) {
+                        assertEquals("Lookup of " + name + " failed.", e
+                                .getMessage());
+                        failures.incrementAndGet();
+                    }
+                }
+                return null;
+            });
+        }
+        for (Future<Void> result : executor.invokeAll(workers)) {
+            result.get();
+        }
+        CoalescingPersistence.Statistics statistics = persistence
+                .getStatistics();
+        assertEquals(delegate.lookups(), statistics.getExecuted());
+        assertEquals(tasks * lookups, statistics.getExecuted() + statistics
+                .getCoalesced());
+        assertTrue(statistics.getCoalesced() > 0);
+        assertTrue(failures.get() > 0);
+        assertEquals(0, statistics.getInFlight());
+    }
+
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2017 Andrey Alexeenko <Andrey.Alexeenko at t-systems.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.booxware.test;
+
+import com.booxware.test.util.CredentialCodec;
+import static org.junit.Assert.*;
+import org.junit.Test;
+import org.springframework.security.crypto.bcrypt.BCrypt;
+
+/**
+ *
+ * @author Andrey Alexeenko <Andrey.Alexeenko at t-systems.com>
+ */
+public class CredentialCodecTest {
+
+    /**
+     * Hash of "test123" from the data set.
+     */
+    private static final String HASH
+                                        = "$2a$10$ZnTjPYprCyruzhY7hUx53u7rXBpIEwDn4yUwQMrCUap4hkn9fDwty";
+
+    @Test
+    public void roundTrip() {
+        byte[] credential = CredentialCodec.encode(HASH);
+        assertEquals(CredentialCodec.LENGTH, credential.length);
+        assertEquals(41, credential.length);
+        assertEquals(HASH, CredentialCodec.decode(credential));
+        assertEquals(HASH.substring(0, 29), CredentialCodec.salt(credential));
+        assertTrue(CredentialCodec.matches(credential, HASH));
+        for (int cost = 4; cost <= 6; cost++) {
+            String hash = BCrypt.hashpw("secret", BCrypt.gensalt(cost));
+            credential = CredentialCodec.encode(hash);
+            assertEquals(hash, CredentialCodec.decode(credential));
+            assertEquals(hash, BCrypt.hashpw("secret", CredentialCodec.salt(
+                    credential)));
+        }
+    }
+
+    @Test
+    public void cost() {
+        assertEquals(10, CredentialCodec.cost(CredentialCodec.encode(HASH)));
+        assertEquals(4, CredentialCodec.cost(CredentialCodec.encode(BCrypt
+                .hashpw("secret", BCrypt.gensalt(4)))));
+        assertEquals(31, CredentialCodec.cost(CredentialCodec.encode(
+                "$2b$31$" + HASH.substring(7))));
+        assertTrue(CredentialCodec.decode(CredentialCodec.encode("$2b$31$"
+                + HASH.substring(7))).startsWith("$2b$31$"));
+    }
+
+    @Test
+    public void mismatchIsDetected() {
+        byte[] credential = CredentialCodec.encode(HASH);
+        // separators are not stored, revision, cost, salt and hash are
+        for (int i = 2; i < HASH.length(); i++) {
+            if (i == 3 || i == 6) {
+                continue;
+            }
+            char[] chars = HASH.toCharArray();
+            chars[i] = chars[i] == 'a' ? 'b' : 'a';
+            assertFalse("Position " + i, CredentialCodec.matches(credential,
+                    new String(chars)));
+        }
+        assertFalse(CredentialCodec.matches(credential, HASH.substring(1)));
+        assertFalse(CredentialCodec.matches(credential, null));
+        assertFalse(CredentialCodec.matches(null, HASH));
+        assertFalse(CredentialCodec.matches(new byte[40], HASH));
+        assertFalse(CredentialCodec.matches(credential, HASH.substring(0, 58)
+                + "~"));
+    }
+
+    @Test
+    public void malformedInputIsRejected() {
+        String[] hashes = {null, "", HASH.substring(1), HASH + "a",
+            "#" + HASH.substring(1), "$1a" + HASH.substring(3),
+            "$2a#" + HASH.substring(4), "$2a$10#" + HASH.substring(7),
+            "$2a$x0$" + HASH.substring(7), HASH.substring(0, 58) + "~",
+            HASH.substring(0, 58) + "ä"};
+        for (String hash : hashes) {
+            try {
+                CredentialCodec.encode(hash);
+                fail(hash);
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+        for (byte[] credential : new byte[][]{null, new byte[40],
+            new byte[42]}) {
+            try {
+                CredentialCodec.decode(credential);
+                fail();
+            } catch (IllegalArgumentException e) {
+                assertEquals("Not a binary credential.", e.getMessage());
+            }
+            try {
+                CredentialCodec.salt(credential);
+                fail();
+            } catch (IllegalArgumentException e) {
+                assertEquals("Not a binary credential.", e.getMessage());
+            }
+        }
+    }
+
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright 2017 Andrey Alexeenko <Andrey.Alexeenko at t-systems.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.booxware.test;
+
+import com.booxware.test.impl.CredentialMigrator;
+import com.booxware.test.util.CredentialCodec;
+import com.github.springtestdbunit.DbUnitTestExecutionListener;
+import com.github.springtestdbunit.annotation.DatabaseSetup;
+import java.nio.charset.StandardCharsets;
+import static org.junit.Assert.*;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.TestExecutionListeners;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.test.context.support.DependencyInjectionTestExecutionListener;
+import org.springframework.test.context.transaction.TransactionalTestExecutionListener;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Batches of migration join the test transaction, so they are rolled back
+ * with it.
+ *
+ * @author Andrey Alexeenko <Andrey.Alexeenko at t-systems.com>
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(locations = {"classpath:applicationContext.xml"})
+@TestExecutionListeners({
+    TransactionalTestExecutionListener.class,
+    DependencyInjectionTestExecutionListener.class,
+    DbUnitTestExecutionListener.class
+})
+@Transactional
+@DatabaseSetup("classpath:data/DataSet.xml")
+public class CredentialMigratorTest {
+
+    /**
+     * Legacy hash and salt of "test123" from the data set.
+     */
+    private static final String HASH
+                                        = "$2a$10$ZnTjPYprCyruzhY7hUx53u7rXBpIEwDn4yUwQMrCUap4hkn9fDwty",
+            SALT = "$2a$10$ZnTjPYprCyruzhY7hUx53u";
+
+    @Autowired
+    CredentialMigrator credentialMigrator;
+
+    @Autowired
+    PersistenceInterface persistence;
+
+    @Autowired
+    AccountServiceInterface accountService;
+
+    @Test
+    public void legacyRowsAreMigratedByPages() {
+        // data set holds legacy rows test_1..test_3
+        for (int i = 4; i <= 7; i++) {
+            legacy("test_" + i, HASH);
+        }
+        legacy("broken_1", "not a BCrypt hash");
+        assertEquals(7, credentialMigrator.migrate(2));
+        for (int i = 1; i <= 7; i++) {
+            Account account = persistence.findByName("test_" + i);
+            assertEquals(HASH, CredentialCodec.decode(account
+                    .getEncryptedPassword()));
+            assertNull(account.getLegacyPassword());
+            assertNull(account.getSalt());
+        }
+        Account broken = persistence.findByName("broken_1");
+        assertNull(broken.getEncryptedPassword());
+        assertNotNull(broken.getLegacyPassword());
+        assertEquals(SALT, broken.getSalt());
+        // nothing is left, except the malformed row
+        assertEquals(0, credentialMigrator.migrate(2));
+        assertNotNull(accountService.login("test_7", "test123"));
+    }
+
+    private void legacy(String name, String hash) {
+        Account account = new Account(name, name + "@booxware.test");
+        account.setLegacyPassword(hash.getBytes(StandardCharsets.UTF_8));
+        account.setSalt(SALT);
+        persistence.save(account);
+    }
+
+}
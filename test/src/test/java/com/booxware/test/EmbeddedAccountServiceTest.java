@@ -0,0 +1,60 @@
+/*
+ * Copyright 2017 Andrey Alexeenko <Andrey.Alexeenko at t-systems.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.booxware.test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Before;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
+
+/**
+ * Runs service scenarios against embedded log-structured engine. Data set
+ * is restored through the engine itself, because database is not used by
+ * it.
+ *
+ * @author Andrey Alexeenko <Andrey.Alexeenko at t-systems.com>
+ */
+@ActiveProfiles({"default", "embedded"})
+@TestPropertySource(properties = {
+    "booxware.log.dir=target/booxware-log",
+    "booxware.jdbc.url=jdbc:hsqldb:mem:embedded"})
+public class EmbeddedAccountServiceTest extends AccountServiceTest {
+
+    private static final String SALT = "$2a$10$ZnTjPYprCyruzhY7hUx53u",
+            HASH = SALT + "7rXBpIEwDn4yUwQMrCUap4hkn9fDwty";
+
+    @Autowired
+    PersistenceInterface persistence;
+
+    @Before
+    public void restoreDataSet() {
+        List<String> names = new ArrayList<>();
+        persistence.forEachName(names::add);
+        names.forEach(persistence::deleteByName);
+        for (int i = 1; i <= 3; i++) {
+            Account account = new Account("test_" + i, "test_" + i
+                                                               + "@test.com");
+            account.setId(1000L + i);
+            account.setLegacyPassword(HASH.getBytes(StandardCharsets.UTF_8));
+            account.setSalt(SALT);
+            persistence.save(account);
+        }
+    }
+
+}
@@ -0,0 +1,180 @@
+/*
+ * Copyright 2017 Andrey Alexeenko <Andrey.Alexeenko at t-systems.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.booxware.test;
+
+import com.booxware.test.impl.FilteringPersistence;
+import com.booxware.test.util.CountingBloomFilter;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.After;
+import static org.junit.Assert.*;
+import org.junit.Test;
+import org.springframework.context.support.ClassPathXmlApplicationContext;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ *
+ * @author Andrey Alexeenko <Andrey.Alexeenko at t-systems.com>
+ */
+public class FilteringPersistenceTest {
+
+    final InMemoryPersistence delegate = new InMemoryPersistence();
+
+    @After
+    public void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    public void filterHasNoFalseNegatives() {
+        CountingBloomFilter filter = new CountingBloomFilter(10000, 0.01);
+        for (int i = 0; i < 10000; i++) {
+            filter.add("name_" + i);
+        }
+        int falsePositives = 0;
+        for (int i = 0; i < 10000; i++) {
+            assertTrue(filter.mightContain("name_" + i));
+            if (filter.mightContain("other_" + i)) {
+                falsePositives++;
+            }
+        }
+        assertTrue("False positives " + falsePositives, falsePositives < 300);
+        for (int i = 0; i < 10000; i += 2) {
+            filter.remove("name_" + i);
+        }
+        int kept = 0;
+        for (int i = 0; i < 10000; i++) {
+            if (i % 2 == 1) {
+                assertTrue(filter.mightContain("name_" + i));
+            } else if (filter.mightContain("name_" + i)) {
+                kept++;
+            }
+        }
+        assertTrue("Kept removed " + kept, kept < 300);
+        assertEquals(filter.getCounters() / 2, filter.getMemoryBytes());
+    }
+
+    @Test
+    public void unknownNamesAreSkipped() {
+        FilteringPersistence persistence = new FilteringPersistence(
+                delegate, 1000, 0.01);
+        delegate.accounts.put("name_1",
+                new Account("name_1", "name_1@booxware.test"));
+        assertNull(persistence.findByName("absent"));
+        assertEquals(0, persistence.getStatistics().getMemoryBytes());
+        persistence.warmUp();
+        assertNotNull(persistence.findByName("name_1"));
+        assertNull(persistence.findByName("absent"));
+        persistence.save(new Account("name_2", "name_2@booxware.test"));
+        assertNotNull(persistence.findByName("name_2"));
+        assertTrue(persistence.deleteByName("name_1"));
+        assertNull(persistence.findByName("name_1"));
+        FilteringPersistence.Statistics statistics = persistence
+                .getStatistics();
+        assertEquals(3, statistics.getPassed());
+        assertTrue(statistics.getSkipped() >= 1);
+        assertTrue(statistics.getMemoryBytes() > 0);
+        assertEquals(new CountingBloomFilter(1000, 0.01).getMemoryBytes(),
+                statistics.getMemoryBytes());
+    }
+
+    @Test
+    public void rolledBackDeleteKeepsName() {
+        FilteringPersistence persistence = new FilteringPersistence(
+                delegate, 1000, 0.01);
+        Account account = new Account("name_1", "name_1@booxware.test");
+        delegate.accounts.put("name_1", account);
+        persistence.warmUp();
+        TransactionSynchronizationManager.initSynchronization();
+        assertTrue(persistence.deleteByName("name_1"));
+        complete(TransactionSynchronization.STATUS_ROLLED_BACK);
+        delegate.accounts.put("name_1", account);
+        assertNotNull(persistence.findByName("name_1"));
+        TransactionSynchronizationManager.initSynchronization();
+        assertTrue(persistence.deleteByName("name_1"));
+        complete(TransactionSynchronization.STATUS_COMMITTED);
+        assertNull(persistence.findByName("name_1"));
+        assertEquals(1, persistence.getStatistics().getSkipped());
+    }
+
+    @Test
+    public void warmUpKeepsUncommittedCreation() {
+        FilteringPersistence persistence = new FilteringPersistence(
+                delegate, 1000, 0.01);
+        persistence.warmUp();
+        TransactionSynchronizationManager.initSynchronization();
+        delegate.uncommitted.add("name_1");
+        persistence.save(new Account("name_1", "name_1@booxware.test"));
+        assertNotNull(persistence.findByName("name_1"));
+        persistence.warmUp();
+        delegate.uncommitted.clear();
+        complete(TransactionSynchronization.STATUS_COMMITTED);
+        assertNotNull(persistence.findByName("name_1"));
+        assertEquals(0, persistence.getStatistics().getSkipped());
+    }
+
+    @Test
+    public void filteredProfileWrapsPersistence() {
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("booxware.jdbc.url", "jdbc:hsqldb:mem:filtered");
+        properties.put("booxware.filter.expectedAccounts", "1000");
+        properties.put("hibernate.show_sql", "false");
+        try (ClassPathXmlApplicationContext context
+                = new ClassPathXmlApplicationContext(new String[]{
+                    "applicationContext.xml"}, false)) {
+            context.getEnvironment().setActiveProfiles("production",
+                    "filtered");
+            context.getEnvironment().getPropertySources().addFirst(
+                    new MapPropertySource("filtered", properties));
+            context.refresh();
+            FilteringPersistence persistence = (FilteringPersistence) context
+                    .getBean(PersistenceInterface.class);
+            AccountServiceInterface accountService = context.getBean(
+                    AccountServiceInterface.class);
+            accountService.register("filtered_1", "filtered_1@booxware.test",
+                    "filtered1");
+            assertNotNull(accountService.login("filtered_1", "filtered1"));
+            try {
+                accountService.login("unknown_1", "unknown1");
+                fail();
+            } catch (AccountServiceException e) {
+                assertTrue(persistence.getStatistics().getSkipped() > 0);
+            }
+        }
+    }
+
+    /**
+     * Completes transaction of the current thread.
+     *
+     * @param status
+     */
+    private static void complete(int status) {
+        for (TransactionSynchronization synchronization
+                     : TransactionSynchronizationManager
+                .getSynchronizations()) {
+            if (status == TransactionSynchronization.STATUS_COMMITTED) {
+                synchronization.afterCommit();
+            }
+            synchronization.afterCompletion(status);
+        }
+        TransactionSynchronizationManager.clearSynchronization();
+    }
+
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright 2017 Andrey Alexeenko <Andrey.Alexeenko at t-systems.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.booxware.test;
+
+import com.booxware.test.impl.IdAllocationValidator;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import javax.sql.DataSource;
+import static org.junit.Assert.*;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+/**
+ *
+ * @author Andrey Alexeenko <Andrey.Alexeenko at t-systems.com>
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(locations = {"classpath:applicationContext.xml"})
+public class IdAllocationValidatorTest {
+
+    @Autowired
+    IdAllocationValidator validator;
+
+    @Autowired
+    DataSource dataSource;
+
+    @Test
+    public void sequenceIncrementMismatchIsRejected() throws SQLException {
+        validator.validate();
+        alterIncrement(7);
+        try {
+            validator.validate();
+            fail("Mismatch has not been detected.");
+        } catch (IllegalStateException e) {
+            assertEquals("Sequence ACCOUNT_SEQ is incremented by 7, but "
+                                 + "PooledLoOptimizer of block size 50 "
+                                 + "requires 50.", e.getMessage());
+        } finally {
+            alterIncrement(50);
+        }
+    }
+
+    void alterIncrement(int increment) throws SQLException {
+        try (Connection connection = dataSource.getConnection();
+                Statement statement = connection.createStatement()) {
+            statement.execute("alter sequence ACCOUNT_SEQ increment by "
+                                      + increment);
+        }
+    }
+
+}
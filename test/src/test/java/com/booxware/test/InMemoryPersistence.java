@@ -0,0 +1,162 @@
+/*
+ * Copyright 2017 Andrey Alexeenko <Andrey.Alexeenko at t-systems.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.booxware.test;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * Test double of actual persistence, which keeps accounts in a map.
+ * Accounts are copied on the way in and out, like entities of separate
+ * transactions. Lookups by name are counted and could be intercepted.
+ *
+ * @author Andrey Alexeenko <Andrey.Alexeenko at t-systems.com>
+ */
+class InMemoryPersistence implements PersistenceInterface {
+
+    /**
+     * Stored accounts by names, tests could put rows directly.
+     */
+    final Map<String, Account> accounts = new ConcurrentHashMap<>();
+    /**
+     * Names of rows, which are not visible to scans of other transactions
+     * yet.
+     */
+    final Set<String> uncommitted = ConcurrentHashMap.newKeySet();
+    /**
+     * Amount of lookups by names.
+     */
+    final Map<String, AtomicInteger> lookups = new ConcurrentHashMap<>();
+    /**
+     * Called by lookup by name after the row has been read, could block or
+     * throw.
+     */
+    volatile Consumer<String> onLookup = name -> {
+    };
+
+    private final AtomicLong ids = new AtomicLong();
+
+    /**
+     * @return amount of lookups of all names
+     */
+    int lookups() {
+        return lookups.values().stream().mapToInt(AtomicInteger::get).sum();
+    }
+
+    @Override
+    public Account save(Account account) {
+        Account stored = new Account(account);
+        if (stored.getId() == null) {
+            stored.setId(ids.incrementAndGet());
+        }
+        accounts.put(stored.getUsername(), stored);
+        return new Account(stored);
+    }
+
+    @Override
+    public List<Account> saveAll(Collection<Account> accounts) {
+        return accounts.stream().map(this::save).collect(Collectors
+                .toList());
+    }
+
+    @Override
+    public void updateLastLogins(Map<String, Date> lastLogins) {
+        lastLogins.forEach((name, date) -> accounts.computeIfPresent(name,
+                (n, a) -> {
+                    if (a.getLastLogin() != null && !a.getLastLogin()
+                            .before(date)) {
+                        return a;
+                    }
+                    Account changed = new Account(a);
+                    changed.setLastLogin(date);
+                    return changed;
+                }));
+    }
+
+    @Override
+    public Account findById(Long id) {
+        return accounts.values().stream().filter(a -> id.equals(a.getId()))
+                .findFirst().map(Account::new).orElse(null);
+    }
+
+    @Override
+    public Account findByName(String name) {
+        lookups.computeIfAbsent(name, n -> new AtomicInteger())
+                .incrementAndGet();
+        Account account = accounts.get(name);
+        onLookup.accept(name);
+        return account == null ? null : new Account(account);
+    }
+
+    @Override
+    public LastLogin findLastLoginByName(String name) {
+        Account account = accounts.get(name);
+        return account == null ? null : new LastLogin(name, account
+                .getLastLogin());
+    }
+
+    @Override
+    public Set<String> findExistingNames(Collection<String> names) {
+        return names.stream().filter(accounts::containsKey).collect(
+                Collectors.toSet());
+    }
+
+    @Override
+    public Map<String, Date> findLastLogins(Collection<String> names) {
+        Map<String, Date> lastLogins = new HashMap<>();
+        for (String name : names) {
+            Account account = accounts.get(name);
+            if (account != null) {
+                lastLogins.put(name, account.getLastLogin());
+            }
+        }
+        return lastLogins;
+    }
+
+    @Override
+    public void forEachName(Consumer<String> consumer) {
+        accounts.keySet().stream().filter(n -> !uncommitted.contains(n))
+                .forEach(consumer);
+    }
+
+    @Override
+    public void forEachAccount(Consumer<AccountRecord> consumer) {
+        accounts.values().stream().filter(a -> !uncommitted.contains(a
+                .getUsername())).forEach(a -> consumer.accept(
+                        new AccountRecord(a.getId(), a.getUsername(), a
+                                .getEmail(), a.getLastLogin())));
+    }
+
+    @Override
+    public void delete(Account account) {
+        accounts.remove(account.getUsername());
+    }
+
+    @Override
+    public boolean deleteByName(String name) {
+        return accounts.remove(name) != null;
+    }
+
+}
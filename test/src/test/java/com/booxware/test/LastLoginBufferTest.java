@@ -0,0 +1,202 @@
+/*
+ * Copyright 2017 Andrey Alexeenko <Andrey.Alexeenko at t-systems.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.booxware.test;
+
+import com.booxware.test.impl.LastLoginBuffer;
+import com.github.springtestdbunit.DbUnitTestExecutionListener;
+import com.github.springtestdbunit.annotation.DatabaseSetup;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.support.ClassPathXmlApplicationContext;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.TestExecutionListeners;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.test.context.support.DependencyInjectionTestExecutionListener;
+import org.springframework.test.context.transaction.TransactionalTestExecutionListener;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Service scenarios with write-behind of last login dates. Periodic flush
+ * is effectively off, so tests decide when dates are written. The first
+ * login of data set accounts migrates legacy credential and is saved at
+ * once, the next ones are buffered.
+ *
+ * @author Andrey Alexeenko <Andrey.Alexeenko at t-systems.com>
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(locations = {"classpath:applicationContext.xml"})
+@TestExecutionListeners({
+    TransactionalTestExecutionListener.class,
+    DependencyInjectionTestExecutionListener.class,
+    DbUnitTestExecutionListener.class
+})
+@Transactional
+@DatabaseSetup("classpath:data/DataSet.xml")
+@TestPropertySource(properties = {
+    "booxware.lastLogin.writeBehind=true",
+    "booxware.lastLogin.flushIntervalMillis=3600000",
+    "booxware.jdbc.url=jdbc:hsqldb:mem:buffered"})
+public class LastLoginBufferTest {
+
+    @Autowired
+    AccountServiceInterface accountService;
+
+    @Autowired
+    PersistenceInterface persistence;
+
+    @Autowired
+    LastLoginBuffer lastLoginBuffer;
+
+    @Test
+    public void loginIsBufferedAndReadThrough() {
+        Date since = new Date();
+        Account first = accountService.login("test_1", "test123");
+        assertNull(lastLoginBuffer.get("test_1"));
+        Account second = accountService.login("test_1", "test123");
+        assertEquals(second.getLastLogin(), lastLoginBuffer.get("test_1"));
+        assertEquals(first.getLastLogin(), persistence.findLastLoginByName(
+                "test_1").getLastLogin());
+        assertTrue(accountService.hasLoggedInSince("test_1", since));
+        assertTrue(accountService.hasLoggedInSince("test_1", second
+                .getLastLogin()));
+        assertTrue(accountService.hasLoggedInSince(Collections.singletonList(
+                "test_1"), second.getLastLogin()).getLoggedIn().get(0));
+
+        lastLoginBuffer.flush();
+        assertEquals(0, lastLoginBuffer.size());
+        assertEquals(second.getLastLogin(), persistence.findLastLoginByName(
+                "test_1").getLastLogin());
+        assertTrue(accountService.hasLoggedInSince("test_1", second
+                .getLastLogin()));
+    }
+
+    @Test
+    public void flushKeepsDateRecordedMeanwhile() {
+        Date written = new Date(System.currentTimeMillis() - 1000),
+                newer = new Date();
+        lastLoginBuffer.record("test_2", written);
+        ReflectionTestUtils.setField(lastLoginBuffer, "persistence",
+                (PersistenceInterface) Proxy.newProxyInstance(
+                        PersistenceInterface.class.getClassLoader(),
+                        new Class<?>[]{PersistenceInterface.class},
+                        (proxy, method, args) -> {
+                            Object result = invoke(method, args);
+                            lastLoginBuffer.record("test_2", newer);
+                            return result;
+                        }));
+        try {
+            lastLoginBuffer.flush();
+        } finally {
+            ReflectionTestUtils.setField(lastLoginBuffer, "persistence",
+                    persistence);
+        }
+        assertEquals(newer, lastLoginBuffer.get("test_2"));
+        assertEquals(written, persistence.findLastLoginByName("test_2")
+                .getLastLogin());
+        lastLoginBuffer.flush();
+        assertNull(lastLoginBuffer.get("test_2"));
+        assertEquals(newer, persistence.findLastLoginByName("test_2")
+                .getLastLogin());
+    }
+
+    @Test
+    public void olderDateDoesNotOverwriteNewer() {
+        Date older = new Date(System.currentTimeMillis() - 60000),
+                newer = new Date();
+        persistence.updateLastLogins(Collections.singletonMap("test_3",
+                newer));
+        persistence.updateLastLogins(Collections.singletonMap("test_3",
+                older));
+        assertEquals(newer, persistence.findLastLoginByName("test_3")
+                .getLastLogin());
+    }
+
+    @Test
+    public void deletionDiscardsPendingDate() {
+        accountService.login("test_3", "test123");
+        accountService.login("test_3", "test123");
+        assertNotNull(lastLoginBuffer.get("test_3"));
+        accountService.deleteAccount("test_3");
+        assertNull(lastLoginBuffer.get("test_3"));
+    }
+
+    @Test
+    public void shutdownDrainsPendingDates() {
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("booxware.jdbc.url", "jdbc:hsqldb:mem:writebehind");
+        properties.put("booxware.lastLogin.writeBehind", "true");
+        properties.put("booxware.lastLogin.flushIntervalMillis", "3600000");
+        properties.put("hibernate.show_sql", "false");
+        Set<String> written = ConcurrentHashMap.newKeySet();
+        ClassPathXmlApplicationContext context
+                = new ClassPathXmlApplicationContext(new String[]{
+                    "applicationContext.xml"}, false);
+        try {
+            context.getEnvironment().setActiveProfiles("production");
+            context.getEnvironment().getPropertySources().addFirst(
+                    new MapPropertySource("writeBehind", properties));
+            context.refresh();
+            AccountServiceInterface service = context.getBean(
+                    AccountServiceInterface.class);
+            PersistenceInterface actual = context.getBean(
+                    PersistenceInterface.class);
+            LastLoginBuffer buffer = context.getBean(LastLoginBuffer.class);
+            ReflectionTestUtils.setField(buffer, "persistence",
+                    (PersistenceInterface) Proxy.newProxyInstance(
+                            PersistenceInterface.class.getClassLoader(),
+                            new Class<?>[]{PersistenceInterface.class},
+                            (proxy, method, args) -> {
+                                @SuppressWarnings("unchecked")
+                                Map<String, Date> dates
+                                        = (Map<String, Date>) args[0];
+                                method.invoke(actual, args);
+                                written.addAll(dates.keySet());
+                                return null;
+                            }));
+            service.register("drain_1", "drain_1@booxware.test", "drain12");
+            service.login("drain_1", "drain12");
+            assertEquals(1, buffer.size());
+            assertTrue(written.isEmpty());
+        } finally {
+            context.close();
+        }
+        assertEquals(Collections.singleton("drain_1"), written);
+    }
+
+    private Object invoke(Method method, Object[] args)
+            throws Throwable {
+        try {
+            return method.invoke(persistence, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+}
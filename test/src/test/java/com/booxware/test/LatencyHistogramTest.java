@@ -0,0 +1,115 @@
+/*
+ * Copyright 2017 Andrey Alexeenko <Andrey.Alexeenko at t-systems.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.booxware.test;
+
+import com.booxware.test.util.LatencyHistogram;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ * Buckets are checked through percentiles: the lower half of two recorded
+ * values is reported as the upper bound of its bucket.
+ *
+ * @author Andrey Alexeenko <Andrey.Alexeenko at t-systems.com>
+ */
+public class LatencyHistogramTest {
+
+    @Test
+    public void smallValuesAreExact() {
+        for (long v = 0; v < 32; v++) {
+            assertEquals(v, upperBound(v));
+        }
+        // 32 and 33 are the first values sharing a bucket
+        assertEquals(33, upperBound(32));
+    }
+
+    @Test
+    public void bucketsKeepRelativePrecision() {
+        long previous = -1;
+        for (long v = 0; v < 1 << 14; v++) {
+            long bound = upperBound(v);
+            assertTrue(v + " -> " + bound, bound >= v);
+            assertTrue(v + " -> " + bound, bound - v <= v / 16);
+            // values up to the bound share the bucket, the next one doesn't
+            if (bound != previous) {
+                assertEquals(previous + 1, v);
+                previous = bound;
+            }
+        }
+        for (int bit = 14; bit < 63; bit++) {
+            long v = 1L << bit;
+            assertEquals(v + (v >> 4) - 1, upperBound(v));
+            assertEquals(v - 1, upperBound(v - 1));
+        }
+        assertEquals(Long.MAX_VALUE, upperBound(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void percentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        LatencyHistogram.Snapshot empty = histogram.snapshot();
+        assertEquals(0, empty.getCount());
+        assertEquals(0, empty.getValueAtPercentile(99));
+        assertEquals(0, empty.getMean(), 0);
+        for (long v = 1; v <= 1000; v++) {
+            histogram.record(v * 1000);
+        }
+        histogram.record(-5);
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(1001, snapshot.getCount());
+        assertEquals(1000000, snapshot.getMax());
+        assertEquals(500500000 / 1001.0, snapshot.getMean(), 0.001);
+        assertEquals(0, snapshot.getValueAtPercentile(0));
+        assertNear(500000, snapshot.getValueAtPercentile(50));
+        assertNear(990000, snapshot.getValueAtPercentile(99));
+        assertEquals(1000000, snapshot.getValueAtPercentile(100));
+        assertTrue(snapshot.getValueAtPercentile(99.9) <= snapshot.getMax());
+        assertTrue(snapshot.toString().startsWith(
+                "Snapshot{count=1001, mean=500000, p50="));
+    }
+
+    @Test
+    public void resetStartsNextPeriod() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(100);
+        histogram.record(200);
+        LatencyHistogram.Snapshot first = histogram.snapshotAndReset();
+        assertEquals(2, first.getCount());
+        assertEquals(200, first.getMax());
+        assertEquals(150, first.getMean(), 0);
+        histogram.record(7);
+        LatencyHistogram.Snapshot second = histogram.snapshot();
+        assertEquals(1, second.getCount());
+        assertEquals(7, second.getMax());
+        assertEquals(7, second.getValueAtPercentile(50));
+    }
+
+    /**
+     * Upper bound of the bucket, which counts the value.
+     */
+    private static long upperBound(long v) {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(v);
+        histogram.record(Long.MAX_VALUE);
+        return histogram.snapshot().getValueAtPercentile(50);
+    }
+
+    private static void assertNear(long expected, long actual) {
+        assertTrue(expected + " ~ " + actual, actual >= expected
+                && actual - expected <= expected / 16);
+    }
+
+}
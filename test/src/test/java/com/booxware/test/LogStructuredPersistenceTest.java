@@ -0,0 +1,146 @@
+/*
+ * Copyright 2017 Andrey Alexeenko <Andrey.Alexeenko at t-systems.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.booxware.test;
+
+import com.booxware.test.impl.LogStructuredPersistence;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import org.junit.After;
+import static org.junit.Assert.*;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ *
+ * @author Andrey Alexeenko <Andrey.Alexeenko at t-systems.com>
+ */
+public class LogStructuredPersistenceTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    Path directory;
+
+    LogStructuredPersistence persistence;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = folder.getRoot().toPath();
+        persistence = new LogStructuredPersistence(directory, false, 1024);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        persistence.close();
+    }
+
+    @Test
+    public void replayRestoresStateAndCutsBrokenTail() throws IOException {
+        Account first = persistence.save(new Account("log_1",
+                "log_1@booxware.test"));
+        List<Account> saved = persistence.saveAll(Arrays.asList(
+                new Account("log_2", "log_2@booxware.test"),
+                new Account("log_3", "log_3@booxware.test")));
+        Date lastLogin = new Date();
+        persistence.updateLastLogins(Collections.singletonMap("log_1",
+                lastLogin));
+        assertTrue(persistence.deleteByName("log_2"));
+        persistence.close();
+        Path log = directory.resolve("accounts.log");
+        long size = Files.size(log);
+        Files.write(log, new byte[]{0, 0, 0, 42, 1, 2, 3},
+                StandardOpenOption.APPEND);
+
+        persistence = new LogStructuredPersistence(directory, false, 1024);
+        assertEquals(size, Files.size(log));
+        assertEquals(lastLogin, persistence.findByName("log_1")
+                .getLastLogin());
+        assertNull(persistence.findByName("log_2"));
+        assertEquals("log_3", persistence.findById(saved.get(1).getId())
+                .getUsername());
+        Account next = persistence.save(new Account("log_4",
+                "log_4@booxware.test"));
+        assertTrue(next.getId() > saved.get(1).getId());
+        assertEquals(first.getId(), persistence.findByName("log_1").getId());
+    }
+
+    @Test
+    public void restartAfterCompactionByWrite() throws IOException {
+        persistence.close();
+        persistence = new LogStructuredPersistence(directory, false, 1);
+        Set<String> expected = new HashSet<>();
+        Random random = new Random(42);
+        int bySave = 0, byDelete = 0;
+        for (int i = 0; i < 500; i++) {
+            long compactions = persistence.getStatistics().getCompactions();
+            boolean delete = !expected.isEmpty() && random.nextBoolean();
+            if (delete) {
+                String name = expected.iterator().next();
+                persistence.deleteByName(name);
+                expected.remove(name);
+            } else {
+                String name = "cmp_" + i;
+                persistence.save(new Account(name, name + "@booxware.test"));
+                expected.add(name);
+            }
+            if (persistence.getStatistics().getCompactions() == compactions) {
+                continue;
+            }
+            if (delete) {
+                byDelete++;
+            } else {
+                bySave++;
+            }
+            persistence.close();
+            persistence = new LogStructuredPersistence(directory, false, 1);
+            Set<String> names = new HashSet<>();
+            persistence.forEachName(names::add);
+            assertEquals(expected, names);
+        }
+        assertTrue(bySave > 0);
+        assertTrue(byDelete > 0);
+    }
+
+    @Test
+    public void compactionKeepsLiveAccounts() throws IOException {
+        for (int i = 0; i < 100; i++) {
+            persistence.save(new Account("log_" + i, "log_" + i
+                                                             + "@booxware.test"));
+            if (i % 2 == 1) {
+                persistence.deleteByName("log_" + (i - 1));
+            }
+        }
+        assertTrue(persistence.getStatistics().getCompactions() > 0);
+        persistence.close();
+
+        persistence = new LogStructuredPersistence(directory, false, 1024);
+        assertEquals(50, persistence.getStatistics().getAccounts());
+        assertNull(persistence.findByName("log_98"));
+        assertNotNull(persistence.findByName("log_99"));
+    }
+
+}
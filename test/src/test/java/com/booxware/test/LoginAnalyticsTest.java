@@ -0,0 +1,138 @@
+/*
+ * Copyright 2017 Andrey Alexeenko <Andrey.Alexeenko at t-systems.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.booxware.test;
+
+import com.booxware.test.impl.LoginAnalytics;
+import com.github.springtestdbunit.DbUnitTestExecutionListener;
+import com.github.springtestdbunit.annotation.DatabaseSetup;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import static org.junit.Assert.*;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.TestExecutionListeners;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.test.context.support.DependencyInjectionTestExecutionListener;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * In-memory analytics index follows committed writes only, so calls are
+ * committed instead of being rolled back with a test transaction; data set
+ * is restored and index is reloaded before every test.
+ *
+ * @author Andrey Alexeenko <Andrey.Alexeenko at t-systems.com>
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(locations = {"classpath:applicationContext.xml"})
+@TestExecutionListeners({
+    DependencyInjectionTestExecutionListener.class,
+    DbUnitTestExecutionListener.class
+})
+@DatabaseSetup("classpath:data/DataSet.xml")
+@TestPropertySource(properties = {
+    "booxware.analytics.inMemory=true",
+    "booxware.jdbc.url=jdbc:hsqldb:mem:analytics"})
+public class LoginAnalyticsTest {
+
+    @Autowired
+    AccountServiceInterface accountService;
+
+    @Autowired
+    LoginAnalytics loginAnalytics;
+
+    @Autowired
+    PlatformTransactionManager transactionManager;
+
+    final ExecutorService executor = Executors.newFixedThreadPool(4);
+
+    Date since;
+
+    @Before
+    public void setUp() {
+        loginAnalytics.reload();
+        since = new Date();
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void indexFollowsLoginsAndDeletions() {
+        long day = TimeUnit.DAYS.toMillis(1);
+        Date from = new Date(since.getTime() - day),
+                to = new Date(since.getTime() + day);
+        accountService.login("test_1", "test123");
+        accountService.login("test_2", "test123");
+        accountService.login("test_1", "test123");
+        assertEquals(2, loginAnalytics.countActiveSince(since));
+        accountService.deleteAccount("test_2");
+        assertEquals(1, loginAnalytics.countActiveSince(since));
+        assertArrayEquals(new long[]{1}, loginAnalytics.histogram(from, to,
+                LoginAnalytics.Granularity.WEEK));
+        assertIndexMatchesDatabase();
+    }
+
+    @Test
+    public void concurrentLoginsAreCountedOnce() throws Exception {
+        accountService.login("test_1", "test123");
+        List<Future<Account>> logins = new ArrayList<>();
+        Callable<Account> login = () -> accountService.login("test_1",
+                "test123");
+        for (int i = 0; i < 16; i++) {
+            logins.add(executor.submit(login));
+        }
+        for (Future<Account> f : logins) {
+            assertNotNull(f.get(30, TimeUnit.SECONDS));
+        }
+        assertEquals(1, loginAnalytics.countActiveSince(since));
+        assertIndexMatchesDatabase();
+    }
+
+    @Test
+    public void rolledBackLoginIsNotIndexed() {
+        new TransactionTemplate(transactionManager).execute(status -> {
+            accountService.login("test_1", "test123");
+            status.setRollbackOnly();
+            return null;
+        });
+        assertEquals(0, loginAnalytics.countActiveSince(since));
+        assertIndexMatchesDatabase();
+    }
+
+    /**
+     * Compares index with the one, which is loaded from database.
+     */
+    private void assertIndexMatchesDatabase() {
+        long count = loginAnalytics.countActiveSince(new Date(0));
+        loginAnalytics.reload();
+        assertEquals(loginAnalytics.countActiveSince(new Date(0)), count);
+    }
+
+}
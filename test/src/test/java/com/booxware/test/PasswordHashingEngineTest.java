@@ -0,0 +1,234 @@
+/*
+ * Copyright 2017 Andrey Alexeenko <Andrey.Alexeenko at t-systems.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.booxware.test;
+
+import com.booxware.test.impl.HistogramMetricsRegistry;
+import com.booxware.test.impl.PasswordHashingEngine;
+import com.booxware.test.util.LatencyHistogram;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import org.junit.After;
+import static org.junit.Assert.*;
+import org.junit.Test;
+import org.springframework.security.crypto.bcrypt.BCrypt;
+import static org.springframework.test.util.ReflectionTestUtils.invokeMethod;
+import static org.springframework.test.util.ReflectionTestUtils.setField;
+
+/**
+ * Engines are started without Spring, one worker makes saturation
+ * predictable, cost 12 makes every hash long enough to queue others.
+ *
+ * @author Andrey Alexeenko <Andrey.Alexeenko at t-systems.com>
+ */
+public class PasswordHashingEngineTest {
+
+    private static final int COST = 12;
+
+    private static final String OVERLOADED_MSG
+                                        = "Service is overloaded, try again later.";
+
+    final ExecutorService callers = Executors.newFixedThreadPool(4);
+
+    final MetricsRegistry registry = new HistogramMetricsRegistry();
+
+    final List<PasswordHashingEngine> engines = new ArrayList<>();
+
+    @After
+    public void tearDown() {
+        callers.shutdownNow();
+        engines.forEach(e -> invokeMethod(e, "destroy"));
+    }
+
+    PasswordHashingEngine engine(int queueCapacity, int bulkQueueCapacity,
+            long timeoutMillis) {
+        return engine(queueCapacity, bulkQueueCapacity, timeoutMillis, e -> {
+            setField(e, "fixedCost", COST);
+        });
+    }
+
+    PasswordHashingEngine engine(int queueCapacity, int bulkQueueCapacity,
+            long timeoutMillis, Consumer<PasswordHashingEngine> settings) {
+        PasswordHashingEngine engine = new PasswordHashingEngine();
+        setField(engine, "threads", 1);
+        setField(engine, "queueCapacity", queueCapacity);
+        setField(engine, "bulkThreads", 1);
+        setField(engine, "bulkQueueCapacity", bulkQueueCapacity);
+        setField(engine, "timeoutMillis", timeoutMillis);
+        setField(engine, "registry", registry);
+        settings.accept(engine);
+        invokeMethod(engine, "init");
+        engines.add(engine);
+        return engine;
+    }
+
+    @Test
+    public void interactiveRequestsOverCapacityAreRejected()
+            throws Exception {
+        PasswordHashingEngine engine = engine(1, 1, 10000);
+        String salt = engine.gensalt();
+        List<Future<String>> results = new ArrayList<>();
+        results.add(callers.submit(() -> engine.hashpw("secret", salt)));
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (engine.getStatistics().getActive() == 0
+                       && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        // the only worker is busy, one more request fits into the queue
+        for (int i = 0; i < 2; i++) {
+            results.add(callers.submit(() -> engine.hashpw("secret", salt)));
+        }
+        int rejected = 0;
+        for (Future<String> result : results) {
+            try {
+                assertEquals(BCrypt.hashpw("secret", salt), result.get(10,
+                        TimeUnit.SECONDS));
+            } catch (ExecutionException e) {
+                assertEquals(OVERLOADED_MSG, e.getCause().getMessage());
+                rejected++;
+            }
+        }
+        assertEquals(1, rejected);
+        assertEquals(1, engine.getStatistics().getRejected());
+        assertEquals(3, engine.getStatistics().getSubmitted());
+    }
+
+    @Test
+    public void bulkWorkDoesNotTakeInteractiveQueue() {
+        PasswordHashingEngine engine = engine(1, 4, 10000);
+        String salt = engine.gensalt();
+        List<Future<String>> bulk = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            bulk.add(engine.submitHashpw("bulk" + i, salt));
+        }
+        assertTrue(engine.getStatistics().getBulkQueued() > 0);
+        assertEquals(BCrypt.hashpw("secret", salt), engine.hashpw("secret",
+                salt));
+        assertTrue(engine.getStatistics().getBulkQueued() > 0);
+        for (int i = 0; i < 4; i++) {
+            assertEquals(BCrypt.hashpw("bulk" + i, salt), engine.await(bulk
+                    .get(i)));
+        }
+        assertEquals(0, engine.getStatistics().getRejected());
+    }
+
+    @Test
+    public void queuedBulkItemsDontTimeOut() {
+        PasswordHashingEngine engine = engine(1, 8, 10000);
+        long hashMillis = TimeUnit.NANOSECONDS.toMillis(engine
+                .getStatistics().getCalibratedHash());
+        setField(engine, "timeoutMillis", hashMillis * 4 + 200);
+        String salt = engine.gensalt();
+        List<Future<String>> bulk = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            bulk.add(engine.submitHashpw("bulk" + i, salt));
+        }
+        // the last item waits for seven hashes, but its deadline starts later
+        for (int i = 0; i < 8; i++) {
+            assertEquals(BCrypt.hashpw("bulk" + i, salt), engine.await(bulk
+                    .get(i)));
+        }
+    }
+
+    @Test
+    public void slowBulkItemTimesOut() {
+        PasswordHashingEngine engine = engine(1, 8, 10000);
+        long hashMillis = TimeUnit.NANOSECONDS.toMillis(engine
+                .getStatistics().getCalibratedHash());
+        setField(engine, "timeoutMillis", Math.max(1, hashMillis / 4));
+        String salt = engine.gensalt();
+        Future<String> first = engine.submitHashpw("bulk0", salt),
+                second = engine.submitHashpw("bulk1", salt);
+        for (Future<String> f : Arrays.asList(first, second)) {
+            try {
+                engine.await(f);
+                fail();
+            } catch (IllegalStateException e) {
+                assertEquals(OVERLOADED_MSG, e.getMessage());
+            }
+        }
+    }
+
+    @Test
+    public void queueWaitAndComputeAreRecorded() {
+        PasswordHashingEngine engine = engine(4, 4, 10000);
+        String salt = engine.gensalt();
+        engine.hashpw("secret", salt);
+        engine.await(engine.submitHashpw("bulk", salt));
+        Map<String, LatencyHistogram.Snapshot> metrics = registry.snapshot();
+        assertEquals(1, metrics.get("PasswordHashingEngine.queueWait")
+                .getCount());
+        assertEquals(1, metrics.get("PasswordHashingEngine.bulkQueueWait")
+                .getCount());
+        LatencyHistogram.Snapshot compute = metrics.get(
+                "PasswordHashingEngine.compute");
+        assertEquals(2, compute.getCount());
+        assertTrue(compute.getMax() >= engine.getStatistics()
+                .getCalibratedHash() / 4);
+        PasswordHashingEngine.Statistics statistics = engine.getStatistics();
+        assertEquals(2, statistics.getCompleted());
+        assertTrue(statistics.getAverageCompute() > 0);
+        assertEquals(COST, statistics.getCost());
+        assertEquals(Long.valueOf(COST), registry.gauges().get(
+                "PasswordHashingEngine.cost"));
+        assertEquals(Long.valueOf(statistics.getCalibratedHash()), registry
+                .gauges().get("PasswordHashingEngine.hashNanos"));
+    }
+
+    @Test
+    public void calibrationKeepsCostWithinBounds() {
+        PasswordHashingEngine engine = calibrated(4, 6, 0);
+        assertEquals(4, engine.getCost());
+        engine = calibrated(4, 6, 100000);
+        assertEquals(6, engine.getCost());
+        assertEquals(Long.valueOf(6), registry.gauges().get(
+                "PasswordHashingEngine.cost"));
+        assertEquals(Long.valueOf(engine.getStatistics().getCalibratedHash()),
+                registry.gauges().get("PasswordHashingEngine.hashNanos"));
+        assertTrue(BCrypt.checkpw("secret", engine.hashpw("secret", engine
+                .gensalt())));
+        assertTrue(engine.gensalt().startsWith("$2a$06$"));
+    }
+
+    @Test
+    public void calibrationFollowsTargetTime() {
+        PasswordHashingEngine fast = calibrated(4, 20, 5),
+                slow = calibrated(4, 20, 80);
+        assertTrue(fast.getCost() < 20);
+        assertTrue(slow.getCost() < 20);
+        // 16 times longer target allows up to four more rounds
+        assertTrue(slow.getCost() > fast.getCost());
+        assertTrue(slow.getCost() - fast.getCost() <= 6);
+    }
+
+    PasswordHashingEngine calibrated(int minCost, int maxCost,
+            long targetMillis) {
+        return engine(1, 1, 10000, e -> {
+            setField(e, "fixedCost", 0);
+            setField(e, "minCost", minCost);
+            setField(e, "maxCost", maxCost);
+            setField(e, "targetMillis", targetMillis);
+        });
+    }
+
+}
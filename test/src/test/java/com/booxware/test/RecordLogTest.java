@@ -0,0 +1,98 @@
+/*
+ * Copyright 2017 Andrey Alexeenko <Andrey.Alexeenko at t-systems.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.booxware.test;
+
+import com.booxware.test.util.RecordLog;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import static org.junit.Assert.*;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ *
+ * @author Andrey Alexeenko <Andrey.Alexeenko at t-systems.com>
+ */
+public class RecordLogTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Log, which writes only a half of the next append and fails.
+     */
+    static class FailingLog extends RecordLog {
+
+        boolean failNext;
+
+        FailingLog(Path file) throws IOException {
+            super(file, false);
+        }
+
+        @Override
+        protected void write(FileChannel channel, ByteBuffer buffer)
+                throws IOException {
+            if (failNext) {
+                failNext = false;
+                buffer.limit(buffer.position() + buffer.remaining() / 2);
+                super.write(channel, buffer);
+                throw new IOException("No space left on device");
+            }
+            super.write(channel, buffer);
+        }
+
+    }
+
+    @Test
+    public void failedAppendDoesNotHideLaterRecords() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("records.log");
+        try (FailingLog log = new FailingLog(file)) {
+            log.replay(r -> fail());
+            log.append(bytes("first"));
+            long size = log.size();
+            log.failNext = true;
+            try {
+                log.append(bytes("torn"), bytes("torn too"));
+                fail();
+            } catch (IOException e) {
+                assertEquals("No space left on device", e.getMessage());
+            }
+            assertEquals(size, log.size());
+            assertEquals(size, Files.size(file));
+            log.append(bytes("second"));
+        }
+        List<String> replayed = new ArrayList<>();
+        try (RecordLog log = new RecordLog(file, false)) {
+            assertEquals(2, log.replay(r -> replayed.add(new String(r,
+                    StandardCharsets.UTF_8))));
+            assertEquals(Files.size(file), log.size());
+        }
+        assertEquals(Arrays.asList("first", "second"), replayed);
+    }
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+}
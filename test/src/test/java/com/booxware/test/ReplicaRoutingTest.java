@@ -0,0 +1,130 @@
+/*
+ * Copyright 2017 Andrey Alexeenko <Andrey.Alexeenko at t-systems.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.booxware.test;
+
+import com.booxware.test.impl.ReadYourWritesWindow;
+import com.booxware.test.impl.ReplicaRoutingDataSource;
+import com.booxware.test.util.CredentialCodec;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.After;
+import static org.junit.Assert.*;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.context.support.ClassPathXmlApplicationContext;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+/**
+ * Integration test of "replicated" profile. Primary and replica are
+ * separate in-memory HSQLDB databases without replication, so every read
+ * shows, which one has served it.
+ *
+ * @author Andrey Alexeenko <Andrey.Alexeenko at t-systems.com>
+ */
+public class ReplicaRoutingTest {
+
+    private static final long WINDOW_MILLIS = 300;
+
+    private ClassPathXmlApplicationContext replicaContext, context;
+
+    private PersistenceInterface replica, persistence;
+
+    private AccountServiceInterface accountService;
+
+    @Before
+    public void setUp() {
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("booxware.shard.url", "jdbc:hsqldb:mem:rw_replica");
+        properties.put("booxware.jdbc.url", "jdbc:hsqldb:mem:rw_primary");
+        properties.put("booxware.replica.url", "jdbc:hsqldb:mem:rw_replica");
+        properties.put("booxware.replica.readYourWritesMillis",
+                WINDOW_MILLIS);
+        properties.put("hibernate.show_sql", "false");
+        replicaContext = start("shardContext.xml", properties);
+        replica = replicaContext.getBean(PersistenceInterface.class);
+        context = start("applicationContext.xml", properties);
+        persistence = context.getBean(PersistenceInterface.class);
+        accountService = context.getBean(AccountServiceInterface.class);
+    }
+
+    @After
+    public void tearDown() {
+        context.close();
+        replicaContext.close();
+    }
+
+    @Test
+    public void readsGoToReplicaAfterWindow() throws InterruptedException {
+        replica.save(account("replica_1"));
+        persistence.save(account("primary_1"));
+        assertNotNull(persistence.findByName("primary_1"));
+        assertNotNull(persistence.findByName("replica_1"));
+        assertFalse(accountService.hasLoggedInSince("replica_1",
+                new Date(0)));
+        Thread.sleep(WINDOW_MILLIS * 2);
+        assertNull(persistence.findByName("primary_1"));
+        assertTrue(context.getBean(ReplicaRoutingDataSource.class)
+                .getStatistics().getReplica() >= 3);
+    }
+
+    @Test
+    public void expiredWritesArePruned() throws InterruptedException {
+        ReadYourWritesWindow window = new ReadYourWritesWindow(200);
+        for (int i = 0; i < 20000; i++) {
+            window.written("name_" + i);
+        }
+        window.written("name_1");
+        assertTrue(window.isRecent("name_1"));
+        Thread.sleep(400);
+        window.written("name_20000");
+        assertFalse(window.isRecent("name_0"));
+        assertTrue(window.isRecent("name_20000"));
+        assertEquals(1, ((Map<?, ?>) ReflectionTestUtils.getField(window,
+                "written")).size());
+        assertEquals(1, ((Collection<?>) ReflectionTestUtils.getField(window,
+                "expiries")).size());
+    }
+
+    @Test
+    public void loginReadsOwnRegistration() {
+        accountService.register("rw_1", "rw_1@booxware.test", "rw12345");
+        Account account = accountService.login("rw_1", "rw12345");
+        assertNotNull(account.getLastLogin());
+        assertNull(replica.findByName("rw_1"));
+    }
+
+    private static ClassPathXmlApplicationContext start(String location,
+            Map<String, Object> properties) {
+        ClassPathXmlApplicationContext context
+                = new ClassPathXmlApplicationContext(new String[]{location},
+                        false);
+        context.getEnvironment().setActiveProfiles("replicated");
+        context.getEnvironment().getPropertySources().addFirst(
+                new MapPropertySource("replication", properties));
+        context.refresh();
+        return context;
+    }
+
+    private static Account account(String name) {
+        Account account = new Account(name, name + "@booxware.test");
+        account.setEncryptedPassword(new byte[CredentialCodec.LENGTH]);
+        return account;
+    }
+
+}
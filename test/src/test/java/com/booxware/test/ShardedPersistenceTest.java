@@ -0,0 +1,156 @@
+/*
+ * Copyright 2017 Andrey Alexeenko <Andrey.Alexeenko at t-systems.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.booxware.test;
+
+import com.booxware.test.impl.ShardRebalancer;
+import com.booxware.test.impl.ShardedPersistence;
+import com.booxware.test.util.CredentialCodec;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import static org.junit.Assert.*;
+import org.junit.Test;
+import org.springframework.context.support.ClassPathXmlApplicationContext;
+import org.springframework.core.env.MapPropertySource;
+
+/**
+ * Integration test of {@link ShardedPersistence}, every shard is own
+ * application context with own in-memory HSQLDB database.
+ *
+ * @author Andrey Alexeenko <Andrey.Alexeenko at t-systems.com>
+ */
+public class ShardedPersistenceTest {
+
+    private static final AtomicInteger DATABASES = new AtomicInteger();
+
+    private final List<ClassPathXmlApplicationContext> contexts
+            = new ArrayList<>();
+
+    @After
+    public void tearDown() {
+        contexts.forEach(ClassPathXmlApplicationContext::close);
+    }
+
+    @Test
+    public void routesByNameAndId() {
+        List<PersistenceInterface> shards = startShards(3);
+        ShardedPersistence persistence = new ShardedPersistence(shards);
+        List<Account> saved = persistence.saveAll(accounts(60));
+        assertEquals(60, saved.size());
+        for (int i = 0; i < saved.size(); i++) {
+            Account account = saved.get(i);
+            assertEquals(name(i), account.getUsername());
+            int shard = persistence.shardOf(account.getUsername());
+            assertEquals(shard, account.getId()
+                                        & ((1 << ShardedPersistence.SHARD_BITS)
+                                                   - 1));
+            for (int s = 0; s < shards.size(); s++) {
+                assertEquals(s == shard, shards.get(s).findByName(account
+                        .getUsername()) != null);
+            }
+            assertEquals(account, persistence.findById(account.getId()));
+            assertEquals(account, persistence.findByName(account
+                    .getUsername()));
+        }
+        for (PersistenceInterface shard : shards) {
+            assertFalse(names(shard).isEmpty());
+        }
+
+        Account account = saved.get(0);
+        Date now = new Date();
+        account.setLastLogin(now);
+        assertEquals(account.getId(), persistence.save(account).getId());
+        assertEquals(now, persistence.findLastLoginByName(account
+                .getUsername()).getLastLogin());
+        assertEquals(new HashSet<>(Arrays.asList(name(1), name(2))),
+                persistence.findExistingNames(Arrays.asList(name(1), name(2),
+                        "missing")));
+        assertTrue(persistence.deleteByName(name(1)));
+        assertNull(persistence.findByName(name(1)));
+        assertEquals(59, names(persistence).size());
+    }
+
+    @Test
+    public void rebalanceMovesOnlyMisplacedAccounts() {
+        List<PersistenceInterface> shards = startShards(3);
+        ShardedPersistence two = new ShardedPersistence(shards.subList(0, 2));
+        two.saveAll(accounts(300));
+        ShardedPersistence three = new ShardedPersistence(shards);
+        int misplaced = 0;
+        for (int i = 0; i < 300; i++) {
+            if (three.shardOf(name(i)) == 2) {
+                misplaced++;
+            } else {
+                assertEquals(two.shardOf(name(i)), three.shardOf(name(i)));
+            }
+        }
+        assertTrue(misplaced > 50 && misplaced < 150);
+
+        assertEquals(misplaced, new ShardRebalancer(three).rebalance(16));
+        assertEquals(misplaced, names(shards.get(2)).size());
+        assertEquals(300, names(three).size());
+        for (int i = 0; i < 300; i++) {
+            assertNotNull(three.findByName(name(i)));
+        }
+        assertEquals(0, new ShardRebalancer(three).rebalance(16));
+    }
+
+    private List<PersistenceInterface> startShards(int count) {
+        List<PersistenceInterface> shards = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            ClassPathXmlApplicationContext context
+                    = new ClassPathXmlApplicationContext(
+                            new String[]{"shardContext.xml"}, false);
+            context.getEnvironment().getPropertySources().addFirst(
+                    new MapPropertySource("shard", Collections.singletonMap(
+                            "booxware.shard.url", "jdbc:hsqldb:mem:shard"
+                                                          + DATABASES
+                                                          .incrementAndGet())));
+            context.refresh();
+            contexts.add(context);
+            shards.add(context.getBean(PersistenceInterface.class));
+        }
+        return shards;
+    }
+
+    private static List<Account> accounts(int count) {
+        List<Account> accounts = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Account account = new Account(name(i), name(i)
+                                                   + "@booxware.test");
+            account.setEncryptedPassword(new byte[CredentialCodec.LENGTH]);
+            accounts.add(account);
+        }
+        return accounts;
+    }
+
+    private static Set<String> names(PersistenceInterface persistence) {
+        Set<String> names = new HashSet<>();
+        persistence.forEachName(names::add);
+        return names;
+    }
+
+    private static String name(int i) {
+        return "shard_" + i;
+    }
+
+}
@@ -0,0 +1,194 @@
+/*
+ * Copyright 2017 Andrey Alexeenko <Andrey.Alexeenko at t-systems.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.booxware.test.benchmark;
+
+import com.booxware.test.Account;
+import com.booxware.test.AccountServiceException;
+import com.booxware.test.AccountServiceInterface;
+import com.booxware.test.LoginActivity;
+import com.booxware.test.PersistenceInterface;
+import com.booxware.test.SessionToken;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.support.ClassPathXmlApplicationContext;
+
+/**
+ * Throughput of Account Service and Persistence methods against seeded
+ * in-memory HSQLDB. Spring context is started once per table size, thread
+ * count is defined by JMH "-t" option.
+ *
+ * @author Andrey Alexeenko <Andrey.Alexeenko at t-systems.com>
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AccountServiceBenchmark {
+
+    static final String PASSWORD = "bench123";
+
+    @Param({"1000", "100000"})
+    int tableSize;
+
+    ClassPathXmlApplicationContext context;
+
+    AccountServiceInterface accountService;
+
+    PersistenceInterface persistence;
+
+    byte[] credential;
+
+    final AtomicLong sequence = new AtomicLong();
+
+    Date since;
+
+    String[] tokens;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = BenchmarkContext.start();
+        accountService = context.getBean(AccountServiceInterface.class);
+        persistence = context.getBean(PersistenceInterface.class);
+        credential = BenchmarkContext.seed(context, tableSize, PASSWORD);
+        since = new Date();
+        tokens = new String[16];
+        for (int i = 0; i < tokens.length; i++) {
+            tokens[i] = accountService.loginForToken(randomName(), PASSWORD)
+                    .getToken();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public Account loginSuccess() {
+        return accountService.login(randomName(), PASSWORD);
+    }
+
+    @Benchmark
+    public Object loginWrongPassword() {
+        try {
+            return accountService.login(randomName(), "wrong123");
+        } catch (AccountServiceException e) {
+            return e;
+        }
+    }
+
+    /**
+     * Failed login without BCrypt, mostly exception wrapping is measured.
+     */
+    @Benchmark
+    public Object loginUnknownUser() {
+        try {
+            return accountService.login("unknown", PASSWORD);
+        } catch (AccountServiceException e) {
+            return e;
+        }
+    }
+
+    /**
+     * Authentication by session token, compare with
+     * {@link #loginSuccess()}.
+     */
+    @Benchmark
+    public SessionToken validateToken() {
+        return accountService.validateToken(tokens[ThreadLocalRandom
+                .current().nextInt(tokens.length)]);
+    }
+
+    @Benchmark
+    public Account register() {
+        return accountService.register(uniqueName(), "bench@booxware.test",
+                PASSWORD);
+    }
+
+    @Benchmark
+    public boolean hasLoggedInSince() {
+        return accountService.hasLoggedInSince(randomName(), since);
+    }
+
+    /**
+     * One batch of 1000 random names, compare with 1000 calls of
+     * {@link #hasLoggedInSince()}.
+     */
+    @Benchmark
+    public LoginActivity hasLoggedInSinceBatch() {
+        List<String> names = new ArrayList<>(1000);
+        for (int i = 0; i < 1000; i++) {
+            names.add(randomName());
+        }
+        return accountService.hasLoggedInSince(names, since);
+    }
+
+    /**
+     * Account is stored without BCrypt, so mostly deletion is measured.
+     */
+    @Benchmark
+    public void saveAndDeleteAccount() {
+        Account account = new Account(uniqueName(), "bench@booxware.test");
+        account.setEncryptedPassword(credential);
+        persistence.save(account);
+        accountService.deleteAccount(account.getUsername());
+    }
+
+    @Benchmark
+    public Account findByName() {
+        return persistence.findByName(randomName());
+    }
+
+    @Benchmark
+    public Account save() {
+        Account account = persistence.findByName(randomName());
+        account.setLastLogin(new Date());
+        return persistence.save(account);
+    }
+
+    String randomName() {
+        return BenchmarkContext.name(ThreadLocalRandom.current()
+                .nextInt(tableSize));
+    }
+
+    /**
+     * Names of new accounts, which never clash with seeded ones.
+     */
+    String uniqueName() {
+        return "new" + Long.toString(sequence.incrementAndGet(),
+                Character.MAX_RADIX);
+    }
+
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright 2017 Andrey Alexeenko <Andrey.Alexeenko at t-systems.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.booxware.test.benchmark;
+
+import com.booxware.test.Account;
+import com.booxware.test.PersistenceInterface;
+import com.booxware.test.impl.PasswordHashingEngine;
+import com.booxware.test.util.CredentialCodec;
+import java.util.ArrayList;
+import java.util.List;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.support.ClassPathXmlApplicationContext;
+
+/**
+ * Spring context and data set, shared by benchmarks.
+ *
+ * @author Andrey Alexeenko <Andrey.Alexeenko at t-systems.com>
+ */
+final class BenchmarkContext {
+
+    private static final int SEED_CHUNK = 1000;
+
+    private BenchmarkContext() {
+    }
+
+    /**
+     * Starts test context without SQL and debug logging, which would
+     * dominate measurements otherwise. Login throttling is disabled, so
+     * repeated wrong passwords still reach BCrypt.
+     *
+     * @param profiles
+     *                 active profiles, default ones if empty
+     *
+     * @return
+     */
+    static ClassPathXmlApplicationContext start(String... profiles) {
+        System.setProperty("hibernate.show_sql", "false");
+        System.setProperty("booxware.throttle.maxFailures", "0");
+        ((ch.qos.logback.classic.Logger) LoggerFactory
+                .getLogger("com.booxware.test"))
+                .setLevel(ch.qos.logback.classic.Level.INFO);
+        ClassPathXmlApplicationContext context
+                = new ClassPathXmlApplicationContext(
+                        new String[]{"applicationContext.xml"}, false);
+        if (profiles.length > 0) {
+            context.getEnvironment().setActiveProfiles(profiles);
+        }
+        context.refresh();
+        return context;
+    }
+
+    /**
+     * Stores requested amount of accounts with the same password. Password
+     * is hashed once, so seeding doesn't depend on BCrypt cost.
+     *
+     * @param context
+     * @param size
+     * @param password
+     *
+     * @return stored credential
+     */
+    static byte[] seed(ApplicationContext context, int size,
+            String password) {
+        PersistenceInterface persistence = context
+                .getBean(PersistenceInterface.class);
+        PasswordHashingEngine engine = context
+                .getBean(PasswordHashingEngine.class);
+        byte[] credential = CredentialCodec.encode(engine.hashpw(password,
+                engine.gensalt()));
+        List<Account> chunk = new ArrayList<>(SEED_CHUNK);
+        for (int i = 0; i < size; i++) {
+            Account account = new Account(name(i), name(i) + "@booxware.test");
+            account.setEncryptedPassword(credential);
+            chunk.add(account);
+            if (chunk.size() == SEED_CHUNK || i == size - 1) {
+                persistence.saveAll(chunk);
+                chunk.clear();
+            }
+        }
+        return credential;
+    }
+
+    /**
+     * Name of seeded account.
+     *
+     * @param i
+     *
+     * @return
+     */
+    static String name(int i) {
+        return "usr" + i;
+    }
+
+}
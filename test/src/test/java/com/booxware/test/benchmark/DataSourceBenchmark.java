@@ -0,0 +1,116 @@
+/*
+ * Copyright 2017 Andrey Alexeenko <Andrey.Alexeenko at t-systems.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.booxware.test.benchmark;
+
+import com.booxware.test.Account;
+import com.booxware.test.AccountServiceInterface;
+import com.booxware.test.PersistenceInterface;
+import com.booxware.test.impl.MeteredDataSource;
+import java.util.Date;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import javax.sql.DataSource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.support.ClassPathXmlApplicationContext;
+
+/**
+ * Throughput of database bound methods with unpooled connections ("default"
+ * profile) and with connection pool and prepared statement cache
+ * ("production" profile). Pool state is logged after every trial.
+ *
+ * @author Andrey Alexeenko <Andrey.Alexeenko at t-systems.com>
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DataSourceBenchmark {
+
+    private static final org.slf4j.Logger LOGGER = LoggerFactory.getLogger(
+            DataSourceBenchmark.class);
+
+    static final int TABLE_SIZE = 10000;
+
+    @Param({"default", "production"})
+    String profile;
+
+    ClassPathXmlApplicationContext context;
+
+    AccountServiceInterface accountService;
+
+    PersistenceInterface persistence;
+
+    Date since;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = BenchmarkContext.start(profile);
+        accountService = context.getBean(AccountServiceInterface.class);
+        persistence = context.getBean(PersistenceInterface.class);
+        BenchmarkContext.seed(context, TABLE_SIZE,
+                AccountServiceBenchmark.PASSWORD);
+        since = new Date();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        DataSource dataSource = context.getBean("dataSource",
+                DataSource.class);
+        if (dataSource instanceof MeteredDataSource) {
+            LOGGER.info("Data source of {} profile: {}.", profile,
+                    ((MeteredDataSource) dataSource).getStatistics());
+        }
+        context.close();
+    }
+
+    @Benchmark
+    public Account findByName() {
+        return persistence.findByName(randomName());
+    }
+
+    @Benchmark
+    public boolean hasLoggedInSince() {
+        return accountService.hasLoggedInSince(randomName(), since);
+    }
+
+    @Benchmark
+    public Account save() {
+        Account account = persistence.findByName(randomName());
+        account.setLastLogin(new Date());
+        return persistence.save(account);
+    }
+
+    String randomName() {
+        return BenchmarkContext.name(ThreadLocalRandom.current()
+                .nextInt(TABLE_SIZE));
+    }
+
+}
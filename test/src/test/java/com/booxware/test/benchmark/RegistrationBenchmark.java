@@ -0,0 +1,146 @@
+/*
+ * Copyright 2017 Andrey Alexeenko <Andrey.Alexeenko at t-systems.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.booxware.test.benchmark;
+
+import com.booxware.test.Account;
+import com.booxware.test.PersistenceInterface;
+import com.booxware.test.impl.PasswordHashingEngine;
+import com.booxware.test.util.CredentialCodec;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.support.ClassPathXmlApplicationContext;
+
+/**
+ * Registrations per second by ID block size and amount of registering
+ * threads, with connection pool ("production" profile). Password is hashed
+ * once, so sequence round trips and inserts are measured instead of
+ * BCrypt. Every invocation stores {@value #ROUND} accounts, split between
+ * threads, one by one or by batches of {@value #BATCH}.
+ *
+ * @author Andrey Alexeenko <Andrey.Alexeenko at t-systems.com>
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RegistrationBenchmark {
+
+    static final int ROUND = 1600, BATCH = 100;
+
+    @Param({"1", "10", "50", "500"})
+    int blockSize;
+
+    @Param({"1", "4", "16"})
+    int threads;
+
+    ClassPathXmlApplicationContext context;
+
+    PersistenceInterface persistence;
+
+    ExecutorService executor;
+
+    byte[] credential;
+
+    final AtomicInteger counter = new AtomicInteger();
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        System.setProperty("booxware.id.blockSize", String.valueOf(blockSize));
+        context = BenchmarkContext.start("production");
+        persistence = context.getBean(PersistenceInterface.class);
+        PasswordHashingEngine engine = context
+                .getBean(PasswordHashingEngine.class);
+        credential = CredentialCodec.encode(engine.hashpw(
+                AccountServiceBenchmark.PASSWORD, engine.gensalt()));
+        executor = Executors.newFixedThreadPool(threads);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        executor.shutdownNow();
+        context.close();
+        System.clearProperty("booxware.id.blockSize");
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROUND)
+    public void register() throws Exception {
+        run(() -> {
+            for (int i = 0; i < ROUND / threads; i++) {
+                persistence.save(next());
+            }
+            return null;
+        });
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROUND)
+    public void registerBatch() throws Exception {
+        run(() -> {
+            List<Account> batch = new ArrayList<>(BATCH);
+            for (int i = 0; i < ROUND / threads; i++) {
+                batch.add(next());
+                if (batch.size() == BATCH || i == ROUND / threads - 1) {
+                    persistence.saveAll(batch);
+                    batch.clear();
+                }
+            }
+            return null;
+        });
+    }
+
+    void run(Callable<Void> task) throws InterruptedException,
+            ExecutionException {
+        List<Future<Void>> futures = new ArrayList<>(threads);
+        for (int t = 0; t < threads; t++) {
+            futures.add(executor.submit(task));
+        }
+        for (Future<Void> future : futures) {
+            future.get();
+        }
+    }
+
+    Account next() {
+        String name = "reg" + counter.incrementAndGet();
+        Account account = new Account(name, name + "@booxware.test");
+        account.setEncryptedPassword(credential);
+        return account;
+    }
+
+}